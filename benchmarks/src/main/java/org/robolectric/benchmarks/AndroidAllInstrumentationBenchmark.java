@@ -0,0 +1,85 @@
+package org.robolectric.benchmarks;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.internal.AndroidAllJarInstrumentor;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.InstrumentedClassCache;
+import org.robolectric.internal.bytecode.SandboxClassLoader;
+
+/**
+ * Measures instrumenting every class in the android-all jar, with and without keeping the
+ * original stack map frames of method bodies.
+ */
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+@State(Scope.Thread)
+public class AndroidAllInstrumentationBenchmark {
+  @Param({"true", "false"})
+  public String preserveFrames;
+
+  private InstrumentationConfiguration config;
+  private List<String> classNames;
+  private SandboxClassLoader classLoader;
+
+  @Setup(Level.Trial)
+  public void setUpConfig() throws IOException {
+    System.setProperty("robolectric.preserveFrames", preserveFrames);
+    config = AndroidAllJarInstrumentor.createInstrumentationConfiguration();
+
+    classNames = new ArrayList<>();
+    try (JarFile jarFile = new JarFile(AndroidAllJar.path().toFile())) {
+      Enumeration<JarEntry> entries = jarFile.entries();
+      while (entries.hasMoreElements()) {
+        String name = entries.nextElement().getName();
+        if (name.endsWith(".class")) {
+          String className =
+              name.substring(0, name.length() - ".class".length()).replace('/', '.');
+          if (config.shouldAcquire(className)) {
+            classNames.add(className);
+          }
+        }
+      }
+    }
+  }
+
+  /** A fresh loader per iteration, so supertype lookups start cold. */
+  @Setup(Level.Iteration)
+  public void setUpClassLoader() {
+    classLoader = new SandboxClassLoader(
+        ClassLoader.getSystemClassLoader(), config, (InstrumentedClassCache) null);
+  }
+
+  @Benchmark
+  public int instrumentAllClasses() {
+    int totalBytes = 0;
+    for (String className : classNames) {
+      try {
+        totalBytes += classLoader.getInstrumentedBytes(className).length;
+      } catch (ClassNotFoundException e) {
+        // some android-all classes can't be instrumented; they're skipped in both modes
+      }
+    }
+    return totalBytes;
+  }
+}
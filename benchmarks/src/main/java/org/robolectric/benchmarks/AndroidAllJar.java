@@ -0,0 +1,27 @@
+package org.robolectric.benchmarks;
+
+import java.io.IOException;
+import java.net.JarURLConnection;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+
+/** Locates the android-all jar on the benchmark classpath. */
+final class AndroidAllJar {
+  private AndroidAllJar() {}
+
+  static Path path() {
+    URL rClass = ClassLoader.getSystemResource("android/R.class");
+    if (rClass == null) {
+      throw new IllegalStateException("android-all isn't on the classpath");
+    }
+
+    try {
+      URL jarUrl = ((JarURLConnection) rClass.openConnection()).getJarFileURL();
+      return Paths.get(jarUrl.toURI());
+    } catch (IOException | URISyntaxException e) {
+      throw new IllegalStateException("couldn't locate android-all jar from " + rClass, e);
+    }
+  }
+}
@@ -0,0 +1,110 @@
+package org.robolectric.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.internal.SandboxTestRunner;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.InstrumentedClassCache;
+import org.robolectric.internal.bytecode.Interceptors;
+import org.robolectric.internal.bytecode.Sandbox;
+import org.robolectric.internal.bytecode.SandboxClassLoader;
+import org.robolectric.internal.bytecode.ShadowMap;
+import org.robolectric.internal.bytecode.ShadowWrangler;
+
+/**
+ * Measures binding the invokedynamic call site of an instrumented method on its first call, and
+ * calling it once bound.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class InvokeDynamicSupportBenchmark {
+
+  /** A target loaded into a fresh sandbox before each call, so its call sites are unbound. */
+  @State(Scope.Thread)
+  public static class UnboundTarget {
+    SandboxedTarget target;
+
+    @Setup(Level.Invocation)
+    public void setUp() throws Exception {
+      target = new SandboxedTarget();
+    }
+  }
+
+  /** A target whose call sites were bound by an earlier call. */
+  @State(Scope.Thread)
+  public static class BoundTarget {
+    SandboxedTarget target;
+
+    @Setup(Level.Trial)
+    public void setUp() throws Exception {
+      target = new SandboxedTarget();
+      target.call();
+    }
+  }
+
+  @Benchmark
+  public Object firstCall(UnboundTarget unbound) throws Exception {
+    return unbound.target.call();
+  }
+
+  @Benchmark
+  public Object boundCall(BoundTarget bound) throws Exception {
+    return bound.target.call();
+  }
+
+  private static class SandboxedTarget {
+    private final Object instance;
+    private final Method compute;
+
+    SandboxedTarget() throws Exception {
+      InstrumentationConfiguration config =
+          SandboxTestRunner.newDefaultClassLoaderConfigBuilder()
+              .addInstrumentedClass(Target.class.getName())
+              .build();
+      SandboxClassLoader classLoader = new SandboxClassLoader(
+          ClassLoader.getSystemClassLoader(), config, (InstrumentedClassCache) null);
+      Sandbox sandbox = new Sandbox(classLoader);
+      ShadowMap shadowMap = new ShadowMap.Builder().addShadowClasses(ShadowTarget.class).build();
+      Interceptors interceptors = new Interceptors();
+      sandbox.configure(new ShadowWrangler(shadowMap, 28, interceptors), interceptors);
+
+      Class<?> targetClass = sandbox.bootstrappedClass(Target.class);
+      instance = targetClass.getConstructor().newInstance();
+      compute = targetClass.getMethod("compute", int.class);
+    }
+
+    Object call() throws Exception {
+      return compute.invoke(instance, 1);
+    }
+  }
+
+  public static class Target {
+    public int compute(int value) {
+      return value + 1;
+    }
+  }
+
+  @Implements(Target.class)
+  public static class ShadowTarget {
+    @Implementation
+    protected int compute(int value) {
+      return value + 2;
+    }
+  }
+}
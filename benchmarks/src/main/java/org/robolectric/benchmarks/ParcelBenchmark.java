@@ -0,0 +1,107 @@
+package org.robolectric.benchmarks;
+
+import android.os.Parcel;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+/** Measures writing and reading back a {@link Parcel} through {@code ShadowParcel}. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class ParcelBenchmark {
+  private SandboxBootstrap bootstrap;
+  private Supplier<Object> primitivesRoundTrip;
+  private Supplier<Object> marshallRoundTrip;
+
+  @Setup(Level.Trial)
+  public void setUp() throws Throwable {
+    bootstrap = new SandboxBootstrap();
+    bootstrap.start();
+    primitivesRoundTrip = bootstrap.newSandboxedSupplier(PrimitivesRoundTrip.class);
+    marshallRoundTrip = bootstrap.newSandboxedSupplier(MarshallRoundTrip.class);
+  }
+
+  @TearDown(Level.Trial)
+  public void tearDown() {
+    bootstrap.stop();
+  }
+
+  @Benchmark
+  public Object writeAndReadPrimitives() {
+    return primitivesRoundTrip.get();
+  }
+
+  @Benchmark
+  public Object marshallAndUnmarshall() {
+    return marshallRoundTrip.get();
+  }
+
+  /** Runs inside the sandbox. */
+  public static class PrimitivesRoundTrip implements Supplier<Object> {
+    @Override
+    public Object get() {
+      Parcel parcel = Parcel.obtain();
+      try {
+        writeTo(parcel);
+        parcel.setDataPosition(0);
+        return readFrom(parcel);
+      } finally {
+        parcel.recycle();
+      }
+    }
+  }
+
+  /** Runs inside the sandbox. */
+  public static class MarshallRoundTrip implements Supplier<Object> {
+    @Override
+    public Object get() {
+      Parcel parcel = Parcel.obtain();
+      Parcel copy = Parcel.obtain();
+      try {
+        writeTo(parcel);
+        byte[] bytes = parcel.marshall();
+        copy.unmarshall(bytes, 0, bytes.length);
+        copy.setDataPosition(0);
+        return readFrom(copy);
+      } finally {
+        parcel.recycle();
+        copy.recycle();
+      }
+    }
+  }
+
+  static void writeTo(Parcel parcel) {
+    for (int i = 0; i < 16; i++) {
+      parcel.writeInt(i);
+      parcel.writeLong(i * 31L);
+      parcel.writeString("value-" + i);
+    }
+    parcel.writeByteArray(new byte[256]);
+  }
+
+  static long readFrom(Parcel parcel) {
+    long sum = 0;
+    for (int i = 0; i < 16; i++) {
+      sum += parcel.readInt();
+      sum += parcel.readLong();
+      sum += parcel.readString().length();
+    }
+    sum += parcel.createByteArray().length;
+    return sum;
+  }
+}
@@ -0,0 +1,115 @@
+package org.robolectric.benchmarks;
+
+import static java.util.Collections.singletonList;
+
+import java.nio.file.FileSystem;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.res.Fs;
+import org.robolectric.res.PackageResourceTable;
+import org.robolectric.res.ResName;
+import org.robolectric.res.ResourcePath;
+import org.robolectric.res.ResourceTableFactory;
+import org.robolectric.res.TypedResource;
+import org.robolectric.res.android.ApkAssetsCookie;
+import org.robolectric.res.android.CppApkAssets;
+import org.robolectric.res.android.CppAssetManager2;
+import org.robolectric.res.android.Ref;
+import org.robolectric.res.android.ResTable_config;
+import org.robolectric.res.android.ResourceTypes.Res_value;
+
+/**
+ * Measures loading the framework resources from android-all, and looking resources up in them,
+ * through both the legacy {@link PackageResourceTable} and the binary {@link CppAssetManager2}.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class ResourceTableBenchmark {
+  private static final String RESOURCE_NAME = "android:string/ok";
+
+  private PackageResourceTable legacyTable;
+  private ResName resName;
+  private int legacyResId;
+
+  private CppAssetManager2 assetManager;
+  private int binaryResId;
+
+  private final ResTable_config config = new ResTable_config();
+
+  @Setup(Level.Trial)
+  public void setUp() throws Exception {
+    legacyTable = loadLegacyTable();
+    resName = new ResName(RESOURCE_NAME);
+    legacyResId = legacyTable.getResourceId(resName);
+
+    assetManager = loadBinaryAssetManager();
+    binaryResId = assetManager.GetResourceId(RESOURCE_NAME, "", "");
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public PackageResourceTable legacy_loadFrameworkTable() throws Exception {
+    return loadLegacyTable();
+  }
+
+  @Benchmark
+  public Integer legacy_getResourceId() {
+    return legacyTable.getResourceId(resName);
+  }
+
+  @Benchmark
+  public TypedResource legacy_getValue() {
+    return legacyTable.getValue(legacyResId, config);
+  }
+
+  @Benchmark
+  @BenchmarkMode(Mode.SingleShotTime)
+  @OutputTimeUnit(TimeUnit.MILLISECONDS)
+  public CppAssetManager2 binary_loadFrameworkAssets() {
+    return loadBinaryAssetManager();
+  }
+
+  @Benchmark
+  public int binary_getResourceId() {
+    return assetManager.GetResourceId(RESOURCE_NAME, "", "");
+  }
+
+  @Benchmark
+  public ApkAssetsCookie binary_getResource() {
+    return assetManager.GetResource(binaryResId, false, (short) 0,
+        new Ref<>(new Res_value()), new Ref<>(new ResTable_config()), new Ref<>(0));
+  }
+
+  private static PackageResourceTable loadLegacyTable() throws ClassNotFoundException {
+    FileSystem zipFs = Fs.forJar(AndroidAllJar.path());
+    ResourcePath resourcePath = new ResourcePath(
+        Class.forName("android.R"),
+        zipFs.getPath("raw-res/res"),
+        zipFs.getPath("raw-res/assets"),
+        Class.forName("com.android.internal.R"));
+    return new ResourceTableFactory().newFrameworkResourceTable(resourcePath);
+  }
+
+  private CppAssetManager2 loadBinaryAssetManager() {
+    CppApkAssets apkAssets = CppApkAssets.Load(AndroidAllJar.path().toString(), true);
+    CppAssetManager2 assetManager = new CppAssetManager2();
+    assetManager.SetApkAssets(singletonList(apkAssets), true);
+    assetManager.SetConfiguration(config);
+    return assetManager;
+  }
+}
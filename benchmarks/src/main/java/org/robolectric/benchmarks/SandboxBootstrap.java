@@ -0,0 +1,65 @@
+package org.robolectric.benchmarks;
+
+import java.lang.reflect.Method;
+import java.util.function.Supplier;
+import org.junit.Test;
+import org.junit.runners.model.FrameworkMethod;
+import org.robolectric.RobolectricTestRunner;
+import org.robolectric.annotation.Config;
+import org.robolectric.internal.bytecode.Sandbox;
+import org.robolectric.util.ReflectionHelpers;
+
+/**
+ * Sets up a Robolectric sandbox the way {@link RobolectricTestRunner} does for a test method, so
+ * benchmarks can run code inside it without going through JUnit.
+ */
+class SandboxBootstrap extends RobolectricTestRunner {
+  private final FrameworkMethod method;
+  private Method bootstrappedMethod;
+  private Sandbox sandbox;
+  private ClassLoader priorContextClassLoader;
+
+  SandboxBootstrap() throws Exception {
+    super(Holder.class);
+    method = getChildren().get(0);
+  }
+
+  /** Prepares the sandbox and application state, as done before each test. */
+  void start() throws Throwable {
+    sandbox = getSandbox(method);
+    configureSandbox(sandbox, method);
+
+    priorContextClassLoader = Thread.currentThread().getContextClassLoader();
+    Thread.currentThread().setContextClassLoader(sandbox.getRobolectricClassLoader());
+
+    Class<?> bootstrappedTestClass = sandbox.bootstrappedClass(Holder.class);
+    bootstrappedMethod = bootstrappedTestClass.getMethod(method.getMethod().getName());
+    beforeTest(sandbox, method, bootstrappedMethod);
+  }
+
+  /**
+   * Instantiates {@code supplierClass} inside the sandbox; its {@code get()} method runs against
+   * sandboxed Android classes.
+   */
+  <T> Supplier<T> newSandboxedSupplier(Class<? extends Supplier<T>> supplierClass) {
+    Class<Supplier<T>> bootstrappedClass = sandbox.bootstrappedClass(supplierClass);
+    return ReflectionHelpers.callConstructor(bootstrappedClass);
+  }
+
+  /** Tears down the application state, as done after each test. */
+  void stop() {
+    try {
+      afterTest(method, bootstrappedMethod);
+    } finally {
+      Thread.currentThread().setContextClassLoader(priorContextClassLoader);
+      finallyAfterTest(method);
+    }
+  }
+
+  @Config(sdk = 28, manifest = Config.NONE)
+  public static class Holder {
+    @Test
+    public void benchmark() {
+    }
+  }
+}
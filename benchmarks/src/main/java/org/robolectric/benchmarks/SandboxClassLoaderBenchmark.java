@@ -0,0 +1,51 @@
+package org.robolectric.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.internal.AndroidAllJarInstrumentor;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.InstrumentedClassCache;
+import org.robolectric.internal.bytecode.SandboxClassLoader;
+
+/** Measures analyzing and instrumenting individual android-all classes. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class SandboxClassLoaderBenchmark {
+  @Param({"android.view.View", "android.widget.TextView", "android.app.Activity"})
+  public String className;
+
+  private InstrumentationConfiguration config;
+  private SandboxClassLoader classLoader;
+
+  @Setup(Level.Trial)
+  public void setUpConfig() {
+    config = AndroidAllJarInstrumentor.createInstrumentationConfiguration();
+  }
+
+  /** A fresh loader per iteration, so class node lookups for supertypes start cold. */
+  @Setup(Level.Iteration)
+  public void setUpClassLoader() {
+    classLoader = new SandboxClassLoader(
+        ClassLoader.getSystemClassLoader(), config, (InstrumentedClassCache) null);
+  }
+
+  @Benchmark
+  public byte[] instrumentClass() throws ClassNotFoundException {
+    return classLoader.getInstrumentedBytes(className);
+  }
+}
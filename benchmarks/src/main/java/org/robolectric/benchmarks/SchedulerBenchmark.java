@@ -0,0 +1,58 @@
+package org.robolectric.benchmarks;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.util.Scheduler;
+
+/** Measures posting runnables to a {@link Scheduler} and running them. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class SchedulerBenchmark {
+  private static final int RUNNABLES = 1000;
+
+  @Param({"0", "10"})
+  public long delayMillis;
+
+  private final Runnable noop = () -> {};
+
+  @Benchmark
+  @OperationsPerInvocation(RUNNABLES)
+  public Scheduler postAndAdvanceToLastPostedRunnable() {
+    Scheduler scheduler = new Scheduler();
+    scheduler.pause();
+    for (int i = 0; i < RUNNABLES; i++) {
+      scheduler.postDelayed(noop, delayMillis * (i % 10));
+    }
+    scheduler.advanceToLastPostedRunnable();
+    return scheduler;
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(RUNNABLES)
+  public Scheduler postAndAdvanceByStep() {
+    Scheduler scheduler = new Scheduler();
+    scheduler.pause();
+    for (int i = 0; i < RUNNABLES; i++) {
+      scheduler.postDelayed(noop, delayMillis * (i % 10));
+    }
+    for (int i = 0; i < 10; i++) {
+      scheduler.advanceBy(delayMillis);
+    }
+    scheduler.advanceToLastPostedRunnable();
+    return scheduler;
+  }
+}
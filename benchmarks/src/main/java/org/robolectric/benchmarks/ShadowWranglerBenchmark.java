@@ -0,0 +1,83 @@
+package org.robolectric.benchmarks;
+
+import static java.lang.invoke.MethodType.methodType;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.robolectric.annotation.Implementation;
+import org.robolectric.annotation.Implements;
+import org.robolectric.internal.bytecode.ClassHandler.Plan;
+import org.robolectric.internal.bytecode.Interceptors;
+import org.robolectric.internal.bytecode.ShadowMap;
+import org.robolectric.internal.bytecode.ShadowWrangler;
+
+/** Measures how quickly {@link ShadowWrangler} resolves shadow methods for dispatch. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+@State(Scope.Thread)
+public class ShadowWranglerBenchmark {
+  private static final String COMPUTE_SIGNATURE =
+      Target.class.getName().replace('.', '/') + "/compute(I)I";
+  private static final MethodType COMPUTE_TYPE = methodType(int.class, Target.class, int.class);
+
+  private ShadowMap shadowMap;
+  private ShadowWrangler shadowWrangler;
+
+  @Setup(Level.Trial)
+  public void setUpShadowMap() {
+    shadowMap = new ShadowMap.Builder().addShadowClasses(ShadowTarget.class).build();
+  }
+
+  @Setup(Level.Iteration)
+  public void setUpShadowWrangler() {
+    shadowWrangler = new ShadowWrangler(shadowMap, 28, new Interceptors());
+  }
+
+  /** Repeated dispatch through the old-style (non-invokedynamic) plan cache. */
+  @Benchmark
+  public Plan methodInvoked_cached() {
+    return shadowWrangler.methodInvoked(COMPUTE_SIGNATURE, false, Target.class);
+  }
+
+  /** First dispatch of a method, which has to find the shadow method reflectively. */
+  @Benchmark
+  public Plan methodInvoked_uncached() {
+    return new ShadowWrangler(shadowMap, 28, new Interceptors())
+        .methodInvoked(COMPUTE_SIGNATURE, false, Target.class);
+  }
+
+  /** Shadow method lookup done when binding an invokedynamic call site. */
+  @Benchmark
+  public MethodHandle findShadowMethodHandle() throws IllegalAccessException {
+    return shadowWrangler.findShadowMethodHandle(Target.class, "compute", COMPUTE_TYPE, false);
+  }
+
+  public static class Target {
+    public int compute(int value) {
+      return value + 1;
+    }
+  }
+
+  @Implements(Target.class)
+  public static class ShadowTarget {
+    @Implementation
+    protected int compute(int value) {
+      return value + 2;
+    }
+  }
+}
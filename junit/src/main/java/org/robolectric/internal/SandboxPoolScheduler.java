@@ -0,0 +1,158 @@
+package org.robolectric.internal;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.TimeZone;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import org.junit.runners.model.RunnerScheduler;
+import org.junit.runners.model.Statement;
+
+/**
+ * Runs test methods concurrently on a fixed, process-wide pool of worker threads.
+ *
+ * Each worker thread has a stable slot number, so a runner can give every worker its own set of
+ * sandboxes (class loaders and static state) and tests on different workers never share one.
+ * Enabled by setting the {@code robolectric.sandboxThreads} system property to more than 1.
+ *
+ * {@link org.robolectric.util.PerfStatsCollector} is shared by the whole JVM, so per-test perf
+ * stats aren't collected or reported while tests run on the pool.
+ *
+ * The default {@link Locale} and {@link TimeZone} are shared by the whole JVM too, so tests which
+ * change them must be run through {@link #evaluate(Statement, boolean)}, which runs them alone.
+ */
+public class SandboxPoolScheduler implements RunnerScheduler {
+  static final String SANDBOX_THREADS_PROPERTY = "robolectric.sandboxThreads";
+
+  private static final ThreadLocal<Integer> SLOT = new ThreadLocal<>();
+  private static final ReadWriteLock JVM_DEFAULTS_LOCK = new ReentrantReadWriteLock();
+  private static ExecutorService sharedExecutor;
+
+  private final ExecutorService executor;
+  private final List<Future<?>> futures = new ArrayList<>();
+
+  private SandboxPoolScheduler(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  /**
+   * Returns the number of worker threads requested by the {@code robolectric.sandboxThreads}
+   * system property.
+   */
+  public static int getSandboxThreads() {
+    return Math.max(1, Integer.getInteger(SANDBOX_THREADS_PROPERTY, 1));
+  }
+
+  /**
+   * Returns a scheduler which runs tests on the shared worker pool, or null if tests should run
+   * serially on the calling thread.
+   */
+  public static SandboxPoolScheduler create() {
+    int threads = getSandboxThreads();
+    if (threads <= 1) {
+      return null;
+    }
+    return new SandboxPoolScheduler(getSharedExecutor(threads));
+  }
+
+  private static synchronized ExecutorService getSharedExecutor(int threads) {
+    if (sharedExecutor == null) {
+      AtomicInteger nextSlot = new AtomicInteger();
+      sharedExecutor = Executors.newFixedThreadPool(threads, runnable -> {
+        int slot = nextSlot.getAndIncrement();
+        Thread thread = new Thread(() -> {
+          SLOT.set(slot);
+          runnable.run();
+        }, "robolectric-sandbox-" + slot);
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return sharedExecutor;
+  }
+
+  /**
+   * Returns the slot of the worker thread running the current test, or 0 when tests aren't run
+   * on the worker pool.
+   */
+  public static int currentSlot() {
+    Integer slot = SLOT.get();
+    return slot == null ? 0 : slot;
+  }
+
+  /**
+   * Evaluates a test statement, guarding the JVM-wide defaults sandboxes can't isolate.
+   *
+   * When tests run on the worker pool, a statement which changes the default {@link Locale} or
+   * {@link TimeZone} (e.g. a test with qualifiers) waits for all other tests to finish, runs
+   * alone, and has the prior defaults restored afterwards. Other statements may run concurrently
+   * with each other.
+   *
+   * @param statement the test to run
+   * @param changesJvmDefaults true if the test sets the default locale or time zone
+   */
+  public static void evaluate(Statement statement, boolean changesJvmDefaults) throws Throwable {
+    if (getSandboxThreads() <= 1) {
+      statement.evaluate();
+      return;
+    }
+
+    Lock lock = changesJvmDefaults ? JVM_DEFAULTS_LOCK.writeLock() : JVM_DEFAULTS_LOCK.readLock();
+    lock.lock();
+    try {
+      if (!changesJvmDefaults) {
+        statement.evaluate();
+        return;
+      }
+
+      Locale priorLocale = Locale.getDefault();
+      TimeZone priorTimeZone = TimeZone.getDefault();
+      try {
+        statement.evaluate();
+      } finally {
+        Locale.setDefault(priorLocale);
+        TimeZone.setDefault(priorTimeZone);
+      }
+    } finally {
+      lock.unlock();
+    }
+  }
+
+  @Override
+  public synchronized void schedule(Runnable childStatement) {
+    futures.add(executor.submit(childStatement));
+  }
+
+  @Override
+  public void finished() {
+    List<Future<?>> scheduled;
+    synchronized (this) {
+      scheduled = new ArrayList<>(futures);
+      futures.clear();
+    }
+
+    for (Future<?> future : scheduled) {
+      try {
+        future.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException(e);
+      } catch (ExecutionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new RuntimeException(cause);
+      }
+    }
+  }
+}
@@ -10,6 +10,7 @@ import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
 import java.util.ServiceLoader;
+import java.util.Set;
 import javax.annotation.Nonnull;
 import org.junit.AfterClass;
 import org.junit.BeforeClass;
@@ -50,7 +51,8 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
 
   private final Interceptors interceptors;
   private final List<PerfStatsReporter> perfStatsReporters;
-  private final HashSet<Class<?>> loadedTestClasses = new HashSet<>();
+  private final Set<Class<?>> loadedTestClasses =
+      Collections.synchronizedSet(new HashSet<Class<?>>());
 
   public SandboxTestRunner(Class<?> klass) throws InitializationError {
     super(klass);
@@ -82,8 +84,10 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
       public void evaluate() throws Throwable {
         try {
           statement.evaluate();
-          for (Class<?> testClass : loadedTestClasses) {
-            invokeAfterClass(testClass);
+          synchronized (loadedTestClasses) {
+            for (Class<?> testClass : loadedTestClasses) {
+              invokeAfterClass(testClass);
+            }
           }
         } finally {
           afterClass();
@@ -94,9 +98,7 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
   }
 
   private void invokeBeforeClass(final Class clazz) throws Throwable {
-    if (!loadedTestClasses.contains(clazz)) {
-      loadedTestClasses.add(clazz);
-
+    if (loadedTestClasses.add(clazz)) {
       final TestClass testClass = new TestClass(clazz);
       final List<FrameworkMethod> befores = testClass.getAnnotatedMethods(BeforeClass.class);
       for (FrameworkMethod before : befores) {
@@ -155,6 +157,23 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
    */
   @Nonnull
   protected InstrumentationConfiguration createClassLoaderConfig(FrameworkMethod method) {
+    InstrumentationConfiguration.Builder builder = newDefaultClassLoaderConfigBuilder();
+
+    for (Class<?> shadowClass : getExtraShadows(method)) {
+      ShadowInfo shadowInfo = ShadowMap.obtainShadowInfo(shadowClass);
+      builder.addInstrumentedClass(shadowInfo.shadowedClassName);
+    }
+
+    addInstrumentedPackages(method, builder);
+
+    return builder.build();
+  }
+
+  /**
+   * Returns a builder holding the configuration shared by every test method, before any
+   * method-specific shadows or packages are added.
+   */
+  public static InstrumentationConfiguration.Builder newDefaultClassLoaderConfigBuilder() {
     InstrumentationConfiguration.Builder builder = InstrumentationConfiguration.newBuilder()
         .doNotAcquirePackage("java.")
         .doNotAcquirePackage("sun.")
@@ -169,15 +188,7 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
         builder.doNotAcquirePackage(pkg);
       }
     }
-
-    for (Class<?> shadowClass : getExtraShadows(method)) {
-      ShadowInfo shadowInfo = ShadowMap.obtainShadowInfo(shadowClass);
-      builder.addInstrumentedClass(shadowInfo.shadowedClassName);
-    }
-
-    addInstrumentedPackages(method, builder);
-
-    return builder.build();
+    return builder;
   }
 
   private void addInstrumentedPackages(FrameworkMethod method, InstrumentationConfiguration.Builder builder) {
@@ -216,9 +227,16 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
     return new Statement() {
       @Override
       public void evaluate() throws Throwable {
+        // The collector is shared by the whole JVM, so when tests run concurrently on the sandbox
+        // pool, per-test stats can't be told apart; resetting would wipe other tests' events.
+        // Perf stats are only reported when tests run serially.
+        boolean reportPerfStats =
+            !perfStatsReporters.isEmpty() && SandboxPoolScheduler.getSandboxThreads() <= 1;
         PerfStatsCollector perfStatsCollector = PerfStatsCollector.getInstance();
-        perfStatsCollector.reset();
-        perfStatsCollector.setEnabled(!perfStatsReporters.isEmpty());
+        if (reportPerfStats) {
+          perfStatsCollector.reset();
+        }
+        perfStatsCollector.setEnabled(reportPerfStats);
 
         Event initialization = perfStatsCollector.startEvent("initialization");
 
@@ -265,18 +283,16 @@ public class SandboxTestRunner extends BlockJUnit4ClassRunner {
           Thread.currentThread().setContextClassLoader(priorContextClassLoader);
           finallyAfterTest(method);
 
-          reportPerfStats(perfStatsCollector);
-          perfStatsCollector.reset();
+          if (reportPerfStats) {
+            reportPerfStats(perfStatsCollector);
+            perfStatsCollector.reset();
+          }
         }
       }
     };
   }
 
   private void reportPerfStats(PerfStatsCollector perfStatsCollector) {
-    if (perfStatsReporters.isEmpty()) {
-      return;
-    }
-
     Metadata metadata = perfStatsCollector.getMetadata();
     Collection<Metric> metrics = perfStatsCollector.getMetrics();
 
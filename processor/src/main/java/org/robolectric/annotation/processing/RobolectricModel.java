@@ -7,6 +7,7 @@ import static com.google.common.collect.Sets.newTreeSet;
 import com.google.common.collect.HashMultimap;
 import com.google.common.collect.Iterables;
 import com.google.common.collect.Multimaps;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.List;
 import java.util.Map;
@@ -216,6 +217,7 @@ public class RobolectricModel {
       // Other imports that the generated class needs
       imports.add("java.util.Map");
       imports.add("java.util.HashMap");
+      imports.add("java.util.function.Predicate");
       imports.add("javax.annotation.Generated");
       imports.add("org.robolectric.internal.ShadowProvider");
       imports.add("org.robolectric.shadow.api.Shadow");
@@ -232,7 +234,13 @@ public class RobolectricModel {
         }
       };
       shadowTypes.values().forEach(shadowInfo -> shadowInfo.prepare(referentResolver, helpers));
-      resetterMap.values().forEach(resetterInfo -> resetterInfo.prepare(referentResolver));
+      resetterMap.forEach((shadowName, resetterInfo) -> {
+        ShadowInfo shadowInfo = shadowTypes.get(shadowName);
+        String actualName = shadowInfo == null
+            ? extraShadowTypes.get(helpers.getBinaryName(resetterInfo.shadowType))
+            : shadowInfo.getActualBinaryName();
+        resetterInfo.prepare(referentResolver, helpers, actualName);
+      });
     }
 
     private void registerType(TypeElement type) {
@@ -452,14 +460,28 @@ public class RobolectricModel {
     private final TypeElement shadowType;
     private final ExecutableElement executableElement;
     private String shadowTypeReferent;
+    private final List<String> classNames = new ArrayList<>();
 
     ResetterInfo(TypeElement shadowType, ExecutableElement executableElement) {
       this.shadowType = shadowType;
       this.executableElement = executableElement;
     }
 
-    void prepare(ReferentResolver referentResolver) {
+    void prepare(ReferentResolver referentResolver, Helpers helpers, String actualName) {
       shadowTypeReferent = referentResolver.getReferentFor(shadowType);
+      classNames.clear();
+      if (actualName != null) {
+        classNames.add(actualName);
+      }
+      classNames.add(helpers.getBinaryName(shadowType));
+    }
+
+    /**
+     * Returns the binary names of the shadow and the class it shadows; the resetter only needs to
+     * run once one of them has been loaded.
+     */
+    public List<String> getClassNames() {
+      return classNames;
     }
 
     private Implements getImplementsAnnotation() {
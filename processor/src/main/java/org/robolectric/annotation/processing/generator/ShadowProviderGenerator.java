@@ -3,6 +3,8 @@ package org.robolectric.annotation.processing.generator;
 import com.google.common.base.Joiner;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.TreeMap;
@@ -137,20 +139,23 @@ public class ShadowProviderGenerator extends Generator {
     writer.println("  @Override");
     writer.println("  public void reset() {");
     for (RobolectricModel.ResetterInfo resetterInfo : model.getResetters()) {
-      int minSdk = resetterInfo.getMinSdk();
-      int maxSdk = resetterInfo.getMaxSdk();
-      String ifClause;
-      if (minSdk != -1 && maxSdk != -1) {
-        ifClause = "if (org.robolectric.RuntimeEnvironment.getApiLevel() >= " + minSdk +
-            " && org.robolectric.RuntimeEnvironment.getApiLevel() <= " + maxSdk + ") ";
-      } else if (maxSdk != -1) {
-        ifClause = "if (org.robolectric.RuntimeEnvironment.getApiLevel() <= " + maxSdk + ") ";
-      } else if (minSdk != -1) {
-        ifClause = "if (org.robolectric.RuntimeEnvironment.getApiLevel() >= " + minSdk + ") ";
-      } else {
-        ifClause = "";
+      writer.println("    " + getSdkIfClause(resetterInfo) + resetterInfo.getMethodCall());
+    }
+    writer.println("  }");
+    writer.println();
+
+    // Resetters for classes which haven't been loaded have nothing to reset, so only call the
+    // ones the sandbox has actually used.
+    writer.println("  @Override");
+    writer.println("  public void reset(Predicate<String> isClassLoaded) {");
+    for (RobolectricModel.ResetterInfo resetterInfo : model.getResetters()) {
+      List<String> conditions = new ArrayList<>();
+      for (String className : resetterInfo.getClassNames()) {
+        conditions.add("isClassLoaded.test(\"" + className + "\")");
       }
-      writer.println("    " + ifClause + resetterInfo.getMethodCall());
+      writer.println("    if (" + Joiner.on("\n        || ").join(conditions) + ") {");
+      writer.println("      " + getSdkIfClause(resetterInfo) + resetterInfo.getMethodCall());
+      writer.println("    }");
     }
     writer.println("  }");
     writer.println();
@@ -196,4 +201,19 @@ public class ShadowProviderGenerator extends Generator {
 
     writer.println('}');
   }
+
+  private static String getSdkIfClause(RobolectricModel.ResetterInfo resetterInfo) {
+    int minSdk = resetterInfo.getMinSdk();
+    int maxSdk = resetterInfo.getMaxSdk();
+    if (minSdk != -1 && maxSdk != -1) {
+      return "if (org.robolectric.RuntimeEnvironment.getApiLevel() >= " + minSdk +
+          " && org.robolectric.RuntimeEnvironment.getApiLevel() <= " + maxSdk + ") ";
+    } else if (maxSdk != -1) {
+      return "if (org.robolectric.RuntimeEnvironment.getApiLevel() <= " + maxSdk + ") ";
+    } else if (minSdk != -1) {
+      return "if (org.robolectric.RuntimeEnvironment.getApiLevel() >= " + minSdk + ") ";
+    } else {
+      return "";
+    }
+  }
 }
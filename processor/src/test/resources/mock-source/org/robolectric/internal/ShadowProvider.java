@@ -1,11 +1,16 @@
 package org.robolectric.internal;
 
 import java.util.Map;
+import java.util.function.Predicate;
 
 public interface ShadowProvider {
 
   void reset();
 
+  default void reset(Predicate<String> isClassLoaded) {
+    reset();
+  }
+
   String[] getProvidedPackageNames();
 
   Map<String, String> getShadowMap();
@@ -4,6 +4,7 @@ import com.example.objects.AnyObject;
 import com.example.objects.Dummy;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Predicate;
 import javax.annotation.Generated;
 import org.robolectric.annotation.processing.shadows.ShadowClassNameOnly;
 import org.robolectric.annotation.processing.shadows.ShadowDummy;
@@ -34,6 +35,18 @@ public class Shadows implements ShadowProvider {
     ShadowDummy.resetter_method();
   }
 
+  @Override
+  public void reset(Predicate<String> isClassLoaded) {
+    if (isClassLoaded.test("com.example.objects.AnyObject")
+        || isClassLoaded.test("org.robolectric.annotation.processing.shadows.ShadowClassNameOnly")) {
+      ShadowClassNameOnly.anotherResetter();
+    }
+    if (isClassLoaded.test("com.example.objects.Dummy")
+        || isClassLoaded.test("org.robolectric.annotation.processing.shadows.ShadowDummy")) {
+      ShadowDummy.resetter_method();
+    }
+  }
+
   @Override
   public Map<String, String> getShadowMap() {
     return SHADOW_MAP;
@@ -3,6 +3,7 @@ package org.robolectric;
 import com.example.objects.Dummy;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Predicate;
 import javax.annotation.Generated;
 import org.robolectric.annotation.processing.shadows.ShadowDummy;
 import org.robolectric.internal.ShadowProvider;
@@ -26,6 +27,14 @@ public class Shadows implements ShadowProvider {
     ShadowDummy.resetter_method();
   }
 
+  @Override
+  public void reset(Predicate<String> isClassLoaded) {
+    if (isClassLoaded.test("com.example.objects.Dummy")
+        || isClassLoaded.test("org.robolectric.annotation.processing.shadows.ShadowDummy")) {
+      ShadowDummy.resetter_method();
+    }
+  }
+
   @Override
   public Map<String, String> getShadowMap() {
     return SHADOW_MAP;
@@ -4,6 +4,7 @@ import com.example.objects.Dummy;
 import com.example.objects.OuterDummy2;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Predicate;
 import javax.annotation.Generated;
 import org.robolectric.annotation.processing.shadows.ShadowDummy;
 import org.robolectric.annotation.processing.shadows.ShadowOuterDummy2;
@@ -41,6 +42,18 @@ public class Shadows implements ShadowProvider {
     ShadowPrivate.resetMethod();
   }
 
+  @Override
+  public void reset(Predicate<String> isClassLoaded) {
+    if (isClassLoaded.test("com.example.objects.Dummy")
+        || isClassLoaded.test("org.robolectric.annotation.processing.shadows.ShadowDummy")) {
+      ShadowDummy.resetter_method();
+    }
+    if (isClassLoaded.test("com.example.objects.Private")
+        || isClassLoaded.test("org.robolectric.annotation.processing.shadows.ShadowPrivate")) {
+      ShadowPrivate.resetMethod();
+    }
+  }
+
   @Override
   public Map<String, String> getShadowMap() {
     return SHADOW_MAP;
@@ -6,6 +6,7 @@ import com.example.objects.UniqueDummy;
 import com.example.objects.UniqueDummy.UniqueInnerDummy;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Predicate;
 import javax.annotation.Generated;
 import org.robolectric.annotation.processing.shadows.ShadowDummy;
 import org.robolectric.annotation.processing.shadows.ShadowOuterDummy;
@@ -57,6 +58,14 @@ public class Shadows implements ShadowProvider {
     ShadowDummy.resetter_method();
   }
 
+  @Override
+  public void reset(Predicate<String> isClassLoaded) {
+    if (isClassLoaded.test("com.example.objects.Dummy")
+        || isClassLoaded.test("org.robolectric.annotation.processing.shadows.ShadowDummy")) {
+      ShadowDummy.resetter_method();
+    }
+  }
+
   @Override
   public Map<String, String> getShadowMap() {
     return SHADOW_MAP;
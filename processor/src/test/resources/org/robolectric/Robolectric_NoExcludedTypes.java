@@ -2,6 +2,7 @@ package org.robolectric;
 
 import java.util.HashMap;
 import java.util.Map;
+import java.util.function.Predicate;
 import javax.annotation.Generated;
 import org.robolectric.internal.ShadowProvider;
 import org.robolectric.shadow.api.Shadow;
@@ -22,6 +23,10 @@ public class Shadows implements ShadowProvider {
   public void reset() {
   }
 
+  @Override
+  public void reset(Predicate<String> isClassLoaded) {
+  }
+
   @Override
   public Map<String, String> getShadowMap() {
     return SHADOW_MAP;
@@ -3,6 +3,8 @@ package org.robolectric.res;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
 import org.robolectric.util.Logger;
 
 @SuppressWarnings("NewApi")
@@ -16,12 +18,21 @@ public abstract class DocumentLoader {
   }
 
   public void load(String folderBaseName) throws IOException {
+    for (XmlContext xmlContext : listResourceXmlFiles(folderBaseName)) {
+      loadResourceXmlFile(xmlContext);
+    }
+  }
+
+  /** Returns the XML files in the given folders, in the order {@link #load} loads them. */
+  List<XmlContext> listResourceXmlFiles(String folderBaseName) throws IOException {
+    List<XmlContext> xmlContexts = new ArrayList<>();
     for (Path dir : Fs.listFiles(resourceBase, new DirBaseNameFilter(folderBaseName))) {
-      loadFile(dir);
+      listFiles(dir, xmlContexts);
     }
+    return xmlContexts;
   }
 
-  private void loadFile(Path dir) throws IOException {
+  private void listFiles(Path dir, List<XmlContext> xmlContexts) throws IOException {
     if (!Files.exists(dir)) {
       throw new RuntimeException("no such directory " + dir);
     }
@@ -38,7 +49,7 @@ public abstract class DocumentLoader {
     }
 
     for (Path file : Fs.listFiles(dir, path -> path.getFileName().toString().endsWith(".xml"))) {
-      loadResourceXmlFile(new XmlContext(packageName, file, qualifiers));
+      xmlContexts.add(new XmlContext(packageName, file, qualifiers));
     }
   }
 
@@ -1,10 +1,11 @@
 package org.robolectric.res;
 
-import com.google.common.collect.BiMap;
-import com.google.common.collect.HashBiMap;
 import java.io.IOException;
 import java.io.InputStream;
 import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import javax.annotation.Nonnull;
 import org.robolectric.res.android.ResTable_config;
 import org.robolectric.res.builder.XmlBlock;
@@ -15,7 +16,10 @@ import org.robolectric.res.builder.XmlBlock;
 public class PackageResourceTable implements ResourceTable {
 
   private final ResBunch resources = new ResBunch();
-  private final BiMap<Integer, ResName> resourceTable = HashBiMap.create();
+  private final ResourceIdIndex<ResName> resNames = new ResourceIdIndex<>();
+  private final Map<ResName, Integer> resourceIds = new HashMap<>();
+  // The values for each ID, so they can be found without hashing a ResName.
+  private final ResourceIdIndex<List<TypedResource>> values = new ResourceIdIndex<>();
 
   private final ResourceIdGenerator androidResourceIdGenerator = new ResourceIdGenerator(0x01);
   private final String packageName;
@@ -37,21 +41,18 @@ public class PackageResourceTable implements ResourceTable {
 
   @Override
   public Integer getResourceId(ResName resName) {
-    Integer id = resourceTable.inverse().get(resName);
+    Integer id = resourceIds.get(resName);
     if (id == null && resName != null && resName.name.contains(".")) {
       // try again with underscores (in case we're looking in the compile-time resources, where
       // we haven't read XML declarations and only know what the R.class tells us).
-      id =
-          resourceTable
-              .inverse()
-              .get(new ResName(resName.packageName, resName.type, underscorize(resName.name)));
+      id = resourceIds.get(new ResName(resName.packageName, resName.type, underscorize(resName.name)));
     }
     return id != null ? id : 0;
   }
 
   @Override
   public ResName getResName(int resourceId) {
-    return resourceTable.get(resourceId);
+    return resNames.get(resourceId);
   }
 
   @Override
@@ -61,7 +62,7 @@ public class PackageResourceTable implements ResourceTable {
 
   @Override
   public TypedResource getValue(int resId, ResTable_config config) {
-    return resources.get(getResName(resId), config);
+    return ResBundle.pick(resNames.get(resId), values.get(resId), config);
   }
 
   @Override public XmlBlock getXml(ResName resName, ResTable_config config) {
@@ -118,10 +119,15 @@ public class PackageResourceTable implements ResourceTable {
         throw new IllegalArgumentException("Incompatible package for " + packageName + ":" + type + "/" + name + " with resId " + resIdPackageIdentifier + " to ResourceIndex with packageIdentifier " + getPackageIdentifier());
       }
 
-      ResName existingEntry = resourceTable.put(resId, resName);
+      ResName existingEntry = resNames.get(resId);
       if (existingEntry != null && !existingEntry.equals(resName)) {
         throw new IllegalArgumentException("ResId " + Integer.toHexString(resId) + " mapped to both " + resName + " and " + existingEntry);
       }
+      Integer existingId = resourceIds.get(resName);
+      if (existingId != null && existingId != resId) {
+        throw new IllegalArgumentException(resName + " mapped to both " + Integer.toHexString(resId) + " and " + Integer.toHexString(existingId));
+      }
+      putId(resId, resName);
   }
 
   void addResource(String type, String name, TypedResource value) {
@@ -130,20 +136,36 @@ public class PackageResourceTable implements ResourceTable {
     // compound style names were previously registered with underscores (TextAppearance_Small)
     // because they came from R.style; re-register with dots.
     ResName resNameWithUnderscores = new ResName(packageName, type, underscorize(name));
-    Integer oldId = resourceTable.inverse().get(resNameWithUnderscores);
-    if (oldId != null) {
-      resourceTable.forcePut(oldId, resName);
+    Integer oldId = resourceIds.get(resNameWithUnderscores);
+    if (oldId != null && !resNameWithUnderscores.equals(resName)) {
+      resourceIds.remove(resNameWithUnderscores);
+      Integer otherId = resourceIds.get(resName);
+      if (otherId != null) {
+        resNames.put(otherId, null);
+        values.put(otherId, null);
+      }
+      putId(oldId, resName);
     }
 
-    Integer id = resourceTable.inverse().get(resName);
+    Integer id = resourceIds.get(resName);
     if (id == null && isAndroidPackage(resName)) {
       id = androidResourceIdGenerator.generate(type, name);
-      ResName existing = resourceTable.put(id, resName);
+      ResName existing = resNames.get(id);
       if (existing != null) {
         throw new IllegalStateException(resName + " assigned ID to already existing " + existing);
       }
+      putId(id, resName);
     }
     resources.put(resName, value);
+    if (id != null) {
+      values.put(id, resources.getValues(resName));
+    }
+  }
+
+  private void putId(int resId, ResName resName) {
+    resNames.put(resId, resName);
+    resourceIds.put(resName, resId);
+    values.put(resId, resources.getValues(resName));
   }
 
   private boolean isAndroidPackage(ResName resName) {
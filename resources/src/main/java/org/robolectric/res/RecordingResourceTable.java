@@ -0,0 +1,52 @@
+package org.robolectric.res;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Resource table which just records the resources added to it, so that files can be parsed
+ * concurrently and their resources then added to the real table in a deterministic order, or so
+ * that the table can be saved as a {@link ResourceTableSnapshot}.
+ */
+class RecordingResourceTable extends PackageResourceTable {
+  private final List<Entry> entries = new ArrayList<>();
+
+  RecordingResourceTable(String packageName) {
+    super(packageName);
+  }
+
+  @Override
+  void addResource(int resId, String type, String name) {
+    entries.add(new Entry(resId, type, name, null));
+  }
+
+  @Override
+  void addResource(String type, String name, TypedResource value) {
+    entries.add(new Entry(0, type, name, value));
+  }
+
+  /** Adds the recorded resources to the given table, in the order they were recorded. */
+  void replayTo(PackageResourceTable resourceTable) {
+    for (Entry entry : entries) {
+      if (entry.value == null) {
+        resourceTable.addResource(entry.resId, entry.type, entry.name);
+      } else {
+        resourceTable.addResource(entry.type, entry.name, entry.value);
+      }
+    }
+  }
+
+  private static class Entry {
+    final int resId;
+    final String type;
+    final String name;
+    final TypedResource value;
+
+    Entry(int resId, String type, String name, TypedResource value) {
+      this.resId = resId;
+      this.type = type;
+      this.name = name;
+      this.value = value;
+    }
+  }
+}
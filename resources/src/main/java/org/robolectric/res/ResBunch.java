@@ -1,6 +1,7 @@
 package org.robolectric.res;
 
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import javax.annotation.Nonnull;
 import org.robolectric.res.android.ResTable_config;
@@ -27,6 +28,15 @@ public class ResBunch {
     return bundle.get(resName, config);
   }
 
+  /**
+   * Returns the list of values for {@code resName}, or null if there are none yet. Values added
+   * later are added to the same list.
+   */
+  List<TypedResource> getValues(@Nonnull ResName resName) {
+    ResBundle bundle = types.get(resName.type);
+    return bundle == null ? null : bundle.getValues(resName);
+  }
+
   void receive(ResourceTable.Visitor visitor) {
     for (ResBundle resBundle : types.values()) {
       resBundle.receive(visitor);
@@ -18,37 +18,45 @@ public class ResBundle {
     return valuesMap.pick(resName, config);
   }
 
+  List<TypedResource> getValues(ResName resName) {
+    return valuesMap.map.get(resName);
+  }
+
   public void receive(ResourceTable.Visitor visitor) {
     for (final Map.Entry<ResName, List<TypedResource>> entry : valuesMap.map.entrySet()) {
       visitor.visit(entry.getKey(), entry.getValue());
     }
   }
 
-  static class ResMap {
-    private final Map<ResName, List<TypedResource>> map = new HashMap<>();
-
-    public TypedResource pick(ResName resName, ResTable_config toMatch) {
-      List<TypedResource> values = map.get(resName);
-      if (values == null || values.size() == 0) return null;
+  /** Picks the value among {@code values} which best matches {@code toMatch}. */
+  static TypedResource pick(ResName resName, List<TypedResource> values, ResTable_config toMatch) {
+    if (values == null || values.size() == 0) return null;
 
-      TypedResource bestMatchSoFar = null;
-      for (TypedResource candidate : values) {
-        ResTable_config candidateConfig = candidate.getConfig();
-        if (candidateConfig.match(toMatch)) {
-          if (bestMatchSoFar == null || candidateConfig.isBetterThan(bestMatchSoFar.getConfig(), toMatch)) {
-            bestMatchSoFar = candidate;
-          }
+    TypedResource bestMatchSoFar = null;
+    for (TypedResource candidate : values) {
+      ResTable_config candidateConfig = candidate.getConfig();
+      if (candidateConfig.match(toMatch)) {
+        if (bestMatchSoFar == null || candidateConfig.isBetterThan(bestMatchSoFar.getConfig(), toMatch)) {
+          bestMatchSoFar = candidate;
         }
       }
+    }
 
-      if (Logger.loggingEnabled()) {
-        Logger.debug("Picked '%s' for %s for qualifiers '%s' (%d candidates)",
-            bestMatchSoFar == null ? "<none>" : bestMatchSoFar.getXmlContext().getQualifiers().toString(),
-            resName.getFullyQualifiedName(),
-            toMatch,
-            values.size());
-      }
-      return bestMatchSoFar;
+    if (Logger.loggingEnabled()) {
+      Logger.debug("Picked '%s' for %s for qualifiers '%s' (%d candidates)",
+          bestMatchSoFar == null ? "<none>" : bestMatchSoFar.getXmlContext().getQualifiers().toString(),
+          resName.getFullyQualifiedName(),
+          toMatch,
+          values.size());
+    }
+    return bestMatchSoFar;
+  }
+
+  static class ResMap {
+    private final Map<ResName, List<TypedResource>> map = new HashMap<>();
+
+    public TypedResource pick(ResName resName, ResTable_config toMatch) {
+      return ResBundle.pick(resName, map.get(resName), toMatch);
     }
 
     public void put(ResName resName, TypedResource value) {
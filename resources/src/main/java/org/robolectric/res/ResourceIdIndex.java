@@ -0,0 +1,56 @@
+package org.robolectric.res;
+
+import java.util.Arrays;
+
+/**
+ * Maps the resource IDs of a single package to values, using arrays indexed by type and entry
+ * identifiers rather than boxing and hashing each ID.
+ *
+ * Resource IDs are assigned densely from zero within each type, so the arrays are mostly full.
+ */
+class ResourceIdIndex<T> {
+  private int packageIdentifier = -1;
+  private Object[][] entriesByType = new Object[0][];
+
+  @SuppressWarnings("unchecked")
+  T get(int resId) {
+    if (ResourceIds.getPackageIdentifier(resId) != packageIdentifier) {
+      return null;
+    }
+    int typeId = ResourceIds.getTypeIdentifier(resId);
+    int entryId = ResourceIds.getEntryIdentifier(resId);
+    if (typeId >= entriesByType.length) {
+      return null;
+    }
+    Object[] entries = entriesByType[typeId];
+    if (entries == null || entryId >= entries.length) {
+      return null;
+    }
+    return (T) entries[entryId];
+  }
+
+  /** Maps {@code resId} to {@code value}, returning the value it was mapped to before, if any. */
+  T put(int resId, T value) {
+    if (packageIdentifier == -1) {
+      packageIdentifier = ResourceIds.getPackageIdentifier(resId);
+    } else if (ResourceIds.getPackageIdentifier(resId) != packageIdentifier) {
+      throw new IllegalArgumentException("Incompatible package for resId "
+          + Integer.toHexString(resId) + " in index for package " + packageIdentifier);
+    }
+    int typeId = ResourceIds.getTypeIdentifier(resId);
+    int entryId = ResourceIds.getEntryIdentifier(resId);
+    if (typeId >= entriesByType.length) {
+      entriesByType = Arrays.copyOf(entriesByType, typeId + 1);
+    }
+    Object[] entries = entriesByType[typeId];
+    if (entries == null) {
+      entries = entriesByType[typeId] = new Object[entryId + 1];
+    } else if (entryId >= entries.length) {
+      entries = entriesByType[typeId] =
+          Arrays.copyOf(entries, Math.max(entryId + 1, entries.length * 2));
+    }
+    T previous = get(resId);
+    entries[entryId] = value;
+    return previous;
+  }
+}
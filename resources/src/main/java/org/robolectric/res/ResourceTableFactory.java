@@ -1,20 +1,45 @@
 package org.robolectric.res;
 
+import com.google.common.base.Throwables;
 import java.io.IOException;
 import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
 import org.robolectric.util.Logger;
 import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.PerfStatsCollector.MetricHandle;
 
 public class ResourceTableFactory {
+  private static final int PARSER_THREADS = Math.max(1,
+      Integer.getInteger("robolectric.resourceLoadingThreads",
+          Runtime.getRuntime().availableProcessors()));
+  private static ExecutorService parserExecutor;
+
+  private final boolean parallel;
+
+  public ResourceTableFactory() {
+    this(Boolean.parseBoolean(System.getProperty("robolectric.parallelResourceLoading", "true")));
+  }
+
+  /** @param parallel whether resource files may be parsed concurrently */
+  ResourceTableFactory(boolean parallel) {
+    this.parallel = parallel;
+  }
+
   /** Builds an Android framework resource table in the "android" package space. */
   public PackageResourceTable newFrameworkResourceTable(ResourcePath resourcePath) {
     return PerfStatsCollector.getInstance()
         .measure(
             "load legacy framework resources",
-            () -> {
-              PackageResourceTable resourceTable = new PackageResourceTable("android");
-
+            () -> load("android", new ResourcePath[] {resourcePath}, resourceTable -> {
               if (resourcePath.getRClass() != null) {
                 addRClassValues(resourceTable, resourcePath.getRClass());
                 addMissingStyleableAttributes(resourceTable, resourcePath.getRClass());
@@ -24,10 +49,8 @@ public class ResourceTableFactory {
                 addMissingStyleableAttributes(resourceTable, resourcePath.getInternalRClass());
               }
 
-              parseResourceFiles(resourcePath, resourceTable);
-
-              return resourceTable;
-            });
+              parseResourceFiles(resourceTable, resourcePath);
+            }));
   }
 
   /**
@@ -38,9 +61,7 @@ public class ResourceTableFactory {
     return PerfStatsCollector.getInstance()
         .measure(
             "load legacy app resources",
-            () -> {
-              PackageResourceTable resourceTable = new PackageResourceTable(packageName);
-
+            () -> load(packageName, resourcePaths, resourceTable -> {
               for (ResourcePath resourcePath : resourcePaths) {
                 if (resourcePath.getRClass() != null) {
                   addRClassValues(resourceTable, resourcePath.getRClass());
@@ -48,11 +69,35 @@ public class ResourceTableFactory {
               }
 
               for (ResourcePath resourcePath : resourcePaths) {
-                parseResourceFiles(resourcePath, resourceTable);
+                parseResourceFiles(resourceTable, resourcePath);
               }
+            }));
+  }
 
-              return resourceTable;
-            });
+  /**
+   * Builds a resource table using {@code builder}, or reads it from its snapshot if there is one.
+   */
+  private static PackageResourceTable load(String packageName, ResourcePath[] resourcePaths,
+      Consumer<PackageResourceTable> builder) {
+    ResourceTableSnapshot snapshot =
+        ResourceTableSnapshot.forResourcePaths(packageName, resourcePaths);
+    if (snapshot == null) {
+      PackageResourceTable resourceTable = new PackageResourceTable(packageName);
+      builder.accept(resourceTable);
+      return resourceTable;
+    }
+
+    PackageResourceTable resourceTable = snapshot.read();
+    if (resourceTable != null) {
+      return resourceTable;
+    }
+
+    RecordingResourceTable recording = new RecordingResourceTable(packageName);
+    builder.accept(recording);
+    resourceTable = new PackageResourceTable(packageName);
+    recording.replayTo(resourceTable);
+    snapshot.write(recording);
+    return resourceTable;
   }
 
   private void addRClassValues(PackageResourceTable resourceTable, Class<?> rClass) {
@@ -108,63 +153,141 @@ public class ResourceTableFactory {
     }
   }
 
-  private void parseResourceFiles(ResourcePath resourcePath, PackageResourceTable resourceTable) {
-    if (!resourcePath.hasResources()) {
-      Logger.debug("No resources for %s", resourceTable.getPackageName());
-      return;
+  /**
+   * Parses the resource files of each path. Files are parsed concurrently unless the
+   * {@code robolectric.parallelResourceLoading} system property is {@code false}, but their
+   * resources are added to the table in the same order as if they were parsed one at a time, so
+   * later paths still override earlier ones. Parsing runs on a pool of
+   * {@code robolectric.resourceLoadingThreads} threads (one per CPU by default), which is shared
+   * by every table being built in the JVM.
+   */
+  private void parseResourceFiles(PackageResourceTable resourceTable,
+      ResourcePath... resourcePaths) {
+    String packageName = resourceTable.getPackageName();
+    List<Callable<RecordingResourceTable>> tasks = new ArrayList<>();
+    for (ResourcePath resourcePath : resourcePaths) {
+      if (!resourcePath.hasResources()) {
+        Logger.debug("No resources for %s", packageName);
+        continue;
+      }
+
+      Logger.debug("Loading resources for %s from %s...", packageName, resourcePath.getResourceBase());
+
+      MetricHandle metric = PerfStatsCollector.getInstance()
+          .metric("parse legacy resources from " + resourcePath.getResourceBase());
+      List<XmlContext> valuesFiles;
+      try {
+        valuesFiles =
+            new StaxDocumentLoader(packageName, resourcePath.getResourceBase(), new NodeHandler())
+                .listResourceXmlFiles("values");
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+      for (XmlContext xmlContext : valuesFiles) {
+        tasks.add(() -> metric.measure(() -> {
+          RecordingResourceTable recording = new RecordingResourceTable(packageName);
+          new StaxDocumentLoader(packageName, resourcePath.getResourceBase(),
+              newValuesHandler(recording)).loadResourceXmlFile(xmlContext);
+          return recording;
+        }));
+      }
+      tasks.add(() -> metric.measure(() -> {
+        RecordingResourceTable recording = new RecordingResourceTable(packageName);
+        loadFiles(resourcePath, recording);
+        return recording;
+      }));
     }
 
-    Logger.debug("Loading resources for %s from %s...", resourceTable.getPackageName(), resourcePath.getResourceBase());
+    for (RecordingResourceTable recording : runAll(tasks)) {
+      recording.replayTo(resourceTable);
+    }
+  }
 
+  private List<RecordingResourceTable> runAll(List<Callable<RecordingResourceTable>> tasks) {
+    List<RecordingResourceTable> results = new ArrayList<>();
     try {
-      new StaxDocumentLoader(resourceTable.getPackageName(), resourcePath.getResourceBase(),
-          new NodeHandler()
-              .addHandler("resources", new NodeHandler()
-                  .addHandler("bool", new StaxValueLoader(resourceTable, "bool", ResType.BOOLEAN))
-                  .addHandler("item[@type='bool']", new StaxValueLoader(resourceTable, "bool", ResType.BOOLEAN))
-                  .addHandler("color", new StaxValueLoader(resourceTable, "color", ResType.COLOR))
-                  .addHandler("item[@type='color']", new StaxValueLoader(resourceTable, "color", ResType.COLOR))
-                  .addHandler("drawable", new StaxValueLoader(resourceTable, "drawable", ResType.DRAWABLE))
-                  .addHandler("item[@type='drawable']", new StaxValueLoader(resourceTable, "drawable", ResType.DRAWABLE))
-                  .addHandler("item[@type='mipmap']", new StaxValueLoader(resourceTable, "mipmap", ResType.DRAWABLE))
-                  .addHandler("dimen", new StaxValueLoader(resourceTable, "dimen", ResType.DIMEN))
-                  .addHandler("item[@type='dimen']", new StaxValueLoader(resourceTable, "dimen", ResType.DIMEN))
-                  .addHandler("integer", new StaxValueLoader(resourceTable, "integer", ResType.INTEGER))
-                  .addHandler("item[@type='integer']", new StaxValueLoader(resourceTable, "integer", ResType.INTEGER))
-                  .addHandler("integer-array", new StaxArrayLoader(resourceTable, "array", ResType.INTEGER_ARRAY, ResType.INTEGER))
-                  .addHandler("fraction", new StaxValueLoader(resourceTable, "fraction", ResType.FRACTION))
-                  .addHandler("item[@type='fraction']", new StaxValueLoader(resourceTable, "fraction", ResType.FRACTION))
-                  .addHandler("item[@type='layout']", new StaxValueLoader(resourceTable, "layout", ResType.LAYOUT))
-                  .addHandler("plurals", new StaxPluralsLoader(resourceTable, "plurals", ResType.CHAR_SEQUENCE))
-                  .addHandler("string", new StaxValueLoader(resourceTable, "string", ResType.CHAR_SEQUENCE))
-                  .addHandler("item[@type='string']", new StaxValueLoader(resourceTable, "string", ResType.CHAR_SEQUENCE))
-                  .addHandler("string-array", new StaxArrayLoader(resourceTable, "array", ResType.CHAR_SEQUENCE_ARRAY, ResType.CHAR_SEQUENCE))
-                  .addHandler("array", new StaxArrayLoader(resourceTable, "array", ResType.TYPED_ARRAY, null))
-                  .addHandler("id", new StaxValueLoader(resourceTable, "id", ResType.CHAR_SEQUENCE))
-                  .addHandler("item[@type='id']", new StaxValueLoader(resourceTable, "id", ResType.CHAR_SEQUENCE))
-                  .addHandler("attr", new StaxAttrLoader(resourceTable, "attr", ResType.ATTR_DATA))
-                  .addHandler("declare-styleable", new NodeHandler()
-                      .addHandler("attr", new StaxAttrLoader(resourceTable, "attr", ResType.ATTR_DATA))
-                  )
-                  .addHandler("style", new StaxStyleLoader(resourceTable, "style", ResType.STYLE))
-              )).load("values");
-
-      loadOpaque(resourcePath, resourceTable, "layout", ResType.LAYOUT);
-      loadOpaque(resourcePath, resourceTable, "menu", ResType.LAYOUT);
-      loadOpaque(resourcePath, resourceTable, "drawable", ResType.DRAWABLE);
-      loadOpaque(resourcePath, resourceTable, "mipmap", ResType.DRAWABLE);
-      loadOpaque(resourcePath, resourceTable, "anim", ResType.LAYOUT);
-      loadOpaque(resourcePath, resourceTable, "animator", ResType.LAYOUT);
-      loadOpaque(resourcePath, resourceTable, "color", ResType.COLOR_STATE_LIST);
-      loadOpaque(resourcePath, resourceTable, "xml", ResType.LAYOUT);
-      loadOpaque(resourcePath, resourceTable, "transition", ResType.LAYOUT);
-      loadOpaque(resourcePath, resourceTable, "interpolator", ResType.LAYOUT);
-
-      new DrawableResourceLoader(resourceTable).findDrawableResources(resourcePath);
-      new RawResourceLoader(resourcePath).loadTo(resourceTable);
+      if (parallel && tasks.size() > 1) {
+        for (Future<RecordingResourceTable> future : getParserExecutor().invokeAll(tasks)) {
+          results.add(future.get());
+        }
+      } else {
+        for (Callable<RecordingResourceTable> task : tasks) {
+          results.add(task.call());
+        }
+      }
+    } catch (ExecutionException e) {
+      Throwables.throwIfUnchecked(e.getCause());
+      throw new RuntimeException(e.getCause());
+    } catch (RuntimeException e) {
+      throw e;
     } catch (Exception e) {
       throw new RuntimeException(e);
     }
+    return results;
+  }
+
+  private static synchronized ExecutorService getParserExecutor() {
+    if (parserExecutor == null) {
+      AtomicInteger nextThread = new AtomicInteger();
+      parserExecutor = Executors.newFixedThreadPool(PARSER_THREADS, runnable -> {
+        Thread thread =
+            new Thread(runnable, "robolectric-resources-" + nextThread.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return parserExecutor;
+  }
+
+  private NodeHandler newValuesHandler(PackageResourceTable resourceTable) {
+    return new NodeHandler()
+        .addHandler("resources", new NodeHandler()
+            .addHandler("bool", new StaxValueLoader(resourceTable, "bool", ResType.BOOLEAN))
+            .addHandler("item[@type='bool']", new StaxValueLoader(resourceTable, "bool", ResType.BOOLEAN))
+            .addHandler("color", new StaxValueLoader(resourceTable, "color", ResType.COLOR))
+            .addHandler("item[@type='color']", new StaxValueLoader(resourceTable, "color", ResType.COLOR))
+            .addHandler("drawable", new StaxValueLoader(resourceTable, "drawable", ResType.DRAWABLE))
+            .addHandler("item[@type='drawable']", new StaxValueLoader(resourceTable, "drawable", ResType.DRAWABLE))
+            .addHandler("item[@type='mipmap']", new StaxValueLoader(resourceTable, "mipmap", ResType.DRAWABLE))
+            .addHandler("dimen", new StaxValueLoader(resourceTable, "dimen", ResType.DIMEN))
+            .addHandler("item[@type='dimen']", new StaxValueLoader(resourceTable, "dimen", ResType.DIMEN))
+            .addHandler("integer", new StaxValueLoader(resourceTable, "integer", ResType.INTEGER))
+            .addHandler("item[@type='integer']", new StaxValueLoader(resourceTable, "integer", ResType.INTEGER))
+            .addHandler("integer-array", new StaxArrayLoader(resourceTable, "array", ResType.INTEGER_ARRAY, ResType.INTEGER))
+            .addHandler("fraction", new StaxValueLoader(resourceTable, "fraction", ResType.FRACTION))
+            .addHandler("item[@type='fraction']", new StaxValueLoader(resourceTable, "fraction", ResType.FRACTION))
+            .addHandler("item[@type='layout']", new StaxValueLoader(resourceTable, "layout", ResType.LAYOUT))
+            .addHandler("plurals", new StaxPluralsLoader(resourceTable, "plurals", ResType.CHAR_SEQUENCE))
+            .addHandler("string", new StaxValueLoader(resourceTable, "string", ResType.CHAR_SEQUENCE))
+            .addHandler("item[@type='string']", new StaxValueLoader(resourceTable, "string", ResType.CHAR_SEQUENCE))
+            .addHandler("string-array", new StaxArrayLoader(resourceTable, "array", ResType.CHAR_SEQUENCE_ARRAY, ResType.CHAR_SEQUENCE))
+            .addHandler("array", new StaxArrayLoader(resourceTable, "array", ResType.TYPED_ARRAY, null))
+            .addHandler("id", new StaxValueLoader(resourceTable, "id", ResType.CHAR_SEQUENCE))
+            .addHandler("item[@type='id']", new StaxValueLoader(resourceTable, "id", ResType.CHAR_SEQUENCE))
+            .addHandler("attr", new StaxAttrLoader(resourceTable, "attr", ResType.ATTR_DATA))
+            .addHandler("declare-styleable", new NodeHandler()
+                .addHandler("attr", new StaxAttrLoader(resourceTable, "attr", ResType.ATTR_DATA))
+            )
+            .addHandler("style", new StaxStyleLoader(resourceTable, "style", ResType.STYLE))
+        );
+  }
+
+  /** Adds the resources which are files rather than values. */
+  private void loadFiles(ResourcePath resourcePath, PackageResourceTable resourceTable)
+      throws IOException {
+    loadOpaque(resourcePath, resourceTable, "layout", ResType.LAYOUT);
+    loadOpaque(resourcePath, resourceTable, "menu", ResType.LAYOUT);
+    loadOpaque(resourcePath, resourceTable, "drawable", ResType.DRAWABLE);
+    loadOpaque(resourcePath, resourceTable, "mipmap", ResType.DRAWABLE);
+    loadOpaque(resourcePath, resourceTable, "anim", ResType.LAYOUT);
+    loadOpaque(resourcePath, resourceTable, "animator", ResType.LAYOUT);
+    loadOpaque(resourcePath, resourceTable, "color", ResType.COLOR_STATE_LIST);
+    loadOpaque(resourcePath, resourceTable, "xml", ResType.LAYOUT);
+    loadOpaque(resourcePath, resourceTable, "transition", ResType.LAYOUT);
+    loadOpaque(resourcePath, resourceTable, "interpolator", ResType.LAYOUT);
+
+    new DrawableResourceLoader(resourceTable).findDrawableResources(resourcePath);
+    new RawResourceLoader(resourcePath).loadTo(resourceTable);
   }
 
   private void loadOpaque(
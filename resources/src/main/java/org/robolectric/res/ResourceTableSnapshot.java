@@ -0,0 +1,579 @@
+package org.robolectric.res;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import com.google.common.io.ByteStreams;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import org.robolectric.util.Logger;
+import org.robolectric.util.PerfStatsCollector;
+
+/**
+ * On-disk snapshot of a legacy {@link PackageResourceTable}, so that it needn't be built from XML
+ * again in every JVM.
+ *
+ * A snapshot records the calls which built the table, in order, so replaying them builds the same
+ * table, generated resource IDs included, without parsing anything. It's named by a hash of
+ * everything the table is built from: the values in the R classes, and the names, sizes and
+ * modification times of the resource files, so changing any of them leads to a new snapshot.
+ * Files are stored relative to their resource directory, which may be inside a jar, and resolved
+ * again when the snapshot is read.
+ *
+ * Snapshots are kept in the directory named by the {@code robolectric.resourceTableSnapshotDir}
+ * system property, and are memory-mapped when read. They're disabled if the property isn't set.
+ */
+class ResourceTableSnapshot {
+  static final String DIR_PROPERTY = "robolectric.resourceTableSnapshotDir";
+
+  private static final int MAGIC = 0x52525453; // "RRTS"
+  private static final int VERSION = 1;
+
+  private static final byte ADD_ID = 0;
+  private static final byte ADD_VALUE = 1;
+
+  private static final byte STRING = 0;
+  private static final byte ARRAY = 1;
+  private static final byte ATTR = 2;
+  private static final byte STYLE = 3;
+  private static final byte PLURALS = 4;
+  private static final byte FILE = 5;
+  private static final byte IMAGE = 6;
+
+  private final Path file;
+  private final String packageName;
+  private final ResourcePath[] resourcePaths;
+
+  ResourceTableSnapshot(Path file, String packageName, ResourcePath... resourcePaths) {
+    this.file = file;
+    this.packageName = packageName;
+    this.resourcePaths = resourcePaths;
+  }
+
+  /** Returns the snapshot for a table built from the given paths, or null if disabled. */
+  static ResourceTableSnapshot forResourcePaths(String packageName,
+      ResourcePath... resourcePaths) {
+    String dir = System.getProperty(DIR_PROPERTY);
+    if (dir == null || dir.isEmpty()) {
+      return null;
+    }
+
+    try {
+      String key = PerfStatsCollector.getInstance().measure("hash legacy resources",
+          () -> computeKey(packageName, resourcePaths));
+      return new ResourceTableSnapshot(Paths.get(dir).resolve(packageName + "-" + key + ".res"),
+          packageName, resourcePaths);
+    } catch (IOException | RuntimeException e) {
+      Logger.debug("couldn't hash resources for %s: %s", packageName, e);
+      return null;
+    }
+  }
+
+  /** Returns the table saved in this snapshot, or null if there isn't a usable one. */
+  PackageResourceTable read() {
+    if (!Files.isRegularFile(file)) {
+      return null;
+    }
+
+    return PerfStatsCollector.getInstance().measure("read legacy resource table snapshot", () -> {
+      try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+        ByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        return new Reader(buffer).readTable();
+      } catch (IOException | RuntimeException e) {
+        Logger.debug("couldn't read resource table snapshot %s: %s", file, e);
+        return null;
+      }
+    });
+  }
+
+  /**
+   * Saves the given table. Failures are ignored, since the table can always be built again; so is
+   * a table holding values this doesn't know how to save.
+   */
+  void write(RecordingResourceTable resourceTable) {
+    PerfStatsCollector.getInstance().measure("write legacy resource table snapshot", () -> {
+      Path tempFile = null;
+      try {
+        Writer writer = new Writer();
+        resourceTable.replayTo(writer);
+        byte[] bytes = writer.toByteArray();
+
+        Files.createDirectories(file.toAbsolutePath().getParent());
+        tempFile = Files.createTempFile(
+            file.toAbsolutePath().getParent(), file.getFileName().toString(), ".tmp");
+        Files.write(tempFile, bytes);
+        // Other processes may be writing the same snapshot; they'll all write the same bytes.
+        try {
+          Files.move(tempFile, file, StandardCopyOption.ATOMIC_MOVE);
+        } catch (AtomicMoveNotSupportedException e) {
+          Files.move(tempFile, file, StandardCopyOption.REPLACE_EXISTING);
+        }
+      } catch (IOException | RuntimeException e) {
+        Logger.debug("couldn't write resource table snapshot %s: %s", file, e);
+        if (tempFile != null) {
+          try {
+            Files.deleteIfExists(tempFile);
+          } catch (IOException ignored) {
+            // nothing more to do
+          }
+        }
+      }
+    });
+  }
+
+  static String computeKey(String packageName, ResourcePath... resourcePaths)
+      throws IOException {
+    MessageDigest digest;
+    try {
+      digest = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IllegalStateException(e);
+    }
+
+    try (DataOutputStream out =
+        new DataOutputStream(new DigestOutputStream(ByteStreams.nullOutputStream(), digest))) {
+      out.writeInt(VERSION);
+      out.writeUTF(packageName);
+      for (ResourcePath resourcePath : resourcePaths) {
+        hashRClass(resourcePath.getRClass(), out);
+        hashRClass(resourcePath.getInternalRClass(), out);
+        if (resourcePath.hasResources()) {
+          Path resourceBase = resourcePath.getResourceBase();
+          List<Path> files;
+          try (Stream<Path> stream = Files.walk(resourceBase)) {
+            files = stream
+                .filter(Files::isRegularFile)
+                .sorted(Comparator.comparing(path -> relativeName(resourceBase, path)))
+                .collect(Collectors.toList());
+          }
+          for (Path path : files) {
+            out.writeUTF(relativeName(resourceBase, path));
+            out.writeLong(Files.size(path));
+            out.writeLong(Files.getLastModifiedTime(path).toMillis());
+          }
+        }
+        out.writeUTF("");
+      }
+    }
+
+    StringBuilder key = new StringBuilder();
+    for (byte b : digest.digest()) {
+      key.append(String.format("%02x", b));
+    }
+    return key.toString();
+  }
+
+  private static void hashRClass(Class<?> rClass, DataOutputStream out) throws IOException {
+    if (rClass == null) {
+      out.writeUTF("");
+      return;
+    }
+
+    out.writeUTF(rClass.getName());
+    Class<?>[] innerClasses = rClass.getClasses();
+    Arrays.sort(innerClasses, Comparator.comparing(Class::getName));
+    for (Class<?> innerClass : innerClasses) {
+      out.writeUTF(innerClass.getSimpleName());
+      Field[] fields = innerClass.getDeclaredFields();
+      Arrays.sort(fields, Comparator.comparing(Field::getName));
+      for (Field field : fields) {
+        if (!Modifier.isStatic(field.getModifiers())) {
+          continue;
+        }
+        try {
+          if (field.getType().equals(Integer.TYPE)) {
+            out.writeUTF(field.getName());
+            out.writeInt(field.getInt(null));
+          } else if (field.getType().equals(int[].class)) {
+            out.writeUTF(field.getName());
+            int[] values = (int[]) field.get(null);
+            for (int value : values) {
+              out.writeInt(value);
+            }
+          }
+        } catch (IllegalAccessException e) {
+          throw new RuntimeException(e);
+        }
+      }
+    }
+  }
+
+  private static String relativeName(Path base, Path path) {
+    Path relative = base.relativize(path);
+    StringBuilder name = new StringBuilder();
+    for (int i = 0; i < relative.getNameCount(); i++) {
+      if (i > 0) {
+        name.append('/');
+      }
+      name.append(relative.getName(i).toString());
+    }
+    return name.toString();
+  }
+
+  /** Table which saves the resources added to it. */
+  private class Writer extends PackageResourceTable {
+    private final Map<String, Integer> strings = new HashMap<>();
+    private final List<String> stringList = new ArrayList<>();
+    private final Map<XmlContext, Integer> xmlContexts = new IdentityHashMap<>();
+    private final ByteArrayOutputStream xmlContextBytes = new ByteArrayOutputStream();
+    private final DataOutputStream xmlContextOut = new DataOutputStream(xmlContextBytes);
+    private final ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+    private final DataOutputStream out = new DataOutputStream(entryBytes);
+    private int entryCount;
+
+    Writer() {
+      super(packageName);
+    }
+
+    @Override
+    void addResource(int resId, String type, String name) {
+      try {
+        out.writeByte(ADD_ID);
+        out.writeInt(resId);
+        writeString(type);
+        writeString(name);
+        entryCount++;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    @Override
+    void addResource(String type, String name, TypedResource value) {
+      try {
+        out.writeByte(ADD_VALUE);
+        writeString(type);
+        writeString(name);
+        writeValue(value);
+        entryCount++;
+      } catch (IOException e) {
+        throw new RuntimeException(e);
+      }
+    }
+
+    private void writeValue(TypedResource<?> value) throws IOException {
+      Object data = value.getData();
+      if (value.getClass() == FileTypedResource.Image.class) {
+        FileTypedResource.Image image = (FileTypedResource.Image) value;
+        out.writeByte(IMAGE);
+        writeXmlContext(value.getXmlContext());
+        writePath(image.getPath());
+        out.writeBoolean(image.isNinePatch());
+      } else if (value.getClass() == FileTypedResource.class) {
+        out.writeByte(FILE);
+        writeHeader(value);
+        writePath(((FileTypedResource) value).getPath());
+      } else if (value.getClass() == PluralRules.class) {
+        out.writeByte(PLURALS);
+        writeHeader(value);
+        List<Plural> plurals = ((PluralRules) value).getData();
+        out.writeInt(plurals.size());
+        for (Plural plural : plurals) {
+          writeString(plural.quantity);
+          writeString(plural.string);
+        }
+      } else if (value.getClass() != TypedResource.class) {
+        throw new UnsupportedOperationException("can't save " + value.getClass());
+      } else if (data == null || data instanceof String) {
+        out.writeByte(STRING);
+        writeHeader(value);
+        writeString((String) data);
+      } else if (data instanceof List) {
+        out.writeByte(ARRAY);
+        writeHeader(value);
+        List<?> items = (List<?>) data;
+        out.writeInt(items.size());
+        for (Object item : items) {
+          writeValue((TypedResource<?>) item);
+        }
+      } else if (data instanceof AttrData) {
+        AttrData attrData = (AttrData) data;
+        out.writeByte(ATTR);
+        writeHeader(value);
+        writeString(attrData.getName());
+        writeString(attrData.getFormat());
+        List<AttrData.Pair> pairs = attrData.getPairs();
+        out.writeInt(pairs == null ? -1 : pairs.size());
+        if (pairs != null) {
+          for (AttrData.Pair pair : pairs) {
+            writeString(pair.getName());
+            writeString(pair.getValue());
+          }
+        }
+      } else if (data instanceof StyleData) {
+        StyleData styleData = (StyleData) data;
+        out.writeByte(STYLE);
+        writeHeader(value);
+        writeString(styleData.getPackageName());
+        writeString(styleData.getName());
+        writeString(styleData.getParent());
+        List<AttributeResource> attributes = new ArrayList<>();
+        styleData.visit(attributes::add);
+        out.writeInt(attributes.size());
+        for (AttributeResource attribute : attributes) {
+          writeString(attribute.resName.packageName);
+          writeString(attribute.resName.type);
+          writeString(attribute.resName.name);
+          writeString(attribute.value);
+          writeString(attribute.contextPackageName);
+          Integer referenceResId = attribute.getReferenceResId();
+          out.writeBoolean(referenceResId != null);
+          out.writeInt(referenceResId == null ? 0 : referenceResId);
+        }
+      } else {
+        throw new UnsupportedOperationException("can't save " + data.getClass());
+      }
+    }
+
+    private void writeHeader(TypedResource<?> value) throws IOException {
+      writeString(value.getResType() == null ? null : value.getResType().name());
+      writeXmlContext(value.getXmlContext());
+    }
+
+    private void writeXmlContext(XmlContext xmlContext) throws IOException {
+      Integer index = xmlContexts.get(xmlContext);
+      if (index == null) {
+        index = xmlContexts.size();
+        xmlContexts.put(xmlContext, index);
+        writeString(xmlContext.getPackageName(), xmlContextOut);
+        writePath(xmlContext.getXmlFile(), xmlContextOut);
+        writeString(xmlContext.getQualifiers().toString(), xmlContextOut);
+      }
+      out.writeInt(index);
+    }
+
+    private void writePath(Path path) throws IOException {
+      writePath(path, out);
+    }
+
+    private void writePath(Path path, DataOutputStream out) throws IOException {
+      if (path == null) {
+        out.writeInt(-1);
+        return;
+      }
+      for (int i = 0; i < resourcePaths.length; i++) {
+        Path resourceBase = resourcePaths[i].getResourceBase();
+        if (resourceBase != null
+            && resourceBase.getFileSystem().equals(path.getFileSystem())
+            && path.startsWith(resourceBase)) {
+          out.writeInt(i);
+          writeString(relativeName(resourceBase, path), out);
+          return;
+        }
+      }
+      throw new UnsupportedOperationException(path + " isn't in a resource directory");
+    }
+
+    private void writeString(String string) throws IOException {
+      writeString(string, out);
+    }
+
+    private void writeString(String string, DataOutputStream out) throws IOException {
+      if (string == null) {
+        out.writeInt(-1);
+        return;
+      }
+      Integer index = strings.get(string);
+      if (index == null) {
+        index = stringList.size();
+        strings.put(string, index);
+        stringList.add(string);
+      }
+      out.writeInt(index);
+    }
+
+    byte[] toByteArray() throws IOException {
+      ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+      DataOutputStream header = new DataOutputStream(bytes);
+      header.writeInt(MAGIC);
+      header.writeInt(VERSION);
+      header.writeInt(stringList.size());
+      for (String string : stringList) {
+        byte[] utf8 = string.getBytes(UTF_8);
+        header.writeInt(utf8.length);
+        header.write(utf8);
+      }
+      header.writeInt(xmlContexts.size());
+      xmlContextBytes.writeTo(header);
+      header.writeInt(entryCount);
+      entryBytes.writeTo(header);
+      header.flush();
+      return bytes.toByteArray();
+    }
+  }
+
+  /** Reads a snapshot written by {@link Writer}. */
+  private class Reader {
+    private final ByteBuffer buffer;
+    private String[] strings;
+    private XmlContext[] xmlContexts;
+    private final Map<String, Qualifiers> qualifiers = new HashMap<>();
+
+    Reader(ByteBuffer buffer) {
+      this.buffer = buffer;
+    }
+
+    PackageResourceTable readTable() {
+      if (buffer.getInt() != MAGIC || buffer.getInt() != VERSION) {
+        throw new IllegalStateException("not a resource table snapshot");
+      }
+
+      strings = new String[buffer.getInt()];
+      for (int i = 0; i < strings.length; i++) {
+        byte[] utf8 = new byte[buffer.getInt()];
+        buffer.get(utf8);
+        strings[i] = new String(utf8, UTF_8);
+      }
+
+      xmlContexts = new XmlContext[buffer.getInt()];
+      for (int i = 0; i < xmlContexts.length; i++) {
+        String xmlPackageName = readString();
+        Path xmlFile = readPath();
+        xmlContexts[i] = new XmlContext(xmlPackageName, xmlFile, readQualifiers());
+      }
+
+      PackageResourceTable resourceTable = new PackageResourceTable(packageName);
+      int entryCount = buffer.getInt();
+      for (int i = 0; i < entryCount; i++) {
+        byte op = buffer.get();
+        if (op == ADD_ID) {
+          int resId = buffer.getInt();
+          resourceTable.addResource(resId, readString(), readString());
+        } else if (op == ADD_VALUE) {
+          String type = readString();
+          String name = readString();
+          resourceTable.addResource(type, name, readValue());
+        } else {
+          throw new IllegalStateException("bad entry " + op);
+        }
+      }
+      if (buffer.hasRemaining()) {
+        throw new IllegalStateException("unexpected data at end of snapshot");
+      }
+      return resourceTable;
+    }
+
+    private TypedResource<?> readValue() {
+      byte kind = buffer.get();
+      switch (kind) {
+        case IMAGE: {
+          XmlContext xmlContext = readXmlContext();
+          Path path = readPath();
+          return new FileTypedResource.Image(path, buffer.get() != 0, xmlContext);
+        }
+        case FILE: {
+          ResType resType = readResType();
+          XmlContext xmlContext = readXmlContext();
+          return new FileTypedResource(readPath(), resType, xmlContext);
+        }
+        case PLURALS: {
+          ResType resType = readResType();
+          XmlContext xmlContext = readXmlContext();
+          List<Plural> plurals = new ArrayList<>();
+          for (int i = buffer.getInt(); i > 0; i--) {
+            plurals.add(new Plural(readString(), readString()));
+          }
+          return new PluralRules(plurals, resType, xmlContext);
+        }
+        case STRING: {
+          ResType resType = readResType();
+          XmlContext xmlContext = readXmlContext();
+          return new TypedResource<>(readString(), resType, xmlContext);
+        }
+        case ARRAY: {
+          ResType resType = readResType();
+          XmlContext xmlContext = readXmlContext();
+          List<TypedResource> items = new ArrayList<>();
+          for (int i = buffer.getInt(); i > 0; i--) {
+            items.add(readValue());
+          }
+          return new TypedResource<>(items, resType, xmlContext);
+        }
+        case ATTR: {
+          ResType resType = readResType();
+          XmlContext xmlContext = readXmlContext();
+          String name = readString();
+          String format = readString();
+          int pairCount = buffer.getInt();
+          List<AttrData.Pair> pairs = null;
+          if (pairCount >= 0) {
+            pairs = new ArrayList<>();
+            for (int i = 0; i < pairCount; i++) {
+              pairs.add(new AttrData.Pair(readString(), readString()));
+            }
+          }
+          return new TypedResource<>(new AttrData(name, format, pairs), resType, xmlContext);
+        }
+        case STYLE: {
+          ResType resType = readResType();
+          XmlContext xmlContext = readXmlContext();
+          String stylePackageName = readString();
+          String name = readString();
+          String parent = readString();
+          List<AttributeResource> attributes = new ArrayList<>();
+          for (int i = buffer.getInt(); i > 0; i--) {
+            ResName resName = new ResName(readString(), readString(), readString());
+            String value = readString();
+            String contextPackageName = readString();
+            boolean hasReferenceResId = buffer.get() != 0;
+            int referenceResId = buffer.getInt();
+            attributes.add(new AttributeResource(resName, value, contextPackageName,
+                hasReferenceResId ? referenceResId : null));
+          }
+          return new TypedResource<>(
+              new StyleData(stylePackageName, name, parent, attributes), resType, xmlContext);
+        }
+        default:
+          throw new IllegalStateException("bad value kind " + kind);
+      }
+    }
+
+    private ResType readResType() {
+      String name = readString();
+      return name == null ? null : ResType.valueOf(name);
+    }
+
+    private XmlContext readXmlContext() {
+      return xmlContexts[buffer.getInt()];
+    }
+
+    private Qualifiers readQualifiers() {
+      return qualifiers.computeIfAbsent(readString(), Qualifiers::parse);
+    }
+
+    private Path readPath() {
+      int index = buffer.getInt();
+      if (index == -1) {
+        return null;
+      }
+      return resourcePaths[index].getResourceBase().resolve(readString());
+    }
+
+    private String readString() {
+      int index = buffer.getInt();
+      return index == -1 ? null : strings[index];
+    }
+  }
+}
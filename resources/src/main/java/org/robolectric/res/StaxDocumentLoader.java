@@ -11,6 +11,10 @@ import javax.xml.stream.XMLStreamReader;
 public class StaxDocumentLoader extends DocumentLoader {
   private static final NodeHandler NO_OP_HANDLER = new NodeHandler();
 
+  // Looking up a factory is slow, and they aren't guaranteed to be thread-safe.
+  private static final ThreadLocal<XMLInputFactory> FACTORY =
+      ThreadLocal.withInitial(XMLInputFactory::newFactory);
+
   private final NodeHandler topLevelNodeHandler;
   private final XMLInputFactory factory;
 
@@ -19,7 +23,7 @@ public class StaxDocumentLoader extends DocumentLoader {
     super(packageName, resourceBase);
 
     this.topLevelNodeHandler = topLevelNodeHandler;
-    factory = XMLInputFactory.newFactory();
+    factory = FACTORY.get();
   }
 
   @Override
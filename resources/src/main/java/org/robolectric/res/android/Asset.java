@@ -12,6 +12,8 @@ import java.io.FileDescriptor;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.zip.ZipEntry;
@@ -117,6 +119,17 @@ public abstract class Asset {
      */
   public abstract byte[] getBuffer(boolean wordAligned);
 
+  /*
+   * Get a little-endian buffer with the entire contents of the file, which may be memory-mapped
+   * rather than backed by an array.
+   *
+   * Non-Android framework method.
+   */
+  public ByteBuffer getByteBuffer(boolean wordAligned) {
+    byte[] buf = getBuffer(wordAligned);
+    return buf == null ? null : ByteBuffer.wrap(buf).order(ByteOrder.LITTLE_ENDIAN);
+  }
+
   /*
    * Get the total amount of data that can be read.
    */
@@ -733,8 +746,6 @@ static Asset createFromCompressedMap(FileMap dataMap,
       mLength = dataMap.getDataLength();
       assert(mOffset == 0);
 
-      mBuf = dataMap.getDataPtr();
-
       return NO_ERROR;
     }
 
@@ -755,7 +766,7 @@ static Asset createFromCompressedMap(FileMap dataMap,
            * using the buffer or because what they're doing has appropriate
            * performance needs and access patterns.
            */
-        if (mBuf == null)
+        if (mBuf == null && mMap == null)
           getBuffer(false);
       }
 
@@ -772,7 +783,9 @@ static Asset createFromCompressedMap(FileMap dataMap,
           /* copy from mapped area */
         //printf("map read\n");
         // memcpy(buf, (String)mMap.getDataPtr() + mOffset, count);
-        System.arraycopy(mMap.getDataPtr(), toIntExact(mOffset), buf, bufOffset, count);
+        ByteBuffer data = mMap.getDataBuffer();
+        data.position(toIntExact(mOffset));
+        data.get(buf, bufOffset, count);
         actual = count;
       } else if (mBuf != null) {
           /* copy from buffer */
@@ -947,6 +960,14 @@ static Asset createFromCompressedMap(FileMap dataMap,
       }
     }
 
+    @Override
+    public ByteBuffer getByteBuffer(boolean wordAligned) {
+      if (mBuf == null && mMap != null) {
+        return mMap.getDataBuffer();
+      }
+      return super.getByteBuffer(wordAligned);
+    }
+
     /**
      * Return the file on disk representing this asset.
      *
@@ -9,7 +9,6 @@ import static org.robolectric.res.android.Util.CHECK;
 import static org.robolectric.res.android.ZipFileRO.OpenArchive;
 import static org.robolectric.res.android.ZipFileRO.kCompressDeflated;
 
-import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.util.Enumeration;
 import java.util.HashSet;
@@ -243,32 +242,53 @@ public class CppApkAssets {
       System.out.println(kResourcesArsc + " in APK '" + path + "' is compressed.");
     }
 
-    // Open the resource table via mmap unless it is compressed. This logic is taken care of by Open.
-    loaded_apk.resources_asset_ = loaded_apk.Open(kResourcesArsc, Asset.AccessMode.ACCESS_BUFFER);
-    if (loaded_apk.resources_asset_ == null) {
-      System.err.println("Failed to open '" + kResourcesArsc + "' in APK '" + path + "'.");
+    // Must retain ownership of the IDMAP Asset so that all pointers to its mmapped data remain valid.
+    loaded_apk.idmap_asset_ = idmap_asset;
+
+    if (idmap_asset == null && loaded_idmap == null) {
+      // Parsed resource tables are never changed, so they're shared by every sandbox in the JVM.
+      SharedResourceTables.Table table =
+          SharedResourceTables.get(path, system, load_as_shared_library, () ->
+              loaded_apk.LoadResourceTable(null, system, load_as_shared_library)
+                  ? new SharedResourceTables.Table(
+                      loaded_apk.resources_asset_, loaded_apk.loaded_arsc_)
+                  : null);
+      if (table == null) {
+        return null;
+      }
+      loaded_apk.resources_asset_ = table.resourcesAsset;
+      loaded_apk.loaded_arsc_ = table.loadedArsc;
+    } else if (!loaded_apk.LoadResourceTable(loaded_idmap, system, load_as_shared_library)) {
       return null;
     }
 
-    // Must retain ownership of the IDMAP Asset so that all pointers to its mmapped data remain valid.
-    loaded_apk.idmap_asset_ = idmap_asset;
+    // Need to force a move for mingw32.
+    return loaded_apk;
+  }
+
+  private boolean LoadResourceTable(
+      LoadedIdmap loaded_idmap, boolean system, boolean load_as_shared_library) {
+    // Open the resource table via mmap unless it is compressed. This logic is taken care of by Open.
+    resources_asset_ = Open(kResourcesArsc, Asset.AccessMode.ACCESS_BUFFER);
+    if (resources_asset_ == null) {
+      System.err.println("Failed to open '" + kResourcesArsc + "' in APK '" + path_ + "'.");
+      return false;
+    }
 
   // const StringPiece data(
   //       reinterpret_cast<const char*>(loaded_apk.resources_asset_.getBuffer(true /*wordAligned*/)),
   //       loaded_apk.resources_asset_.getLength());
     StringPiece data = new StringPiece(
-        ByteBuffer.wrap(loaded_apk.resources_asset_.getBuffer(true /*wordAligned*/))
+        resources_asset_.getByteBuffer(true /*wordAligned*/)
             .order(ByteOrder.LITTLE_ENDIAN),
         0 /*(int) loaded_apk.resources_asset_.getLength()*/);
-    loaded_apk.loaded_arsc_ =
+    loaded_arsc_ =
         LoadedArsc.Load(data, loaded_idmap, system, load_as_shared_library);
-    if (loaded_apk.loaded_arsc_ == null) {
-      System.err.println("Failed to load '" + kResourcesArsc + "' in APK '" + path + "'.");
-      return null;
+    if (loaded_arsc_ == null) {
+      System.err.println("Failed to load '" + kResourcesArsc + "' in APK '" + path_ + "'.");
+      return false;
     }
-
-    // Need to force a move for mingw32.
-    return loaded_apk;
+    return true;
   }
 
   private static String ErrorCodeString(int result) {
@@ -204,6 +204,11 @@ public class CppAssetManager2 {
   // which involves some calculation.
 //  private std.unordered_map<int, util.unique_cptr<ResolvedBag>> cached_bags_;
   final private Map<Integer, ResolvedBag> cached_bags_ = new HashMap<>();
+
+  // Entries found by FindEntry(), by resource ID and density override. Unlike cached_bags_, this
+  // isn't in the native implementation; it saves searching every package and configuration again
+  // for each lookup of a resource.
+  final private ResolvedEntryCache<ResolvedEntry> resolved_entries_ = new ResolvedEntryCache<>();
 //  };
 
 //final ResolvedBag.Entry* begin(final ResolvedBag* bag) { return bag.entries; }
@@ -259,6 +264,16 @@ public class CppAssetManager2 {
     StringPoolRef entry_string_ref;
   }
 
+  private static class ResolvedEntry {
+    final ApkAssetsCookie cookie;
+    final FindEntryResult result;
+
+    ResolvedEntry(ApkAssetsCookie cookie, FindEntryResult result) {
+      this.cookie = cookie;
+      this.result = result;
+    }
+  }
+
 //  AssetManager2() { memset(&configuration_, 0, sizeof(configuration_)); }
 
   // Sets/resets the underlying ApkAssets for this AssetManager. The ApkAssets
@@ -613,6 +628,12 @@ public class CppAssetManager2 {
   private ApkAssetsCookie FindEntry(int resid, short density_override,
       boolean stop_at_first_match,
       final Ref<FindEntryResult> out_entry) {
+    ResolvedEntry resolved = resolved_entries_.get(resid, density_override);
+    if (resolved != null) {
+      out_entry.set(resolved.result);
+      return resolved.cookie;
+    }
+
     ATRACE_CALL();
 
     // Might use this if density_override != 0.
@@ -621,7 +642,7 @@ public class CppAssetManager2 {
     // Select our configuration or generate a density override configuration.
     ResTable_config desired_config = configuration_;
     if (density_override != 0 && density_override != configuration_.density) {
-      density_override_config = configuration_;
+      density_override_config = ResTable_config.fromDtoH(configuration_);
       density_override_config.density = density_override;
       desired_config = density_override_config;
     }
@@ -761,6 +782,7 @@ public class CppAssetManager2 {
         new StringPoolRef(best_package.GetKeyStringPool(), best_entry.key.index);
     out_entry_.dynamic_ref_table = package_group.dynamic_ref_table;
     out_entry.set(out_entry_);
+    resolved_entries_.put(resid, density_override, new ResolvedEntry(best_cookie, out_entry_));
     return best_cookie;
   }
 
@@ -1275,6 +1297,9 @@ public class CppAssetManager2 {
   // Triggers the re-construction of lists of types that match the set configuration.
   // This should always be called when mutating the AssetManager's configuration or ApkAssets set.
   void RebuildFilterList() {
+    // Entries found with the previous configuration or packages may no longer be the best match.
+    resolved_entries_.clear();
+
     for (PackageGroup group : package_groups_) {
       for (ConfiguredPackage impl : group.packages_) {
         // // Destroy it.
@@ -1,17 +1,36 @@
 package org.robolectric.res.android;
 
+import static java.nio.charset.StandardCharsets.UTF_8;
 import static org.robolectric.res.android.Asset.toIntExact;
 import static org.robolectric.res.android.Util.ALOGV;
+import static org.robolectric.res.android.Util.ALOGW;
 
+import java.io.EOFException;
+import java.io.File;
 import java.io.FileInputStream;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.Enumeration;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.zip.ZipEntry;
 import java.util.zip.ZipFile;
 
 public class FileMap {
 
+  private static final boolean MAP_STORED_ENTRIES =
+      Boolean.parseBoolean(System.getProperty("robolectric.mapApkEntries", "true"));
+
+  // Stored zip entries are mapped once and shared by every FileMap, and so by every AssetManager,
+  // in the JVM. Mapped data lives outside the heap, in the OS's page cache.
+  private static final Map<String, Optional<ByteBuffer>> mappedEntries =
+      new ConcurrentHashMap<>();
+
   private ZipFile zipFile;
   private ZipEntry zipEntry;
   private boolean readOnly;
@@ -271,6 +290,120 @@ public class FileMap {
     return mDataPtr;
   }
 
+  /*
+   * Get the piece of the file we requested as a little-endian buffer. Stored (uncompressed) zip
+   * entries are memory-mapped rather than copied onto the heap, so the buffer may not be backed by
+   * an array.
+   *
+   * Non-Android framework method.
+   */
+  synchronized ByteBuffer getDataBuffer() {
+    if (mDataBuffer == null) {
+      if (mDataPtr == null && isFromZip && zipEntry.getMethod() == ZipEntry.STORED
+          && MAP_STORED_ENTRIES) {
+        mDataBuffer = mapStoredEntry(zipFile, zipEntry);
+      }
+      if (mDataBuffer == null) {
+        mDataBuffer = ByteBuffer.wrap(getDataPtr());
+      }
+    }
+    return mDataBuffer.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+  }
+
+  private static ByteBuffer mapStoredEntry(ZipFile zipFile, ZipEntry entry) {
+    File file = new File(zipFile.getName());
+    String key = file.getAbsolutePath() + "!/" + entry.getName()
+        + "@" + file.lastModified() + ":" + file.length();
+    return mappedEntries
+        .computeIfAbsent(key, k -> Optional.ofNullable(map(file, entry)))
+        .orElse(null);
+  }
+
+  private static ByteBuffer map(File file, ZipEntry entry) {
+    try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+      long dataOffset = findDataOffset(channel, entry.getName());
+      if (dataOffset < 0 || dataOffset + entry.getSize() > channel.size()) {
+        return null;
+      }
+      // The mapping remains valid after the channel is closed.
+      return channel.map(FileChannel.MapMode.READ_ONLY, dataOffset, entry.getSize());
+    } catch (IOException e) {
+      ALOGW("failed to map %s in %s: %s", entry.getName(), file, e);
+      return null;
+    }
+  }
+
+  /*
+   * Find where the data for an entry starts, using the central directory and the entry's local
+   * header, whose extra field may differ from the one in the central directory. Returns -1 if it
+   * can't be found, e.g. in a zip64 archive.
+   */
+  private static long findDataOffset(FileChannel channel, String name) throws IOException {
+    long size = channel.size();
+    int tailLength = (int) Math.min(size, 0xffff + 22);
+    ByteBuffer tail = read(channel, size - tailLength, tailLength);
+    int eocd = -1;
+    for (int i = tailLength - 22; i >= 0; i--) {
+      if (tail.getInt(i) == 0x06054b50) {
+        eocd = i;
+        break;
+      }
+    }
+    if (eocd == -1) {
+      return -1;
+    }
+
+    int entryCount = tail.getShort(eocd + 10) & 0xffff;
+    long centralDirSize = tail.getInt(eocd + 12) & 0xffffffffL;
+    long centralDirOffset = tail.getInt(eocd + 16) & 0xffffffffL;
+    if (centralDirOffset + centralDirSize > size) {
+      return -1;
+    }
+
+    ByteBuffer centralDir = read(channel, centralDirOffset, toIntExact(centralDirSize));
+    byte[] nameBytes = name.getBytes(UTF_8);
+    int pos = 0;
+    for (int i = 0; i < entryCount; i++) {
+      if (centralDir.getInt(pos) != 0x02014b50) {
+        return -1;
+      }
+      int nameLength = centralDir.getShort(pos + 28) & 0xffff;
+      int extraLength = centralDir.getShort(pos + 30) & 0xffff;
+      int commentLength = centralDir.getShort(pos + 32) & 0xffff;
+      if (nameLength == nameBytes.length && regionMatches(centralDir, pos + 46, nameBytes)) {
+        long localHeaderOffset = centralDir.getInt(pos + 42) & 0xffffffffL;
+        ByteBuffer localHeader = read(channel, localHeaderOffset, 30);
+        if (localHeader.getInt(0) != 0x04034b50) {
+          return -1;
+        }
+        return localHeaderOffset + 30
+            + (localHeader.getShort(26) & 0xffff) + (localHeader.getShort(28) & 0xffff);
+      }
+      pos += 46 + nameLength + extraLength + commentLength;
+    }
+    return -1;
+  }
+
+  private static boolean regionMatches(ByteBuffer buf, int offset, byte[] bytes) {
+    for (int i = 0; i < bytes.length; i++) {
+      if (buf.get(offset + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static ByteBuffer read(FileChannel channel, long position, int length)
+      throws IOException {
+    ByteBuffer buf = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+    while (buf.hasRemaining()) {
+      if (channel.read(buf, position + buf.position()) < 0) {
+        throw new EOFException();
+      }
+    }
+    return buf;
+  }
+
   public static void readFully(InputStream is, byte[] bytes) throws IOException {
     int size = bytes.length;
     int remaining = size;
@@ -329,6 +462,7 @@ public class FileMap {
   int      mBaseLength;    // length, measured from "mBasePtr"
   long     mDataOffset;    // offset used when map was created
   byte[]       mDataPtr;       // start of requested data, offset from base
+  ByteBuffer   mDataBuffer;    // requested data, possibly mapped
   int      mDataLength;    // length, measured from "mDataPtr"
   static long mPageSize;
 
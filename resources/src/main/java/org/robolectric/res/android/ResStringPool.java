@@ -17,7 +17,9 @@ import static org.robolectric.res.android.Util.isTruthy;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
 import org.robolectric.res.android.ResourceString.Type;
 import org.robolectric.res.android.ResourceTypes.ResChunk_header;
 import org.robolectric.res.android.ResourceTypes.ResStringPool_header;
@@ -25,6 +27,8 @@ import org.robolectric.res.android.ResourceTypes.ResStringPool_header.Writer;
 import org.robolectric.res.android.ResourceTypes.ResStringPool_ref;
 import org.robolectric.res.android.ResourceTypes.ResStringPool_span;
 import org.robolectric.res.android.ResourceTypes.WithOffset;
+import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.PerfStatsCollector.MetricHandle;
 
 /**
  * Convenience class for accessing data in a ResStringPool resource.
@@ -34,7 +38,16 @@ public class ResStringPool {
 
   private static boolean kDebugStringPoolNoisy = false;
 
+  // Maximum number of decoded strings to keep for each pool; 0 disables the cache.
+  private static final int MAX_CACHED_STRINGS =
+      Integer.getInteger("robolectric.stringPoolCacheMaxStrings", Integer.MAX_VALUE);
+  private static final MetricHandle cacheHits =
+      PerfStatsCollector.getInstance().metric("decode pool string (cached)");
+  private static final MetricHandle cacheMisses =
+      PerfStatsCollector.getInstance().metric("decode pool string");
+
   private final long myNativePtr;
+  private final int mMaxCachedStrings;
 
   private int                    mError;
 
@@ -53,12 +66,22 @@ public class ResStringPool {
   //private List<String> mStrings;
   //private String[] mCache;
   //private char16_t mutable**          mCache;
+  // Strings decoded so far, allocated on first use: an array indexed like the pool if the pool has
+  // no more strings than may be cached, otherwise a map holding up to mMaxCachedStrings of them.
+  // Entries may be written concurrently, which is safe as Strings are immutable.
+  private volatile String[] mCache;
+  private volatile Map<Integer, String> mCacheMap;
     private int                    mStringPoolSize;    // number of uint16_t
 //    const uint32_t*             mStyles;
     private int             mStyles;
     private int                    mStylePoolSize;    // number of int
 
   public ResStringPool() {
+    this(MAX_CACHED_STRINGS);
+  }
+
+  ResStringPool(int maxCachedStrings) {
+    mMaxCachedStrings = maxCachedStrings;
     mError = NO_INIT;
     myNativePtr = Registries.NATIVE_STRING_POOLS.register(new WeakReference<>(this));
   }
@@ -323,9 +346,81 @@ public class ResStringPool {
   void uninit() {
     setError(NO_INIT);
     mHeader = null;
+    mCache = null;
+    mCacheMap = null;
   }
 
   public String stringAt(int idx) {
+    String cached = cachedStringAt(idx);
+    if (cached != null) {
+      cacheHits.increment();
+      return cached;
+    }
+
+    cacheMisses.increment();
+    String result = decodeStringAt(idx);
+    if (result != null) {
+      cacheString(idx, result);
+    }
+    return result;
+  }
+
+  private boolean isCacheable(int idx) {
+    return mMaxCachedStrings > 0 && mError == NO_ERROR && idx >= 0 && idx < mHeader.stringCount;
+  }
+
+  private String cachedStringAt(int idx) {
+    if (!isCacheable(idx)) {
+      return null;
+    }
+    String[] cache = mCache;
+    if (cache != null) {
+      return cache[idx];
+    }
+    Map<Integer, String> cacheMap = mCacheMap;
+    return cacheMap == null ? null : cacheMap.get(idx);
+  }
+
+  private void cacheString(int idx, String s) {
+    if (!isCacheable(idx)) {
+      return;
+    }
+    int stringCount = mHeader.stringCount;
+    if (stringCount <= mMaxCachedStrings) {
+      String[] cache = mCache;
+      if (cache == null) {
+        cache = mCache = new String[stringCount];
+      }
+      cache[idx] = s;
+    } else {
+      Map<Integer, String> cacheMap = mCacheMap;
+      if (cacheMap == null) {
+        cacheMap = mCacheMap = new ConcurrentHashMap<>();
+      }
+      // The size may be off when strings are decoded concurrently; the limit is only approximate.
+      if (cacheMap.size() < mMaxCachedStrings) {
+        cacheMap.put(idx, s);
+      }
+    }
+  }
+
+  /** Returns the number of decoded strings currently kept. */
+  int cachedStringCount() {
+    String[] cache = mCache;
+    if (cache != null) {
+      int count = 0;
+      for (String s : cache) {
+        if (s != null) {
+          count++;
+        }
+      }
+      return count;
+    }
+    Map<Integer, String> cacheMap = mCacheMap;
+    return cacheMap == null ? 0 : cacheMap.size();
+  }
+
+  private String decodeStringAt(int idx) {
     if (mError == NO_ERROR && idx < mHeader.stringCount) {
         final boolean isUTF8 = (mHeader.flags&ResStringPool_header.UTF8_FLAG) != 0;
 //        const uint32_t off = mEntries[idx]/(isUTF8?sizeof(uint8_t):sizeof(uint16_t));
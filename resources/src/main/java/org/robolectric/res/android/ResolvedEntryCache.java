@@ -0,0 +1,91 @@
+package org.robolectric.res.android;
+
+import java.util.Arrays;
+
+/**
+ * Cache of entries resolved by {@link CppAssetManager2}, keyed by resource ID and density
+ * override.
+ *
+ * Keys are kept as primitive longs in an open-addressed hash table, so lookups don't box or
+ * allocate. A valid resource ID is never zero, so a zero key marks an empty slot.
+ */
+class ResolvedEntryCache<T> {
+  private static final int INITIAL_CAPACITY = 256;
+
+  private long[] keys = new long[INITIAL_CAPACITY];
+  private Object[] values = new Object[INITIAL_CAPACITY];
+  private int size;
+
+  @SuppressWarnings("unchecked")
+  T get(int resid, short density_override) {
+    long key = key(resid, density_override);
+    int mask = keys.length - 1;
+    for (int i = hash(key) & mask; keys[i] != 0; i = (i + 1) & mask) {
+      if (keys[i] == key) {
+        return (T) values[i];
+      }
+    }
+    return null;
+  }
+
+  void put(int resid, short density_override, T value) {
+    if (resid == 0) {
+      return;
+    }
+    if ((size + 1) * 2 > keys.length) {
+      resize(keys.length * 2);
+    }
+    if (insert(keys, values, key(resid, density_override), value)) {
+      size++;
+    }
+  }
+
+  void clear() {
+    if (size > 0) {
+      Arrays.fill(keys, 0);
+      Arrays.fill(values, null);
+      size = 0;
+    }
+  }
+
+  int size() {
+    return size;
+  }
+
+  private void resize(int capacity) {
+    long[] newKeys = new long[capacity];
+    Object[] newValues = new Object[capacity];
+    for (int i = 0; i < keys.length; i++) {
+      if (keys[i] != 0) {
+        insert(newKeys, newValues, keys[i], values[i]);
+      }
+    }
+    keys = newKeys;
+    values = newValues;
+  }
+
+  /** Returns true if the key wasn't already present. */
+  private static boolean insert(long[] keys, Object[] values, long key, Object value) {
+    int mask = keys.length - 1;
+    int i = hash(key) & mask;
+    while (keys[i] != 0) {
+      if (keys[i] == key) {
+        values[i] = value;
+        return false;
+      }
+      i = (i + 1) & mask;
+    }
+    keys[i] = key;
+    values[i] = value;
+    return true;
+  }
+
+  private static long key(int resid, short density_override) {
+    return ((long) density_override << 32) | (resid & 0xffffffffL);
+  }
+
+  private static int hash(long key) {
+    int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+    return h ^ (h >>> 16);
+  }
+}
@@ -76,7 +76,15 @@ public final class ResourceString {
     } else {
       length = characterCount * 2;
     }
-    return new String(buffer.array(), offset, length, type.charset());
+    if (buffer.hasArray()) {
+      return new String(buffer.array(), buffer.arrayOffset() + offset, length, type.charset());
+    }
+    // e.g. a memory-mapped buffer
+    byte[] bytes = new byte[length];
+    ByteBuffer data = buffer.duplicate();
+    data.position(offset);
+    data.get(bytes);
+    return new String(bytes, type.charset());
   }
 
   /**
@@ -0,0 +1,240 @@
+package org.robolectric.res.android;
+
+import java.io.File;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Supplier;
+import org.robolectric.res.android.LoadedArsc.LoadedPackage;
+import org.robolectric.util.Logger;
+import org.robolectric.util.PerfStatsCollector;
+
+/**
+ * Cache of parsed resource tables, shared by every {@link CppApkAssets} in the JVM.
+ *
+ * This class is outside the sandbox, so tests running in sandboxes for different SDKs all share
+ * it, and the framework and app resource tables are parsed only once per JVM.
+ *
+ * Different APKs are loaded concurrently, and each is loaded only once; a thread asking for a
+ * table which another thread is loading waits for it.
+ *
+ * The cache estimates the memory held by each table (its resources.arsc data plus the strings
+ * its pools may decode) and evicts the least recently used tables once the total exceeds
+ * {@code robolectric.sharedResourceTablesMaxBytes} (512MB by default). Set
+ * {@code robolectric.shareResourceTables} to {@code false} to disable it.
+ */
+class SharedResourceTables {
+  private static final boolean ENABLED =
+      Boolean.parseBoolean(System.getProperty("robolectric.shareResourceTables", "true"));
+  private static final long MAX_BYTES =
+      Long.getLong("robolectric.sharedResourceTablesMaxBytes", 512L * 1024 * 1024);
+
+  // Rough per-string cost of a decoded pool string: the String and its char[] headers, plus the
+  // reference to it in the pool's cache.
+  private static final int DECODED_STRING_OVERHEAD = 48;
+
+  private static final ConcurrentHashMap<Key, CachedTable> tables = new ConcurrentHashMap<>();
+  private static final AtomicLong accessCounter = new AtomicLong();
+  // Guarded by SharedResourceTables.class.
+  private static long totalBytes;
+
+  /** A parsed resource table, and the asset holding its data. */
+  static class Table {
+    final Asset resourcesAsset;
+    final LoadedArsc loadedArsc;
+    private final long size;
+
+    Table(Asset resourcesAsset, LoadedArsc loadedArsc) {
+      this.resourcesAsset = resourcesAsset;
+      this.loadedArsc = loadedArsc;
+      this.size = resourcesAsset.getLength() + estimateDecodedSize(loadedArsc);
+    }
+
+    long size() {
+      return size;
+    }
+
+    /**
+     * Estimates the memory taken by the strings the table's pools decode and keep, which may be
+     * several times the size of their UTF-8 data.
+     */
+    private static long estimateDecodedSize(LoadedArsc loadedArsc) {
+      long size = estimateDecodedSize(loadedArsc.GetStringPool());
+      for (LoadedPackage loadedPackage : loadedArsc.GetPackages()) {
+        size += estimateDecodedSize(loadedPackage.type_string_pool_);
+        size += estimateDecodedSize(loadedPackage.key_string_pool_);
+      }
+      return size;
+    }
+
+    private static long estimateDecodedSize(ResStringPool pool) {
+      // UTF-8 data is decoded into UTF-16 chars, taking up to twice the space.
+      return (long) pool.size() * DECODED_STRING_OVERHEAD + 2L * pool.bytes();
+    }
+  }
+
+  /**
+   * Returns the table for the given APK, loading it if it hasn't been loaded with the same
+   * options since the file last changed. Returns null if it can't be loaded.
+   */
+  static Table get(String path, boolean system, boolean loadAsSharedLibrary,
+      Supplier<Table> loader) {
+    if (!ENABLED) {
+      return loader.get();
+    }
+
+    Key key = new Key(path, system, loadAsSharedLibrary);
+    CachedTable cached = tables.computeIfAbsent(key, k -> new CachedTable());
+    cached.lastAccess = accessCounter.incrementAndGet();
+    if (!cached.claim()) {
+      Table table = cached.get();
+      if (table != null) {
+        PerfStatsCollector.getInstance().metric("reuse shared resource table").increment();
+      }
+      return table;
+    }
+
+    Table table;
+    try {
+      table = loader.get();
+    } catch (RuntimeException | Error e) {
+      tables.remove(key, cached);
+      cached.fail(e);
+      throw e;
+    }
+
+    if (table == null) {
+      // Don't cache failures; the next caller will try again.
+      tables.remove(key, cached);
+      cached.complete(null);
+      return null;
+    }
+
+    cached.complete(table);
+    added(key, cached, table.size());
+    return table;
+  }
+
+  /** Returns the total size of the cached tables' data. */
+  static synchronized long getTotalBytes() {
+    return totalBytes;
+  }
+
+  static synchronized void clear() {
+    tables.clear();
+    totalBytes = 0;
+  }
+
+  /**
+   * Accounts for a newly loaded table, and drops least recently used tables while the total is
+   * over the limit. The table which was just loaded is never evicted, however big.
+   */
+  private static synchronized void added(Key justLoaded, CachedTable loaded, long size) {
+    if (tables.get(justLoaded) != loaded) {
+      // cleared while loading
+      return;
+    }
+    totalBytes += size;
+
+    while (totalBytes > MAX_BYTES && tables.size() > 1) {
+      Key eldestKey = null;
+      CachedTable eldest = null;
+      for (Map.Entry<Key, CachedTable> entry : tables.entrySet()) {
+        CachedTable cached = entry.getValue();
+        if (cached.isLoaded() && !entry.getKey().equals(justLoaded)
+            && (eldest == null || cached.lastAccess < eldest.lastAccess)) {
+          eldestKey = entry.getKey();
+          eldest = cached;
+        }
+      }
+      if (eldest == null) {
+        // everything else is still loading
+        return;
+      }
+
+      long eldestSize = eldest.get().size();
+      Logger.debug("evicting shared resource table %s (%d bytes)", eldestKey.path, eldestSize);
+      tables.remove(eldestKey, eldest);
+      totalBytes -= eldestSize;
+    }
+  }
+
+  /**
+   * A cache entry. The first thread to {@link #claim()} it loads the table; others wait for it.
+   */
+  private static class CachedTable {
+    private final CompletableFuture<Table> future = new CompletableFuture<>();
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    volatile long lastAccess;
+
+    boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+
+    void complete(Table table) {
+      future.complete(table);
+    }
+
+    void fail(Throwable e) {
+      future.completeExceptionally(e);
+    }
+
+    boolean isLoaded() {
+      return future.isDone() && !future.isCompletedExceptionally() && future.join() != null;
+    }
+
+    Table get() {
+      try {
+        return future.join();
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw (RuntimeException) cause;
+      }
+    }
+  }
+
+  private static class Key {
+    private final String path;
+    private final boolean system;
+    private final boolean loadAsSharedLibrary;
+    private final long lastModified;
+    private final long length;
+
+    Key(String path, boolean system, boolean loadAsSharedLibrary) {
+      File file = new File(path);
+      this.path = file.getAbsolutePath();
+      this.system = system;
+      this.loadAsSharedLibrary = loadAsSharedLibrary;
+      this.lastModified = file.lastModified();
+      this.length = file.length();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return system == key.system
+          && loadAsSharedLibrary == key.loadAsSharedLibrary
+          && lastModified == key.lastModified
+          && length == key.length
+          && path.equals(key.path);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(path, system, loadAsSharedLibrary, lastModified, length);
+    }
+  }
+}
@@ -0,0 +1,79 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class FileMapTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void getDataBuffer_shouldMapStoredEntries() throws Exception {
+    File zip = temporaryFolder.newFile("test.apk");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+      ZipEntry compressed = new ZipEntry("AndroidManifest.xml");
+      compressed.setExtra(new byte[] {0x12, 0x34, 4, 0, 1, 2, 3, 4});
+      out.putNextEntry(compressed);
+      out.write("compressed contents".getBytes(UTF_8));
+      out.closeEntry();
+      putStoredEntry(out, "resources.arsc", "stored contents");
+    }
+
+    ZipFileRO zipFileRO = ZipFileRO.open(zip.getPath());
+    FileMap map = zipFileRO.createEntryFileMap(zipFileRO.findEntryByName("resources.arsc"));
+    ByteBuffer buffer = map.getDataBuffer();
+
+    assertThat(buffer.isDirect()).isTrue();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertThat(new String(bytes, UTF_8)).isEqualTo("stored contents");
+    assertThat(map.getDataPtr()).isEqualTo(bytes);
+  }
+
+  @Test
+  public void getDataBuffer_shouldReadCompressedEntries() throws Exception {
+    File zip = temporaryFolder.newFile("test.apk");
+    try (ZipOutputStream out = new ZipOutputStream(new FileOutputStream(zip))) {
+      out.putNextEntry(new ZipEntry("resources.arsc"));
+      out.write("compressed contents".getBytes(UTF_8));
+      out.closeEntry();
+    }
+
+    ZipFileRO zipFileRO = ZipFileRO.open(zip.getPath());
+    FileMap map = zipFileRO.createEntryFileMap(zipFileRO.findEntryByName("resources.arsc"));
+    ByteBuffer buffer = map.getDataBuffer();
+
+    assertThat(buffer.hasArray()).isTrue();
+    byte[] bytes = new byte[buffer.remaining()];
+    buffer.get(bytes);
+    assertThat(new String(bytes, UTF_8)).isEqualTo("compressed contents");
+  }
+
+  private static void putStoredEntry(ZipOutputStream out, String name, String contents)
+      throws IOException {
+    byte[] bytes = contents.getBytes(UTF_8);
+    CRC32 crc = new CRC32();
+    crc.update(bytes);
+    ZipEntry entry = new ZipEntry(name);
+    entry.setMethod(ZipEntry.STORED);
+    entry.setSize(bytes.length);
+    entry.setCompressedSize(bytes.length);
+    entry.setCrc(crc.getValue());
+    out.putNextEntry(entry);
+    out.write(bytes);
+    out.closeEntry();
+  }
+}
@@ -0,0 +1,99 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.res.android.Errors.NO_ERROR;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.res.android.ResourceTypes.ResStringPool_header;
+import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.PerfStatsCollector.Metric;
+
+@RunWith(JUnit4.class)
+public class ResStringPoolTest {
+  private static final String CACHE_HIT = "decode pool string (cached)";
+  private static final String CACHE_MISS = "decode pool string";
+
+  @Before
+  public void setUp() {
+    PerfStatsCollector.getInstance().setEnabled(true);
+  }
+
+  @Test
+  public void stringAt_shouldDecodeEachStringOnce() {
+    ResStringPool pool = newPool(Integer.MAX_VALUE, "apple", "banana");
+    long hits = count(CACHE_HIT);
+    long misses = count(CACHE_MISS);
+
+    assertThat(pool.stringAt(0)).isEqualTo("apple");
+    assertThat(pool.stringAt(0)).isEqualTo("apple");
+    assertThat(pool.stringAt(1)).isEqualTo("banana");
+
+    assertThat(count(CACHE_MISS) - misses).isEqualTo(2);
+    assertThat(count(CACHE_HIT) - hits).isEqualTo(1);
+    assertThat(pool.cachedStringCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void stringAt_shouldKeepNoMoreThanMaxCachedStrings() {
+    ResStringPool pool = newPool(2, "apple", "banana", "cherry");
+
+    assertThat(pool.stringAt(0)).isEqualTo("apple");
+    assertThat(pool.stringAt(1)).isEqualTo("banana");
+    assertThat(pool.stringAt(2)).isEqualTo("cherry");
+    assertThat(pool.cachedStringCount()).isEqualTo(2);
+
+    long misses = count(CACHE_MISS);
+    assertThat(pool.stringAt(2)).isEqualTo("cherry");
+    assertThat(count(CACHE_MISS) - misses).isEqualTo(1);
+  }
+
+  @Test
+  public void stringAt_shouldNotCacheWhenMaxCachedStringsIsZero() {
+    ResStringPool pool = newPool(0, "apple");
+
+    assertThat(pool.stringAt(0)).isEqualTo("apple");
+    assertThat(pool.cachedStringCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void uninit_shouldDropCachedStrings() {
+    ResStringPool pool = newPool(Integer.MAX_VALUE, "apple");
+    assertThat(pool.stringAt(0)).isEqualTo("apple");
+
+    pool.uninit();
+    assertThat(pool.cachedStringCount()).isEqualTo(0);
+
+    setTo(pool, "banana");
+    assertThat(pool.stringAt(0)).isEqualTo("banana");
+  }
+
+  private static ResStringPool newPool(int maxCachedStrings, String... strings) {
+    ResStringPool pool = new ResStringPool(maxCachedStrings);
+    setTo(pool, strings);
+    return pool;
+  }
+
+  private static void setTo(ResStringPool pool, String... strings) {
+    ResStringPool_header.Writer writer = new ResStringPool_header.Writer();
+    for (String string : strings) {
+      writer.string(string);
+    }
+    ByteBuffer buf = ByteBuffer.allocate(1024).order(ByteOrder.LITTLE_ENDIAN);
+    writer.write(buf);
+    assertThat(pool.setTo(buf, 0, buf.position(), false)).isEqualTo(NO_ERROR);
+  }
+
+  private static long count(String metricName) {
+    for (Metric metric : PerfStatsCollector.getInstance().getMetrics()) {
+      if (metric.getName().equals(metricName) && metric.isSuccess()) {
+        return metric.getCount();
+      }
+    }
+    return 0;
+  }
+}
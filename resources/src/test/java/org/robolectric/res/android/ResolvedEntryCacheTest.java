@@ -0,0 +1,50 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ResolvedEntryCacheTest {
+
+  @Test
+  public void shouldFindEntriesByResourceIdAndDensityOverride() {
+    ResolvedEntryCache<String> cache = new ResolvedEntryCache<>();
+    cache.put(0x7f010001, (short) 0, "default");
+    cache.put(0x7f010001, (short) 480, "xxhdpi");
+
+    assertThat(cache.get(0x7f010001, (short) 0)).isEqualTo("default");
+    assertThat(cache.get(0x7f010001, (short) 480)).isEqualTo("xxhdpi");
+    assertThat(cache.get(0x7f010001, (short) 160)).isNull();
+    assertThat(cache.get(0x7f010002, (short) 0)).isNull();
+    assertThat(cache.size()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldKeepEntriesWhenGrowing() {
+    ResolvedEntryCache<Integer> cache = new ResolvedEntryCache<>();
+    for (int i = 0; i < 10_000; i++) {
+      cache.put(0x01010000 + i, (short) 0, i);
+    }
+
+    for (int i = 0; i < 10_000; i++) {
+      assertThat(cache.get(0x01010000 + i, (short) 0)).isEqualTo(i);
+    }
+    assertThat(cache.size()).isEqualTo(10_000);
+  }
+
+  @Test
+  public void clear_shouldRemoveAllEntries() {
+    ResolvedEntryCache<String> cache = new ResolvedEntryCache<>();
+    cache.put(0x7f010001, (short) 0, "value");
+    cache.put(0x7f010001, (short) 0, "replaced");
+    assertThat(cache.size()).isEqualTo(1);
+
+    cache.clear();
+
+    assertThat(cache.get(0x7f010001, (short) 0)).isNull();
+    assertThat(cache.size()).isEqualTo(0);
+  }
+}
@@ -0,0 +1,100 @@
+package org.robolectric.res.android;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import java.io.File;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class SharedResourceTablesTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private final AtomicInteger loadCount = new AtomicInteger();
+
+  @After
+  public void tearDown() {
+    SharedResourceTables.clear();
+  }
+
+  @Test
+  public void get_shouldLoadEachTableOnce() throws Exception {
+    String path = temporaryFolder.newFile("app.apk").getPath();
+
+    SharedResourceTables.Table first = SharedResourceTables.get(path, false, false, this::load);
+    SharedResourceTables.Table second = SharedResourceTables.get(path, false, false, this::load);
+    SharedResourceTables.get(path, true, false, this::load);
+
+    assertThat(second).isSameAs(first);
+    assertThat(loadCount.get()).isEqualTo(2);
+    assertThat(SharedResourceTables.getTotalBytes()).isEqualTo(2 * 1024);
+  }
+
+  @Test
+  public void get_shouldLoadAgainWhenFileChanges() throws Exception {
+    File file = temporaryFolder.newFile("app.apk");
+
+    SharedResourceTables.get(file.getPath(), false, false, this::load);
+    assertThat(file.setLastModified(file.lastModified() - 10_000)).isTrue();
+    SharedResourceTables.get(file.getPath(), false, false, this::load);
+
+    assertThat(loadCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_shouldNotCacheFailedLoads() throws Exception {
+    String path = temporaryFolder.newFile("app.apk").getPath();
+
+    assertThat(SharedResourceTables.get(path, false, false, () -> null)).isNull();
+    SharedResourceTables.get(path, false, false, this::load);
+
+    assertThat(loadCount.get()).isEqualTo(1);
+  }
+
+  @Test
+  public void get_shouldLoadDifferentTablesConcurrently() throws Exception {
+    String first = temporaryFolder.newFile("first.apk").getPath();
+    String second = temporaryFolder.newFile("second.apk").getPath();
+    CountDownLatch secondLoaded = new CountDownLatch(1);
+
+    ExecutorService executor = Executors.newSingleThreadExecutor();
+    try {
+      // The first load can only finish once the second, on another thread, has.
+      Future<SharedResourceTables.Table> firstTable = executor.submit(() ->
+          SharedResourceTables.get(first, false, false, () -> {
+            try {
+              assertThat(secondLoaded.await(10, TimeUnit.SECONDS)).isTrue();
+            } catch (InterruptedException e) {
+              throw new RuntimeException(e);
+            }
+            return load();
+          }));
+      SharedResourceTables.get(second, false, false, this::load);
+      secondLoaded.countDown();
+
+      assertThat(firstTable.get(10, TimeUnit.SECONDS)).isNotNull();
+    } finally {
+      executor.shutdownNow();
+    }
+    assertThat(loadCount.get()).isEqualTo(2);
+  }
+
+  private SharedResourceTables.Table load() {
+    loadCount.incrementAndGet();
+    Asset asset = mock(Asset.class);
+    when(asset.getLength()).thenReturn(1024L);
+    return new SharedResourceTables.Table(asset, LoadedArsc.CreateEmpty());
+  }
+}
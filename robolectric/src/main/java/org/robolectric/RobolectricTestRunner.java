@@ -21,6 +21,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 import java.util.ServiceLoader;
+import java.util.concurrent.atomic.AtomicBoolean;
 import javax.annotation.Nonnull;
 import org.junit.Ignore;
 import org.junit.runners.model.FrameworkMethod;
@@ -37,6 +38,7 @@ import org.robolectric.internal.ManifestIdentifier;
 import org.robolectric.internal.MavenManifestFactory;
 import org.robolectric.internal.ParallelUniverseInterface;
 import org.robolectric.internal.SandboxFactory;
+import org.robolectric.internal.SandboxPoolScheduler;
 import org.robolectric.internal.SandboxTestRunner;
 import org.robolectric.internal.SdkConfig;
 import org.robolectric.internal.SdkEnvironment;
@@ -73,12 +75,12 @@ public class RobolectricTestRunner extends SandboxTestRunner {
 
   private final SdkPicker sdkPicker;
   private final ConfigMerger configMerger;
-  private ServiceLoader<ShadowProvider> providers;
   private transient DependencyResolver dependencyResolver;
   private final ResourcesMode resourcesMode = getResourcesMode();
   private boolean alwaysIncludeVariantMarkersInName =
       Boolean.parseBoolean(
           System.getProperty("robolectric.alwaysIncludeVariantMarkersInTestName", "false"));
+  private final AtomicBoolean warnedAboutJvmDefaults = new AtomicBoolean();
 
   static {
     new SecureRandom(); // this starts up the Poller SunPKCS11-Darwin thread early, outside of any Robolectric classloader
@@ -100,9 +102,14 @@ public class RobolectricTestRunner extends SandboxTestRunner {
         apkLoader = new ApkLoader(getJarResolver());
       }
     }
+
+    SandboxPoolScheduler scheduler = SandboxPoolScheduler.create();
+    if (scheduler != null) {
+      setScheduler(scheduler);
+    }
   }
 
-  protected DependencyResolver getJarResolver() {
+  protected synchronized DependencyResolver getJarResolver() {
     if (dependencyResolver == null) {
       if (Boolean.getBoolean("robolectric.offline")) {
         String propPath = System.getProperty("robolectric-deps.properties");
@@ -336,13 +343,33 @@ public class RobolectricTestRunner extends SandboxTestRunner {
     RobolectricFrameworkMethod roboMethod = (RobolectricFrameworkMethod) method;
     SdkConfig sdkConfig = roboMethod.sdkConfig;
     return getSandboxFactory().getSdkEnvironment(
-        createClassLoaderConfig(method), sdkConfig, roboMethod.isLegacy(), getJarResolver());
+        createClassLoaderConfig(method), sdkConfig, roboMethod.isLegacy(), getJarResolver(),
+        SandboxPoolScheduler.currentSlot());
   }
 
   protected SandboxFactory getSandboxFactory() {
     return SandboxFactory.INSTANCE;
   }
 
+  @Override
+  protected Statement methodBlock(FrameworkMethod method) {
+    Statement statement = super.methodBlock(method);
+    // Qualifiers set the JVM's default locale, which sandboxes on other workers would see.
+    boolean changesJvmDefaults =
+        !((RobolectricFrameworkMethod) method).config.qualifiers().isEmpty();
+    if (changesJvmDefaults && SandboxPoolScheduler.getSandboxThreads() > 1
+        && warnedAboutJvmDefaults.compareAndSet(false, true)) {
+      Logger.warn("%s sets qualifiers, so its tests change the default locale and will run"
+          + " one at a time on the sandbox pool", getTestClass().getName());
+    }
+    return new Statement() {
+      @Override
+      public void evaluate() throws Throwable {
+        SandboxPoolScheduler.evaluate(statement, changesJvmDefaults);
+      }
+    };
+  }
+
   @Override
   protected void beforeTest(Sandbox sandbox, FrameworkMethod method, Method bootstrappedMethod) throws Throwable {
     SdkEnvironment sdkEnvironment = (SdkEnvironment) sandbox;
@@ -370,7 +397,9 @@ public class RobolectricTestRunner extends SandboxTestRunner {
     Class<TestLifecycle> cl = sdkEnvironment.bootstrappedClass(getTestLifecycleClass());
     roboMethod.testLifecycle = ReflectionHelpers.newInstance(cl);
 
-    providers = ServiceLoader.load(ShadowProvider.class, sdkEnvironment.getRobolectricClassLoader());
+    roboMethod.providers =
+        ServiceLoader.load(ShadowProvider.class, sdkEnvironment.getRobolectricClassLoader());
+    roboMethod.robolectricClassLoader = sdkEnvironment.getRobolectricClassLoader();
 
     roboMethod.parallelUniverseInterface.setSdkConfig(sdkConfig);
 
@@ -397,9 +426,21 @@ public class RobolectricTestRunner extends SandboxTestRunner {
     }
   }
 
-  private void resetStaticState() {
-    for (ShadowProvider provider : providers) {
-      provider.reset();
+  private void resetStaticState(RobolectricFrameworkMethod roboMethod) {
+    if (roboMethod.providers == null) {
+      return;
+    }
+    ClassLoader classLoader = roboMethod.robolectricClassLoader;
+    if (classLoader instanceof SandboxClassLoader) {
+      // Only run resetters for classes the test could have touched.
+      SandboxClassLoader sandboxClassLoader = (SandboxClassLoader) classLoader;
+      for (ShadowProvider provider : roboMethod.providers) {
+        provider.reset(sandboxClassLoader::isClassLoaded);
+      }
+    } else {
+      for (ShadowProvider provider : roboMethod.providers) {
+        provider.reset();
+      }
     }
   }
 
@@ -411,14 +452,16 @@ public class RobolectricTestRunner extends SandboxTestRunner {
       System.out.println("WARNING: Test thread was interrupted! " + method.toString());
     }
 
+    RobolectricFrameworkMethod roboMethod = (RobolectricFrameworkMethod) method;
     try {
       // reset static state afterward too, so statics don't defeat GC?
       PerfStatsCollector.getInstance()
-          .measure("reset Android state (after test)", this::resetStaticState);
+          .measure("reset Android state (after test)", () -> resetStaticState(roboMethod));
     } finally {
-      RobolectricFrameworkMethod roboMethod = (RobolectricFrameworkMethod) method;
       roboMethod.testLifecycle = null;
       roboMethod.parallelUniverseInterface = null;
+      roboMethod.providers = null;
+      roboMethod.robolectricClassLoader = null;
     }
   }
 
@@ -624,6 +667,8 @@ public class RobolectricTestRunner extends SandboxTestRunner {
     private boolean includeVariantMarkersInTestName = true;
     TestLifecycle testLifecycle;
     ParallelUniverseInterface parallelUniverseInterface;
+    ServiceLoader<ShadowProvider> providers;
+    ClassLoader robolectricClassLoader;
 
     RobolectricFrameworkMethod(
         @Nonnull Method method,
@@ -44,6 +44,7 @@ import org.robolectric.annotation.Config;
 import org.robolectric.internal.ParallelUniverseInterface;
 import org.robolectric.internal.SdkConfig;
 import org.robolectric.internal.SdkEnvironment;
+import org.robolectric.internal.bytecode.ShadowMap;
 import org.robolectric.manifest.AndroidManifest;
 import org.robolectric.manifest.BroadcastReceiverData;
 import org.robolectric.manifest.RoboNotFoundException;
@@ -82,11 +83,17 @@ public class ParallelUniverse implements ParallelUniverseInterface {
   @Override
   public void setSdkConfig(SdkConfig sdkConfig) {
     this.sdkConfig = sdkConfig;
+    if (RuntimeEnvironment.getApiLevel() != sdkConfig.getApiLevel()) {
+      ShadowMap.invalidateShadowPickers();
+    }
     ReflectionHelpers.setStaticField(RuntimeEnvironment.class, "apiLevel", sdkConfig.getApiLevel());
   }
 
   @Override
   public void setResourcesMode(boolean legacyResources) {
+    if (RuntimeEnvironment.useLegacyResources() != legacyResources) {
+      ShadowMap.invalidateShadowPickers();
+    }
     RuntimeEnvironment.setUseLegacyResources(legacyResources);
   }
 
@@ -242,13 +249,16 @@ public class ParallelUniverse implements ParallelUniverseInterface {
     if (RuntimeEnvironment.useLegacyResources()) {
       injectResourceStuffForLegacy(apkLoader, appManifest, sdkEnvironment);
 
-      if (appManifest.getAndroidManifestFile() != null
-          && Files.exists(appManifest.getAndroidManifestFile())) {
-        parsedPackage = LegacyManifestParser.createPackage(appManifest);
-      } else {
-        parsedPackage = new Package("org.robolectric.default");
-        parsedPackage.applicationInfo.targetSdkVersion = appManifest.getTargetSdkVersion();
-      }
+      parsedPackage = ParsedPackageCache.get(appManifest, true, () -> {
+        if (appManifest.getAndroidManifestFile() != null
+            && Files.exists(appManifest.getAndroidManifestFile())) {
+          return LegacyManifestParser.createPackage(appManifest);
+        } else {
+          Package defaultPackage = new Package("org.robolectric.default");
+          defaultPackage.applicationInfo.targetSdkVersion = appManifest.getTargetSdkVersion();
+          return defaultPackage;
+        }
+      });
       // Support overriding the package name specified in the Manifest.
       if (!Config.DEFAULT_PACKAGE_NAME.equals(config.packageName())) {
         parsedPackage.packageName = config.packageName();
@@ -265,7 +275,8 @@ public class ParallelUniverse implements ParallelUniverseInterface {
           apkLoader.getArtifactUrl(sdkConfig.getAndroidSdkDependency()).getFile());
 
       Path packageFile = appManifest.getApkFile();
-      parsedPackage = ShadowPackageParser.callParsePackage(packageFile);
+      parsedPackage = ParsedPackageCache.get(appManifest, false,
+          () -> ShadowPackageParser.callParsePackage(packageFile));
     }
     return parsedPackage;
   }
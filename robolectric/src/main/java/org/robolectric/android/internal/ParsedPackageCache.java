@@ -0,0 +1,101 @@
+package org.robolectric.android.internal;
+
+import static android.os.Build.VERSION_CODES.O;
+
+import android.content.pm.PackageParser.Package;
+import android.os.Parcel;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+import org.robolectric.RuntimeEnvironment;
+import org.robolectric.manifest.AndroidManifest;
+import org.robolectric.util.Logger;
+import org.robolectric.util.PerfStatsCollector;
+
+/**
+ * Cache of parsed app packages, so that the manifest isn't parsed again for each test.
+ *
+ * Tests may change the package they're given (e.g. through {@code ShadowPackageManager}), so the
+ * cache keeps a pristine copy and hands out deep copies of it. Copies are made by writing the
+ * package to a {@link Parcel} and reading it back, as the framework's own package cache does.
+ * Packages aren't parcelable before O, so on older SDKs they're parsed for every test.
+ *
+ * Set the {@code robolectric.cacheParsedPackages} system property to {@code false} to disable.
+ */
+class ParsedPackageCache {
+  private static final boolean ENABLED =
+      Boolean.parseBoolean(System.getProperty("robolectric.cacheParsedPackages", "true"));
+
+  // This class is loaded separately in each sandbox, so each sandbox has its own cache.
+  private static final Map<Key, Package> packages = new ConcurrentHashMap<>();
+  private static final Set<Key> uncopyable = ConcurrentHashMap.newKeySet();
+
+  static Package get(AndroidManifest appManifest, boolean legacyResources,
+      Supplier<Package> parser) {
+    if (!ENABLED || RuntimeEnvironment.getApiLevel() < O) {
+      return parser.get();
+    }
+
+    Key key = new Key(appManifest, RuntimeEnvironment.getApiLevel(), legacyResources);
+    Package cached = packages.get(key);
+    if (cached != null) {
+      return PerfStatsCollector.getInstance().measure("copy cached package", () -> copy(cached));
+    }
+
+    Package parsed = parser.get();
+    if (!uncopyable.contains(key)) {
+      try {
+        packages.putIfAbsent(key, copy(parsed));
+      } catch (RuntimeException e) {
+        Logger.debug("couldn't copy parsed package %s, so it won't be cached: %s",
+            parsed.packageName, e);
+        uncopyable.add(key);
+      }
+    }
+    return parsed;
+  }
+
+  private static Package copy(Package thePackage) {
+    Parcel parcel = Parcel.obtain();
+    try {
+      thePackage.writeToParcel(parcel, 0);
+      parcel.setDataPosition(0);
+      return new Package(parcel);
+    } finally {
+      parcel.recycle();
+    }
+  }
+
+  private static class Key {
+    private final AndroidManifest appManifest;
+    private final int apiLevel;
+    private final boolean legacyResources;
+
+    Key(AndroidManifest appManifest, int apiLevel, boolean legacyResources) {
+      this.appManifest = appManifest;
+      this.apiLevel = apiLevel;
+      this.legacyResources = legacyResources;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Key)) {
+        return false;
+      }
+      Key key = (Key) o;
+      return apiLevel == key.apiLevel
+          && legacyResources == key.legacyResources
+          && Objects.equals(appManifest, key.appManifest);
+    }
+
+    @Override
+    public int hashCode() {
+      return Objects.hash(appManifest, apiLevel, legacyResources);
+    }
+  }
+}
@@ -0,0 +1,61 @@
+package org.robolectric.internal;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import org.robolectric.JarInstrumentor;
+import org.robolectric.android.AndroidInterceptors;
+import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.Interceptors;
+
+/**
+ * Build step which writes a fully instrumented copy of an android-all jar, using the same
+ * {@link InstrumentationConfiguration} as {@link org.robolectric.RobolectricTestRunner} applies to
+ * tests without extra shadows or instrumented packages.
+ *
+ * Put the output in the directory named by the {@code robolectric.preinstrumentedJarDir} system
+ * property and {@link SandboxFactory} will load SDK classes from it instead of instrumenting them
+ * on every run.
+ *
+ * The robolectric module's {@code instrumentAndroidAll} Gradle task runs this for each SDK, and
+ * its tests use the output when run with {@code -Ppreinstrumented}.
+ */
+public class AndroidAllJarInstrumentor {
+  private static final String PREINSTRUMENTED_SUFFIX = "-instrumented.jar";
+
+  public static void main(String[] args) throws Exception {
+    if (args.length != 2) {
+      System.err.println("Usage: AndroidAllJarInstrumentor <android-all jar> <dest dir>");
+      System.exit(1);
+    }
+
+    File sourceJar = new File(args[0]);
+    File destDir = new File(args[1]);
+    if (!destDir.isDirectory() && !destDir.mkdirs()) {
+      throw new IOException("couldn't create " + destDir);
+    }
+
+    Set<String> failedClasses = new JarInstrumentor(createInstrumentationConfiguration())
+        .instrumentJar(sourceJar, new File(destDir, preinstrumentedJarName(sourceJar)));
+    if (!failedClasses.isEmpty()) {
+      System.exit(1);
+    }
+  }
+
+  /** Returns the configuration used for SDK classes by default. */
+  public static InstrumentationConfiguration createInstrumentationConfiguration() {
+    InstrumentationConfiguration.Builder builder =
+        SandboxTestRunner.newDefaultClassLoaderConfigBuilder();
+    AndroidConfigurer.configure(builder, new Interceptors(AndroidInterceptors.all()));
+    return builder.build();
+  }
+
+  /** Returns the file name of the pre-instrumented copy of the given android-all jar. */
+  static String preinstrumentedJarName(File androidAllJar) {
+    String name = androidAllJar.getName();
+    if (name.endsWith(".jar")) {
+      name = name.substring(0, name.length() - ".jar".length());
+    }
+    return name + PREINSTRUMENTED_SUFFIX;
+  }
+}
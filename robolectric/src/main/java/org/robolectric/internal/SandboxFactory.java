@@ -1,48 +1,156 @@
 package org.robolectric.internal;
 
 import android.annotation.SuppressLint;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.util.LinkedHashMap;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.List;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 import javax.annotation.Nonnull;
+import org.robolectric.internal.bytecode.ClassLoadTrace;
 import org.robolectric.internal.bytecode.InstrumentationConfiguration;
+import org.robolectric.internal.bytecode.PreinstrumentedJar;
 import org.robolectric.internal.bytecode.SandboxClassLoader;
 import org.robolectric.internal.dependency.DependencyResolver;
+import org.robolectric.util.Logger;
+import org.robolectric.util.PerfStatsCollector;
 
 @SuppressLint("NewApi")
 public class SandboxFactory {
   public static final SandboxFactory INSTANCE = new SandboxFactory();
 
+  private static final String PREINSTRUMENTED_JAR_DIR_PROPERTY =
+      "robolectric.preinstrumentedJarDir";
+
+  private static final String PREFETCH_CLASS_LIST_PROPERTY = "robolectric.prefetchClassList";
+
+  private static final String CLASS_LOAD_TRACE_RECORD_PROPERTY =
+      "robolectric.classLoadTrace.record";
+
+  private static final String CLASS_LOAD_TRACE_REPLAY_PROPERTY =
+      "robolectric.classLoadTrace.replay";
+
+  private static final String MAX_CACHED_CLASSES_PROPERTY = "robolectric.sandboxCache.maxClasses";
+
   /** The factor for cache size. See {@link #CACHE_SIZE} for details. */
   private static final int CACHE_SIZE_FACTOR = 3;
 
   /** We need to set the cache size of class loaders more than the number of supported APIs as different tests may have different configurations. */
-  private static final int CACHE_SIZE = SdkConfig.getSupportedApis().size() * CACHE_SIZE_FACTOR;
+  private static final int CACHE_SIZE = SdkConfig.getSupportedApis().size() * CACHE_SIZE_FACTOR
+      * SandboxPoolScheduler.getSandboxThreads();
 
-  // Simple LRU Cache. SdkEnvironments are unique across InstrumentationConfiguration and SdkConfig
-  private final LinkedHashMap<SandboxKey, SdkEnvironment> sdkToEnvironment = new LinkedHashMap<SandboxKey, SdkEnvironment>() {
-    @Override
-    protected boolean removeEldestEntry(Map.Entry<SandboxKey, SdkEnvironment> eldest) {
-      return size() > CACHE_SIZE;
-    }
-  };
+  /**
+   * Heap allowed per cached class when choosing the default for
+   * {@code robolectric.sandboxCache.maxClasses}. This only scales the default class count with the
+   * heap; sandboxes' actual memory use isn't measured.
+   */
+  private static final long HEAP_BYTES_PER_CACHED_CLASS = 16 * 1024;
+
+  /** Class count assumed for sandboxes whose class loader doesn't report how many it loaded. */
+  private static final int DEFAULT_LOADED_CLASS_COUNT = 10_000;
+
+  // LRU cache. SdkEnvironments are unique across InstrumentationConfiguration and SdkConfig.
+  // Different keys are built concurrently, and each key is built only once.
+  private final ConcurrentHashMap<SandboxKey, CachedSdkEnvironment> sdkToEnvironment =
+      new ConcurrentHashMap<>();
+  private final AtomicLong accessCounter = new AtomicLong();
+  private final long maxCachedClasses = Long.getLong(MAX_CACHED_CLASSES_PROPERTY,
+      Runtime.getRuntime().maxMemory() / 2 / HEAP_BYTES_PER_CACHED_CLASS);
 
-  public synchronized SdkEnvironment getSdkEnvironment(
+  private final Map<Path, ClassLoadTrace> classLoadTraces = new ConcurrentHashMap<>();
+
+  public SdkEnvironment getSdkEnvironment(
       InstrumentationConfiguration instrumentationConfig, SdkConfig sdkConfig,
       boolean useLegacyResources, DependencyResolver dependencyResolver) {
-    SandboxKey key = new SandboxKey(sdkConfig, instrumentationConfig, useLegacyResources);
+    return getSdkEnvironment(
+        instrumentationConfig, sdkConfig, useLegacyResources, dependencyResolver, 0);
+  }
+
+  /**
+   * Returns a sandbox for the given configuration. Callers which run tests concurrently pass a
+   * distinct {@code slot} for each thread, so that threads never share a sandbox's static state.
+   */
+  public SdkEnvironment getSdkEnvironment(
+      InstrumentationConfiguration instrumentationConfig, SdkConfig sdkConfig,
+      boolean useLegacyResources, DependencyResolver dependencyResolver, int slot) {
+    SandboxKey key = new SandboxKey(sdkConfig, instrumentationConfig, useLegacyResources, slot);
+    PerfStatsCollector perfStatsCollector = PerfStatsCollector.getInstance();
+
+    CachedSdkEnvironment cached =
+        sdkToEnvironment.computeIfAbsent(key, k -> new CachedSdkEnvironment());
+    cached.lastAccess = accessCounter.incrementAndGet();
+    if (!cached.claim()) {
+      // another thread built, or is still building, this sandbox
+      return perfStatsCollector.measure(
+          cached.isDone() ? "sandbox cache hit" : "sandbox build wait", cached::get);
+    }
+
+    try {
+      SdkEnvironment sdkEnvironment = perfStatsCollector.measure("sandbox cache miss",
+          () -> buildSdkEnvironment(instrumentationConfig, sdkConfig, dependencyResolver));
+      cached.complete(sdkEnvironment);
+    } catch (RuntimeException | Error e) {
+      sdkToEnvironment.remove(key, cached);
+      cached.fail(e);
+      throw e;
+    }
 
-    SdkEnvironment sdkEnvironment = sdkToEnvironment.get(key);
-    if (sdkEnvironment == null) {
-      URL[] urls = dependencyResolver.getLocalArtifactUrls(sdkConfig.getAndroidSdkDependency());
+    evictIfNecessary(key);
+    return cached.get();
+  }
 
-      ClassLoader robolectricClassLoader = createClassLoader(instrumentationConfig, urls);
-      sdkEnvironment = createSdkEnvironment(sdkConfig, robolectricClassLoader);
+  private SdkEnvironment buildSdkEnvironment(InstrumentationConfiguration instrumentationConfig,
+      SdkConfig sdkConfig, DependencyResolver dependencyResolver) {
+    URL[] urls = dependencyResolver.getLocalArtifactUrls(sdkConfig.getAndroidSdkDependency());
 
-      sdkToEnvironment.put(key, sdkEnvironment);
+    ClassLoader robolectricClassLoader = createClassLoader(instrumentationConfig, urls);
+    if (robolectricClassLoader instanceof SandboxClassLoader) {
+      maybeUsePreinstrumentedJar((SandboxClassLoader) robolectricClassLoader, urls);
+      maybePrefetchClasses((SandboxClassLoader) robolectricClassLoader);
+      maybeTraceClassLoads((SandboxClassLoader) robolectricClassLoader, sdkConfig);
+    }
+    return createSdkEnvironment(sdkConfig, robolectricClassLoader);
+  }
+
+  /**
+   * Drops least recently used sandboxes while there are too many of them, or while together they
+   * have loaded more classes than {@code robolectric.sandboxCache.maxClasses}. That limit is a
+   * class count, not a measurement of memory; by default it's one class per 16KB of half the
+   * maximum heap. The sandbox which was just built is never evicted.
+   */
+  private synchronized void evictIfNecessary(SandboxKey justBuilt) {
+    while (sdkToEnvironment.size() > 1) {
+      long totalLoadedClasses = 0;
+      SandboxKey eldestKey = null;
+      CachedSdkEnvironment eldest = null;
+      for (Map.Entry<SandboxKey, CachedSdkEnvironment> entry : sdkToEnvironment.entrySet()) {
+        CachedSdkEnvironment cached = entry.getValue();
+        totalLoadedClasses += cached.loadedClassCount();
+        if (cached.isDone() && !entry.getKey().equals(justBuilt)
+            && (eldest == null || cached.lastAccess < eldest.lastAccess)) {
+          eldestKey = entry.getKey();
+          eldest = cached;
+        }
+      }
+
+      if (eldest == null
+          || (sdkToEnvironment.size() <= CACHE_SIZE && totalLoadedClasses <= maxCachedClasses)) {
+        return;
+      }
+      if (sdkToEnvironment.remove(eldestKey, eldest)) {
+        PerfStatsCollector.getInstance().startEvent("sandbox cache eviction").finished();
+      }
     }
-    return sdkEnvironment;
   }
 
   protected SdkEnvironment createSdkEnvironment(SdkConfig sdkConfig,
@@ -55,16 +163,167 @@ public class SandboxFactory {
     return new SandboxClassLoader(ClassLoader.getSystemClassLoader(), instrumentationConfig, urls);
   }
 
+  /**
+   * Points the class loader at an ahead-of-time instrumented copy of the android-all jar, if one
+   * was written by {@link AndroidAllJarInstrumentor} to the directory named by the
+   * {@code robolectric.preinstrumentedJarDir} system property.
+   */
+  private void maybeUsePreinstrumentedJar(SandboxClassLoader classLoader, URL[] urls) {
+    String preinstrumentedJarDir = System.getProperty(PREINSTRUMENTED_JAR_DIR_PROPERTY);
+    if (preinstrumentedJarDir == null || preinstrumentedJarDir.isEmpty() || urls.length == 0) {
+      return;
+    }
+
+    File androidAllJar;
+    try {
+      androidAllJar = new File(urls[0].toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return;
+    }
+
+    PreinstrumentedJar preinstrumentedJar = PreinstrumentedJar.open(new File(preinstrumentedJarDir,
+        AndroidAllJarInstrumentor.preinstrumentedJarName(androidAllJar)));
+    if (preinstrumentedJar != null && !classLoader.usePreinstrumentedJar(preinstrumentedJar)) {
+      try {
+        preinstrumentedJar.close();
+      } catch (IOException ignored) {
+      }
+    }
+  }
+
+  /**
+   * Starts instrumenting the classes listed (one per line) in the file named by the
+   * {@code robolectric.prefetchClassList} system property in the background, so they are ready
+   * by the time the first test needs them.
+   */
+  private void maybePrefetchClasses(SandboxClassLoader classLoader) {
+    String prefetchClassList = System.getProperty(PREFETCH_CLASS_LIST_PROPERTY);
+    if (prefetchClassList == null || prefetchClassList.isEmpty()) {
+      return;
+    }
+
+    List<String> classNames;
+    try {
+      classNames = ClassLoadTrace.readClassNames(Paths.get(prefetchClassList));
+    } catch (IOException e) {
+      Logger.info("couldn't read %s: %s", prefetchClassList, e);
+      return;
+    }
+    classLoader.prefetch(classNames);
+  }
+
+  /**
+   * Replays the class load trace for the given SDK from the directory named by the
+   * {@code robolectric.classLoadTrace.replay} system property, and/or records a new one to the
+   * directory named by {@code robolectric.classLoadTrace.record}. Recorded traces are written
+   * when the JVM exits.
+   */
+  private void maybeTraceClassLoads(SandboxClassLoader classLoader, SdkConfig sdkConfig) {
+    String recordDir = System.getProperty(CLASS_LOAD_TRACE_RECORD_PROPERTY);
+    if (recordDir != null && !recordDir.isEmpty()) {
+      classLoader.setClassLoadTrace(getClassLoadTrace(
+          Paths.get(recordDir, classLoadTraceFileName(sdkConfig))));
+    }
+
+    String replayDir = System.getProperty(CLASS_LOAD_TRACE_REPLAY_PROPERTY);
+    if (replayDir != null && !replayDir.isEmpty()) {
+      Path traceFile = Paths.get(replayDir, classLoadTraceFileName(sdkConfig));
+      if (Files.isRegularFile(traceFile)) {
+        try {
+          List<String> classNames = ClassLoadTrace.readClassNames(traceFile);
+          PerfStatsCollector.getInstance().measure("preload sandbox classes",
+              () -> classLoader.preload(classNames));
+        } catch (IOException e) {
+          Logger.info("couldn't read %s: %s", traceFile, e);
+        }
+      }
+    }
+  }
+
+  private ClassLoadTrace getClassLoadTrace(Path traceFile) {
+    return classLoadTraces.computeIfAbsent(traceFile, file -> {
+      ClassLoadTrace classLoadTrace = new ClassLoadTrace();
+      Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+        try {
+          classLoadTrace.write(file);
+        } catch (IOException e) {
+          Logger.error("couldn't write " + file, e);
+        }
+      }, "write " + file.getFileName()));
+      return classLoadTrace;
+    });
+  }
+
+  private static String classLoadTraceFileName(SdkConfig sdkConfig) {
+    return "sdk-" + sdkConfig.getApiLevel() + ".classes";
+  }
+
+  /**
+   * A cache entry. The first thread to {@link #claim()} it builds the sandbox; others wait for it.
+   */
+  private static class CachedSdkEnvironment {
+    private final CompletableFuture<SdkEnvironment> future = new CompletableFuture<>();
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    volatile long lastAccess;
+
+    boolean claim() {
+      return claimed.compareAndSet(false, true);
+    }
+
+    void complete(SdkEnvironment sdkEnvironment) {
+      future.complete(sdkEnvironment);
+    }
+
+    void fail(Throwable e) {
+      future.completeExceptionally(e);
+    }
+
+    boolean isDone() {
+      return future.isDone();
+    }
+
+    SdkEnvironment get() {
+      try {
+        return future.join();
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw (RuntimeException) cause;
+      }
+    }
+
+    /** Returns the number of classes the sandbox has loaded. */
+    long loadedClassCount() {
+      if (!future.isDone() || future.isCompletedExceptionally()) {
+        return 0;
+      }
+      ClassLoader classLoader = future.join().getRobolectricClassLoader();
+      return classLoader instanceof SandboxClassLoader
+          ? ((SandboxClassLoader) classLoader).getLoadedClassCount()
+          : DEFAULT_LOADED_CLASS_COUNT;
+    }
+  }
+
   static class SandboxKey {
     private final SdkConfig sdkConfig;
     private final InstrumentationConfiguration instrumentationConfiguration;
     private final boolean useLegacyResources;
+    private final int slot;
 
     public SandboxKey(SdkConfig sdkConfig,
         InstrumentationConfiguration instrumentationConfiguration, boolean useLegacyResources) {
+      this(sdkConfig, instrumentationConfiguration, useLegacyResources, 0);
+    }
+
+    public SandboxKey(SdkConfig sdkConfig,
+        InstrumentationConfiguration instrumentationConfiguration, boolean useLegacyResources,
+        int slot) {
       this.sdkConfig = sdkConfig;
       this.instrumentationConfiguration = instrumentationConfiguration;
       this.useLegacyResources = useLegacyResources;
+      this.slot = slot;
     }
 
     @Override
@@ -77,6 +336,7 @@ public class SandboxFactory {
       }
       SandboxKey that = (SandboxKey) o;
       return useLegacyResources == that.useLegacyResources
+          && slot == that.slot
           && Objects.equals(sdkConfig, that.sdkConfig)
           && Objects.equals(instrumentationConfiguration, that.instrumentationConfiguration);
     }
@@ -84,7 +344,7 @@ public class SandboxFactory {
     @Override
     public int hashCode() {
 
-      return Objects.hash(sdkConfig, instrumentationConfiguration, useLegacyResources);
+      return Objects.hash(sdkConfig, instrumentationConfiguration, useLegacyResources, slot);
     }
   }
 }
@@ -18,6 +18,7 @@ import java.nio.file.spi.FileSystemProvider;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Set;
 import java.util.jar.JarEntry;
 import java.util.jar.JarOutputStream;
@@ -199,6 +200,19 @@ public class RobolectricTestRunnerTest {
     assertThat(events).containsExactly("failure: failed for the right reason");
   }
 
+  @Test
+  public void parallelTestsWithQualifiers_shouldEachSeeTheirOwnLocale() throws Exception {
+    String priorSandboxThreads = System.getProperty("robolectric.sandboxThreads");
+    System.setProperty("robolectric.sandboxThreads", "2");
+    try {
+      RobolectricTestRunner runner = new MyRobolectricTestRunner(TestWithQualifiers.class);
+      runner.run(notifier);
+    } finally {
+      TestUtil.resetSystemProperty("robolectric.sandboxThreads", priorSandboxThreads);
+    }
+    assertThat(events).isEmpty();
+  }
+
   /////////////////////////////
 
   public static class MyParallelUniverseWithFailingSetUp extends ParallelUniverse {
@@ -307,6 +321,31 @@ public class RobolectricTestRunnerTest {
     }
   }
 
+  @Ignore
+  public static class TestWithQualifiers {
+    @Config(qualifiers = "fr")
+    @Test
+    public void french() throws Exception {
+      assertLocaleStays("fr");
+    }
+
+    @Config(qualifiers = "de")
+    @Test
+    public void german() throws Exception {
+      assertLocaleStays("de");
+    }
+
+    private static void assertLocaleStays(String language) throws Exception {
+      assertThat(Thread.currentThread().getName()).startsWith("robolectric-sandbox-");
+      for (int i = 0; i < 10; i++) {
+        assertThat(Locale.getDefault().getLanguage()).isEqualTo(language);
+        assertThat(RuntimeEnvironment.application.getResources().getConfiguration().locale
+            .getLanguage()).isEqualTo(language);
+        Thread.sleep(10);
+      }
+    }
+  }
+
   private static class MyRobolectricTestRunner extends RobolectricTestRunner {
     public MyRobolectricTestRunner(Class<?> testClass) throws InitializationError {
       super(testClass);
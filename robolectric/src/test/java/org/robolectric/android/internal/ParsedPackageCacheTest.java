@@ -0,0 +1,52 @@
+package org.robolectric.android.internal;
+
+import static android.os.Build.VERSION_CODES.O;
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.pm.PackageParser.Package;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.manifest.AndroidManifest;
+
+@RunWith(AndroidJUnit4.class)
+@Config(minSdk = O)
+public class ParsedPackageCacheTest {
+  private final AtomicInteger parseCount = new AtomicInteger();
+
+  @Test
+  public void get_shouldParseOnlyOncePerManifest() {
+    AndroidManifest manifest = new AndroidManifest(null, null, null, "com.example.once");
+
+    ParsedPackageCache.get(manifest, false, () -> parse("com.example.once"));
+    ParsedPackageCache.get(manifest, false, () -> parse("com.example.once"));
+    ParsedPackageCache.get(manifest, true, () -> parse("com.example.once"));
+
+    assertThat(parseCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_shouldReturnIndependentCopies() {
+    AndroidManifest manifest = new AndroidManifest(null, null, null, "com.example.copies");
+
+    Package first = ParsedPackageCache.get(manifest, false, () -> parse("com.example.copies"));
+    first.applicationInfo.processName = "changed";
+    first.requestedPermissions.clear();
+    Package second = ParsedPackageCache.get(manifest, false, () -> parse("com.example.copies"));
+
+    assertThat(second).isNotSameAs(first);
+    assertThat(second.packageName).isEqualTo("com.example.copies");
+    assertThat(second.applicationInfo.processName).isNull();
+    assertThat(second.requestedPermissions).containsExactly("android.permission.INTERNET");
+  }
+
+  private Package parse(String packageName) {
+    parseCount.incrementAndGet();
+    Package thePackage = new Package(packageName);
+    thePackage.applicationInfo.packageName = packageName;
+    thePackage.requestedPermissions.add("android.permission.INTERNET");
+    return thePackage;
+  }
+}
@@ -1,14 +1,18 @@
 package org.robolectric.internal.bytecode;
 
 import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.Map;
 import org.junit.Before;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
+import org.robolectric.annotation.Implements;
 import org.robolectric.internal.ShadowProvider;
+import org.robolectric.shadow.api.ShadowPicker;
 import org.robolectric.shadows.ShadowActivity;
 
 @RunWith(JUnit4.class)
@@ -45,6 +49,8 @@ public class ShadowMapTest {
       }
     });
     baseShadowMap = ShadowMap.createFromShadowProviders(shadowProviders);
+    ShadowMap.invalidateShadowPickers();
+    CountingShadowPicker.pickCount = 0;
   }
 
   @Test public void shouldLookUpShadowClassesByNamingConvention() throws Exception {
@@ -99,8 +105,81 @@ public class ShadowMapTest {
     assertThat(d.hashCode()).isNotEqualTo(b.hashCode());
   }
 
+  @Test public void getShadowInfo_shouldReusePickedShadowUntilInvalidated() {
+    ShadowMap map = shadowMapWithPicker(Collections.singletonMap(
+        Picked.class.getName(), CountingShadowPicker.class.getName()));
+
+    assertThat(map.getShadowInfo(Picked.class, -1).shadowClassName)
+        .isEqualTo(ShadowPicked.class.getName());
+    assertThat(map.getShadowInfo(Picked.class, -1).shadowClassName)
+        .isEqualTo(ShadowPicked.class.getName());
+    assertThat(CountingShadowPicker.pickCount).isEqualTo(1);
+
+    ShadowMap.invalidateShadowPickers();
+    assertThat(map.getShadowInfo(Picked.class, -1).shadowClassName)
+        .isEqualTo(ShadowPicked.class.getName());
+    assertThat(CountingShadowPicker.pickCount).isEqualTo(2);
+  }
+
+  @Test public void getShadowInfo_shouldNotReusePickedShadowForAnotherClass() {
+    Map<String, String> shadowPickers = new HashMap<>();
+    shadowPickers.put(Picked.class.getName(), CountingShadowPicker.class.getName());
+    shadowPickers.put(AlsoPicked.class.getName(), CountingShadowPicker.class.getName());
+    ShadowMap map = shadowMapWithPicker(shadowPickers);
+
+    assertThat(map.getShadowInfo(Picked.class, -1).shadowClassName)
+        .isEqualTo(ShadowPicked.class.getName());
+    try {
+      map.getShadowInfo(AlsoPicked.class, -1);
+      fail("expected IllegalArgumentException");
+    } catch (IllegalArgumentException expected) {
+      assertThat(expected.getMessage()).contains(AlsoPicked.class.getName());
+    }
+  }
+
+  private static ShadowMap shadowMapWithPicker(Map<String, String> shadowPickers) {
+    return ShadowMap.createFromShadowProviders(Collections.singletonList(
+        new ShadowProvider() {
+          @Override
+          public void reset() {
+          }
+
+          @Override
+          public String[] getProvidedPackageNames() {
+            return new String[0];
+          }
+
+          @Override
+          public Map<String, String> getShadowMap() {
+            return Collections.emptyMap();
+          }
+
+          @Override
+          public Map<String, String> getShadowPickerMap() {
+            return shadowPickers;
+          }
+        }));
+  }
+
   static class Activity {}
 
+  public static class Picked {}
+
+  public static class AlsoPicked {}
+
+  @Implements(Picked.class)
+  public static class ShadowPicked {}
+
+  public static class CountingShadowPicker implements ShadowPicker<Object> {
+    static int pickCount;
+
+    @Override
+    public Class<?> pickShadowClass() {
+      pickCount++;
+      return ShadowPicked.class;
+    }
+  }
+
   static class A {}
   static class A1 {}
   static class A2 {}
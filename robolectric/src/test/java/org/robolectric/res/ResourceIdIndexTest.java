@@ -0,0 +1,44 @@
+package org.robolectric.res;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ResourceIdIndexTest {
+
+  @Test
+  public void shouldFindValuesByResourceId() {
+    ResourceIdIndex<String> index = new ResourceIdIndex<>();
+    index.put(0x7F010000, "first");
+    index.put(0x7F01002A, "second");
+    index.put(0x7F050003, "third");
+
+    assertThat(index.get(0x7F010000)).isEqualTo("first");
+    assertThat(index.get(0x7F01002A)).isEqualTo("second");
+    assertThat(index.get(0x7F050003)).isEqualTo("third");
+    assertThat(index.put(0x7F01002A, "replaced")).isEqualTo("second");
+    assertThat(index.get(0x7F01002A)).isEqualTo("replaced");
+  }
+
+  @Test
+  public void shouldNotFindMissingResourceIds() {
+    ResourceIdIndex<String> index = new ResourceIdIndex<>();
+    assertThat(index.get(0x7F010000)).isNull();
+
+    index.put(0x7F010001, "value");
+    assertThat(index.get(0x7F010000)).isNull();
+    assertThat(index.get(0x7F010002)).isNull();
+    assertThat(index.get(0x7F020001)).isNull();
+    assertThat(index.get(0x01010001)).isNull();
+  }
+
+  @Test(expected = IllegalArgumentException.class)
+  public void shouldRejectResourceIdsFromOtherPackages() {
+    ResourceIdIndex<String> index = new ResourceIdIndex<>();
+    index.put(0x7F010001, "value");
+    index.put(0x01010001, "other");
+  }
+}
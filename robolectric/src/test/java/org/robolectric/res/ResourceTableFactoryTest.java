@@ -4,14 +4,26 @@ import static com.google.common.truth.Truth.assertThat;
 import static org.robolectric.util.TestUtil.systemResources;
 import static org.robolectric.util.TestUtil.testResources;
 
+import java.io.File;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import org.junit.Before;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.robolectric.R;
+import org.robolectric.res.android.ResTable_config;
+import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.PerfStatsCollector.Metric;
 
 @RunWith(JUnit4.class)
 public class ResourceTableFactoryTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
   private ResourceTable appResourceTable;
   private ResourceTable systemResourceTable;
 
@@ -45,4 +57,74 @@ public class ResourceTableFactoryTest {
     assertThat(systemResourceTable.getResName(android.R.id.text1).getFullyQualifiedName()).isEqualTo("android:id/text1");
     assertThat(appResourceTable.getResName(R.id.burritos).getFullyQualifiedName()).isEqualTo("org.robolectric:id/burritos");
   }
+
+  @Test
+  public void shouldLoadSameResourcesInParallelAsSequentially() throws Exception {
+    assertSameResources(
+        new ResourceTableFactory(true).newFrameworkResourceTable(systemResources()),
+        new ResourceTableFactory(false).newFrameworkResourceTable(systemResources()));
+    assertSameResources(
+        new ResourceTableFactory(true).newResourceTable("org.robolectric", testResources()),
+        new ResourceTableFactory(false).newResourceTable("org.robolectric", testResources()));
+  }
+
+  @Test
+  public void shouldLoadSameResourcesFromSnapshot() throws Exception {
+    File snapshotDir = temporaryFolder.newFolder();
+    System.setProperty(ResourceTableSnapshot.DIR_PROPERTY, snapshotDir.getPath());
+    PerfStatsCollector.getInstance().setEnabled(true);
+    ResourceTable snapshotResourceTable;
+    try {
+      new ResourceTableFactory().newResourceTable("org.robolectric", testResources());
+      assertThat(snapshotDir.list()).hasLength(1);
+      int snapshotReads = metricCount("read legacy resource table snapshot");
+      int parses = metricCount("parse legacy resources from ");
+      snapshotResourceTable =
+          new ResourceTableFactory().newResourceTable("org.robolectric", testResources());
+      assertThat(metricCount("read legacy resource table snapshot"))
+          .isEqualTo(snapshotReads + 1);
+      assertThat(metricCount("parse legacy resources from ")).isEqualTo(parses);
+    } finally {
+      System.clearProperty(ResourceTableSnapshot.DIR_PROPERTY);
+    }
+
+    assertSameResources(snapshotResourceTable, appResourceTable);
+    ResTable_config config = new ResTable_config();
+    assertThat(snapshotResourceTable.getValue(R.string.hello, config).getData())
+        .isEqualTo("Hello");
+    assertThat(snapshotResourceTable.getValue(R.style.Gastropod, config).getData())
+        .isEqualTo(appResourceTable.getValue(R.style.Gastropod, config).getData());
+  }
+
+  /** Returns how many events were recorded for metrics whose names start with the given prefix. */
+  private static int metricCount(String namePrefix) {
+    int count = 0;
+    for (Metric metric : PerfStatsCollector.getInstance().getMetrics()) {
+      if (metric.getName().startsWith(namePrefix)) {
+        count += metric.getCount();
+      }
+    }
+    return count;
+  }
+
+  private static void assertSameResources(ResourceTable actual, ResourceTable expected) {
+    Map<ResName, List<String>> expectedDescriptions = describe(expected);
+    assertThat(describe(actual)).containsExactlyEntriesIn(expectedDescriptions);
+    for (ResName resName : expectedDescriptions.keySet()) {
+      assertThat(actual.getResourceId(resName)).isEqualTo(expected.getResourceId(resName));
+    }
+  }
+
+  private static Map<ResName, List<String>> describe(ResourceTable resourceTable) {
+    Map<ResName, List<String>> values = new LinkedHashMap<>();
+    resourceTable.receive((resName, typedResources) -> {
+      List<String> descriptions = new ArrayList<>();
+      for (TypedResource typedResource : typedResources) {
+        descriptions.add(
+            typedResource.getXmlContext().getXmlFile() + ": " + typedResource.getResType());
+      }
+      values.put(resName, descriptions);
+    });
+    return values;
+  }
 }
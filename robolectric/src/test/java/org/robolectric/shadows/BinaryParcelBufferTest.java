@@ -0,0 +1,216 @@
+package org.robolectric.shadows;
+
+import static android.os.Build.VERSION_CODES.LOLLIPOP;
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.fail;
+
+import android.os.Binder;
+import android.os.Parcel;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.After;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.robolectric.annotation.Config;
+import org.robolectric.shadows.ShadowParcel.BufferType;
+import org.robolectric.shadows.ShadowParcel.UnreliableBehaviorException;
+import org.robolectric.util.ReflectionHelpers;
+import org.robolectric.util.ReflectionHelpers.ClassParameter;
+
+@RunWith(AndroidJUnit4.class)
+@Config(minSdk = LOLLIPOP)
+public class BinaryParcelBufferTest {
+
+  private final List<Parcel> parcels = new ArrayList<>();
+
+  @After
+  public void tearDown() {
+    // Restore the buffer type first, so the recycled parcels go back to the pool with it.
+    ShadowParcel.setBufferType(BufferType.fromProperties());
+    for (Parcel parcel : parcels) {
+      parcel.recycle();
+    }
+  }
+
+  @Test
+  public void shouldRoundTripPrimitives() {
+    Parcel parcel = obtain(BufferType.BINARY);
+    parcel.writeInt(7);
+    parcel.writeLong(Long.MIN_VALUE);
+    parcel.writeFloat(1.25f);
+    parcel.writeDouble(-2.5);
+    parcel.writeString("h\u00e9llo");
+    parcel.writeString(null);
+    parcel.writeByteArray(new byte[] {1, 2, 3});
+
+    assertThat(parcel.dataSize()).isEqualTo(4 + 8 + 4 + 8 + 16 + 4 + 8);
+    parcel.setDataPosition(0);
+    assertThat(parcel.readInt()).isEqualTo(7);
+    assertThat(parcel.readLong()).isEqualTo(Long.MIN_VALUE);
+    assertThat(parcel.readFloat()).isEqualTo(1.25f);
+    assertThat(parcel.readDouble()).isEqualTo(-2.5);
+    assertThat(parcel.readString()).isEqualTo("h\u00e9llo");
+    assertThat(parcel.readString()).isNull();
+    assertThat(parcel.createByteArray()).isEqualTo(new byte[] {1, 2, 3});
+    assertThat(parcel.dataAvail()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldMarshallUsingParcelWireFormat() {
+    Parcel parcel = obtain(BufferType.BINARY);
+    parcel.writeInt(0x01020304);
+    parcel.writeString("a");
+
+    assertThat(parcel.marshall())
+        .isEqualTo(new byte[] {4, 3, 2, 1, 1, 0, 0, 0, 'a', 0, 0, 0});
+  }
+
+  @Test
+  public void shouldAppendFromOtherParcels() {
+    Parcel other = obtain(BufferType.BINARY);
+    other.writeInt(1);
+    other.writeString("two");
+    Parcel parcel = obtain(BufferType.BINARY);
+    parcel.writeLong(3L);
+
+    parcel.appendFrom(other, 4, other.dataSize() - 4);
+
+    parcel.setDataPosition(0);
+    assertThat(parcel.readLong()).isEqualTo(3L);
+    assertThat(parcel.readString()).isEqualTo("two");
+    assertThat(parcel.dataAvail()).isEqualTo(0);
+  }
+
+  @Test
+  public void shouldReadBindersButNotMarshallThem() {
+    Parcel parcel = obtain(BufferType.BINARY);
+    Binder binder = new Binder();
+    parcel.writeStrongBinder(binder);
+    parcel.setDataPosition(0);
+
+    assertThat(parcel.readStrongBinder()).isSameAs(binder);
+    try {
+      parcel.marshall();
+      fail();
+    } catch (RuntimeException e) {
+      assertThat(e).hasMessageThat().contains("Binder objects");
+    }
+  }
+
+  @Test
+  public void unchecked_shouldReinterpretData() {
+    Parcel parcel = obtain(BufferType.BINARY);
+    parcel.writeLong(0x0000000200000001L);
+    parcel.setDataPosition(0);
+
+    assertThat(parcel.readInt()).isEqualTo(1);
+    assertThat(parcel.readInt()).isEqualTo(2);
+  }
+
+  @Test
+  public void checked_shouldFailReadingDifferentType() {
+    Parcel parcel = obtain(BufferType.CHECKED);
+    parcel.writeLong(1L);
+    parcel.setDataPosition(0);
+
+    try {
+      parcel.readInt();
+      fail();
+    } catch (UnreliableBehaviorException e) {
+      assertThat(e).hasMessageThat().contains("Looking for Integer at position 0, found Long");
+    }
+  }
+
+  @Test
+  public void checked_shouldFailReadingInterruptedValue() {
+    Parcel parcel = obtain(BufferType.CHECKED);
+    parcel.writeString("hello all");
+    parcel.setDataPosition(4);
+    parcel.writeInt(1);
+    parcel.setDataPosition(0);
+
+    try {
+      parcel.readString();
+      fail();
+    } catch (UnreliableBehaviorException e) {
+      assertThat(e).hasMessageThat().contains("interrupts it at position 4");
+    }
+  }
+
+  @Test(expected = UnreliableBehaviorException.class)
+  public void checked_shouldFailReadingPastEndAfterWriting() {
+    Parcel parcel = obtain(BufferType.CHECKED);
+    parcel.writeInt(1);
+    parcel.readInt();
+  }
+
+  @Test
+  public void checked_shouldAllowReadingUnmarshalledDataAsAnything() {
+    Parcel parcel = obtain(BufferType.CHECKED);
+    parcel.writeLong(0x0000000200000001L);
+    byte[] bytes = parcel.marshall();
+
+    Parcel copy = obtain(BufferType.CHECKED);
+    copy.unmarshall(bytes, 0, bytes.length);
+    copy.setDataPosition(0);
+    assertThat(copy.readInt()).isEqualTo(1);
+    assertThat(copy.readInt()).isEqualTo(2);
+  }
+
+  @Test
+  public void shouldAppendFromParcelsWithOtherBinaryBufferType() {
+    Parcel other = obtain(BufferType.BINARY);
+    other.writeInt(1);
+    Parcel parcel = obtain(BufferType.CHECKED);
+    parcel.writeInt(2);
+
+    parcel.appendFrom(other, 0, other.dataSize());
+
+    parcel.setDataPosition(0);
+    assertThat(parcel.readInt()).isEqualTo(2);
+    assertThat(parcel.readFloat()).isEqualTo(Float.intBitsToFloat(1));
+  }
+
+  @Test
+  public void shouldFailClearlyAppendingFromTypedParcel() {
+    Parcel other = obtain(BufferType.TYPED);
+    other.writeInt(1);
+    Parcel parcel = obtain(BufferType.BINARY);
+
+    try {
+      parcel.appendFrom(other, 0, other.dataSize());
+      fail();
+    } catch (IllegalArgumentException e) {
+      assertThat(e.getMessage()).contains("typed and binary parcels can't be mixed");
+    }
+  }
+
+  @Test
+  public void reset_shouldRestoreBufferTypeFromProperties() {
+    BufferType configured = BufferType.fromProperties();
+    ShadowParcel.setBufferType(
+        configured == BufferType.TYPED ? BufferType.BINARY : BufferType.TYPED);
+
+    ShadowParcel.reset();
+
+    Parcel parcel = obtain();
+    parcel.writeInt(1);
+    Parcel expected = obtain(configured);
+    expected.writeInt(1);
+    assertThat(parcel.marshall()).isEqualTo(expected.marshall());
+  }
+
+  private Parcel obtain() {
+    // Not Parcel.obtain(), which may return a pooled parcel backed by another type of buffer.
+    Parcel parcel =
+        ReflectionHelpers.callConstructor(Parcel.class, ClassParameter.from(long.class, 0L));
+    parcels.add(parcel);
+    return parcel;
+  }
+
+  private Parcel obtain(BufferType bufferType) {
+    ShadowParcel.setBufferType(bufferType);
+    return obtain();
+  }
+}
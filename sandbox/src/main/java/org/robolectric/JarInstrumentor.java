@@ -9,30 +9,36 @@ import java.util.Enumeration;
 import java.util.Locale;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.jar.Attributes;
 import java.util.jar.JarEntry;
 import java.util.jar.JarFile;
 import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
 import java.util.zip.ZipEntry;
-import org.robolectric.internal.bytecode.ClassNodeProvider;
 import org.robolectric.internal.bytecode.InstrumentationConfiguration;
 import org.robolectric.internal.bytecode.InstrumentationConfiguration.Builder;
-import org.robolectric.internal.bytecode.OldClassInstrumentor;
-import org.robolectric.internal.bytecode.ShadowDecorator;
+import org.robolectric.internal.bytecode.InstrumentedClassCache;
+import org.robolectric.internal.bytecode.PreinstrumentedJar;
+import org.robolectric.internal.bytecode.SandboxClassLoader;
 import org.robolectric.util.Util;
 
 /**
  * Instruments an entire jar.
+ *
+ * The resulting jar records the fingerprints of the configuration and instrumentor used, so it can
+ * be handed to {@link SandboxClassLoader#usePreinstrumentedJar} to skip instrumenting its classes
+ * at runtime.
  */
 public class JarInstrumentor {
 
   private final InstrumentationConfiguration instrumentationConfiguration;
-  private final ShadowDecorator shadowDecorator;
-  private final OldClassInstrumentor classInstrumentor;
 
   public JarInstrumentor() {
-    instrumentationConfiguration = createInstrumentationConfiguration();
-    shadowDecorator = new ShadowDecorator();
-    classInstrumentor = new OldClassInstrumentor(shadowDecorator);
+    this(createInstrumentationConfiguration());
+  }
+
+  public JarInstrumentor(InstrumentationConfiguration instrumentationConfiguration) {
+    this.instrumentationConfiguration = instrumentationConfiguration;
   }
 
   public static void main(String[] args) throws Exception {
@@ -48,30 +54,44 @@ public class JarInstrumentor {
     instrumentJar(new File(args[0]), new File(args[1]));
   }
 
-  private void instrumentJar(File sourceFile, File destFile) throws IOException {
+  /**
+   * Writes an instrumented copy of {@code sourceFile} to {@code destFile}.
+   *
+   * @return the names of classes which couldn't be instrumented
+   */
+  public Set<String> instrumentJar(File sourceFile, File destFile) throws IOException {
     long startNs = System.nanoTime();
-    JarFile jarFile = new JarFile(sourceFile);
-    ClassNodeProvider classNodeProvider =
-        new ClassNodeProvider() {
-          @Override
-          protected byte[] getClassBytes(String className) throws ClassNotFoundException {
-            return JarInstrumentor.getClassBytes(className, jarFile);
-          }
-        };
+    SandboxClassLoader classLoader =
+        new SandboxClassLoader(
+            ClassLoader.getSystemClassLoader(),
+            instrumentationConfiguration,
+            (InstrumentedClassCache) null,
+            sourceFile.toURI().toURL());
+
+    Manifest manifest = new Manifest();
+    Attributes attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue(PreinstrumentedJar.CONFIG_FINGERPRINT_ATTRIBUTE,
+        instrumentationConfiguration.fingerprint());
+    attributes.putValue(PreinstrumentedJar.INSTRUMENTOR_FINGERPRINT_ATTRIBUTE,
+        classLoader.getInstrumentorFingerprint());
 
     int nonClassCount = 0;
     int classCount = 0;
     Set<String> failedClasses = new TreeSet<>();
-    try (JarOutputStream jarOut =
-        new JarOutputStream(
-            new BufferedOutputStream(new FileOutputStream(destFile), 32 * 1024))) {
+    try (JarFile jarFile = new JarFile(sourceFile);
+        JarOutputStream jarOut =
+            new JarOutputStream(
+                new BufferedOutputStream(new FileOutputStream(destFile), 32 * 1024), manifest)) {
       System.out.println("Instrumenting from " + sourceFile + " to " + destFile);
       Enumeration<JarEntry> entries = jarFile.entries();
       while (entries.hasMoreElements()) {
         JarEntry jarEntry = entries.nextElement();
 
         String name = jarEntry.getName();
-        if (name.endsWith("/")) {
+        if (name.equals(JarFile.MANIFEST_NAME)) {
+          continue;
+        } else if (name.endsWith("/")) {
           jarOut.putNextEntry(new JarEntry(name));
         } else if (name.endsWith(".class")) {
           String className = name.substring(0, name.length() - ".class".length()).replace('/', '.');
@@ -83,10 +103,12 @@ public class JarInstrumentor {
           }
 
           try {
-            byte[] classBytes = getClassBytes(className, jarFile);
-            byte[] outBytes =
-                classInstrumentor.instrument(
-                    classBytes, instrumentationConfiguration, classNodeProvider);
+            byte[] outBytes;
+            if (instrumentationConfiguration.shouldAcquire(className)) {
+              outBytes = classLoader.getInstrumentedBytes(className);
+            } else {
+              outBytes = getClassBytes(className, jarFile);
+            }
             jarOut.putNextEntry(new JarEntry(name));
             jarOut.write(outBytes);
             classCount++;
@@ -102,6 +124,8 @@ public class JarInstrumentor {
           nonClassCount++;
         }
       }
+    } finally {
+      classLoader.close();
     }
     long elapsedNs = System.nanoTime() - startNs;
     System.out.println(
@@ -117,6 +141,7 @@ public class JarInstrumentor {
     for (String failedClass : failedClasses) {
       System.out.println("- " + failedClass);
     }
+    return failedClasses;
   }
 
   private boolean isClassRenamed(String className) {
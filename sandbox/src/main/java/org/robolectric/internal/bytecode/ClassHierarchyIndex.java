@@ -0,0 +1,324 @@
+package org.robolectric.internal.bytecode;
+
+import com.google.common.hash.Hashing;
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.Opcodes;
+import org.robolectric.util.Logger;
+import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.Util;
+
+/**
+ * Immutable index of the superclass and interfaces of every class in a jar, which lets
+ * {@link InstrumentingClassWriter} compute stack map frames without reading and parsing the
+ * supertypes' bytecode.
+ *
+ * An index is built once per jar (reading only the class file headers) and shared by every
+ * sandbox in the JVM. If the {@code robolectric.classCache.dir} system property is set, it's also
+ * saved in a {@code hierarchy} directory under the {@link InstrumentedClassCache} directory, so
+ * later JVMs can load it instead of scanning the jar again. Saved files are named after the jar's
+ * path, size and modification time, so a replaced jar is indexed afresh. Otherwise the index is
+ * simply rebuilt by each JVM; nothing is ever written next to the jar, which usually lives in a
+ * Maven or Gradle cache.
+ *
+ * Indexes are used unless the {@code robolectric.classHierarchyIndex} system property is set to
+ * {@code false}.
+ */
+public class ClassHierarchyIndex {
+  static final String ENABLED_PROPERTY = "robolectric.classHierarchyIndex";
+  static final String FILE_SUFFIX = ".hierarchy";
+  private static final String CACHE_SUBDIR = "hierarchy";
+
+  private static final boolean ENABLED =
+      Boolean.parseBoolean(System.getProperty(ENABLED_PROPERTY, "true"));
+  private static final int MAGIC = 0x52434849; // "RCHI"
+  private static final int FORMAT_VERSION = 1;
+  private static final int NO_NAME = -1;
+
+  private static final Map<String, ClassHierarchyIndex> indexes = new ConcurrentHashMap<>();
+  // ConcurrentHashMap doesn't allow null values, so unreadable jars are remembered as EMPTY
+  private static final ClassHierarchyIndex EMPTY = new ClassHierarchyIndex(new HashMap<>());
+
+  /** The superclass and interfaces of a class. */
+  public static final class ClassInfo {
+    private static final String[] NO_INTERFACES = new String[0];
+
+    final int access;
+    final String superName;
+    final String[] interfaces;
+
+    ClassInfo(int access, String superName, String[] interfaces) {
+      this.access = access;
+      this.superName = superName;
+      this.interfaces = interfaces.length == 0 ? NO_INTERFACES : interfaces;
+    }
+
+    /** Reads the class info from the header of the given class file, without parsing its body. */
+    static ClassInfo fromClassBytes(byte[] classBytes) {
+      ClassReader classReader = new ClassReader(classBytes);
+      return new ClassInfo(
+          classReader.getAccess(), classReader.getSuperName(), classReader.getInterfaces());
+    }
+
+    boolean isInterface() {
+      return (access & Opcodes.ACC_INTERFACE) != 0;
+    }
+  }
+
+  private final Map<String, ClassInfo> classInfos;
+
+  ClassHierarchyIndex(Map<String, ClassInfo> classInfos) {
+    this.classInfos = classInfos;
+  }
+
+  /**
+   * Returns the shared index for the jar at the given URL, or null if indexes are disabled, the
+   * URL doesn't point at a local jar, or the jar can't be read.
+   */
+  public static ClassHierarchyIndex forUrl(URL url) {
+    if (!ENABLED || !"file".equals(url.getProtocol()) || !url.getPath().endsWith(".jar")) {
+      return null;
+    }
+
+    File file;
+    try {
+      file = new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      file = new File(url.getPath());
+    }
+    return forJar(file);
+  }
+
+  /**
+   * Returns the shared index for the given jar, loading it from disk or building it if this JVM
+   * hasn't indexed the jar yet. Returns null if the jar can't be read.
+   */
+  public static ClassHierarchyIndex forJar(File jarFile) {
+    return forJar(jarFile, InstrumentedClassCache.cacheDirFromSystemProperties());
+  }
+
+  /**
+   * Like {@link #forJar(File)}, but saves the index under the given cache directory, or doesn't
+   * save it at all if {@code cacheDir} is null.
+   */
+  static ClassHierarchyIndex forJar(File jarFile, Path cacheDir) {
+    if (!jarFile.isFile()) {
+      return null;
+    }
+    String key = jarFile.getAbsolutePath() + "@" + jarFile.length() + ":" + jarFile.lastModified();
+    ClassHierarchyIndex index = indexes.get(key);
+    if (index == null) {
+      index = indexes.computeIfAbsent(key, k -> loadOrBuild(jarFile, cacheDir));
+    }
+    return index == EMPTY ? null : index;
+  }
+
+  private static ClassHierarchyIndex loadOrBuild(File jarFile, Path cacheDir) {
+    Path indexFile = cacheDir == null ? null : indexFileFor(cacheDir, jarFile);
+    if (indexFile != null) {
+      ClassHierarchyIndex index = PerfStatsCollector.getInstance().measure(
+          "read class hierarchy index", () -> read(indexFile, jarFile));
+      if (index != null) {
+        return index;
+      }
+    }
+
+    ClassHierarchyIndex index;
+    try {
+      index = PerfStatsCollector.getInstance().measure(
+          "build class hierarchy index", () -> build(jarFile));
+    } catch (IOException e) {
+      Logger.debug("couldn't index %s: %s", jarFile, e);
+      return EMPTY;
+    }
+    if (indexFile != null) {
+      index.write(indexFile, jarFile);
+    }
+    return index;
+  }
+
+  /** Returns where the index for the given jar is saved under the given cache directory. */
+  static Path indexFileFor(Path cacheDir, File jarFile) {
+    String name = Hashing.sha256().newHasher()
+        .putUnencodedChars(jarFile.getAbsolutePath())
+        .putLong(jarFile.length())
+        .putLong(jarFile.lastModified())
+        .hash()
+        .toString();
+    return cacheDir.resolve(CACHE_SUBDIR).resolve(name + FILE_SUFFIX);
+  }
+
+  /** Builds an index of the classes in the given jar. */
+  static ClassHierarchyIndex build(File jarFile) throws IOException {
+    Map<String, ClassInfo> classInfos = new HashMap<>();
+    try (JarFile jar = new JarFile(jarFile)) {
+      Enumeration<JarEntry> entries = jar.entries();
+      while (entries.hasMoreElements()) {
+        JarEntry entry = entries.nextElement();
+        String name = entry.getName();
+        if (entry.isDirectory() || !name.endsWith(".class")) {
+          continue;
+        }
+        try (InputStream in = jar.getInputStream(entry)) {
+          String internalName = name.substring(0, name.length() - ".class".length());
+          classInfos.put(internalName, ClassInfo.fromClassBytes(Util.readBytes(in)));
+        } catch (RuntimeException e) {
+          // e.g. a class file version newer than ASM understands; it'll be read on demand
+          Logger.debug("couldn't index %s in %s: %s", name, jarFile, e);
+        }
+      }
+    }
+    return new ClassHierarchyIndex(classInfos);
+  }
+
+  /** Returns the info for the given internal class name, or null if the jar doesn't contain it. */
+  public ClassInfo get(String internalClassName) {
+    return classInfos.get(internalClassName);
+  }
+
+  /** Returns the number of indexed classes. */
+  public int size() {
+    return classInfos.size();
+  }
+
+  /**
+   * Reads a saved index, returning null if there's none or it was written for a different
+   * version of the jar.
+   */
+  static ClassHierarchyIndex read(Path indexFile, File jarFile) {
+    try (DataInputStream in = new DataInputStream(
+        new BufferedInputStream(Files.newInputStream(indexFile)))) {
+      if (in.readInt() != MAGIC
+          || in.readInt() != FORMAT_VERSION
+          || in.readLong() != jarFile.length()
+          || in.readLong() != jarFile.lastModified()) {
+        return null;
+      }
+
+      // names are stored once and referred to by index, so each is only a single String in memory
+      String[] names = new String[in.readInt()];
+      for (int i = 0; i < names.length; i++) {
+        names[i] = in.readUTF();
+      }
+
+      int classCount = in.readInt();
+      Map<String, ClassInfo> classInfos = new HashMap<>(classCount * 4 / 3 + 1);
+      for (int i = 0; i < classCount; i++) {
+        String name = names[in.readInt()];
+        int access = in.readInt();
+        int superIndex = in.readInt();
+        String[] interfaces = new String[in.readUnsignedShort()];
+        for (int j = 0; j < interfaces.length; j++) {
+          interfaces[j] = names[in.readInt()];
+        }
+        classInfos.put(name,
+            new ClassInfo(access, superIndex == NO_NAME ? null : names[superIndex], interfaces));
+      }
+      return new ClassHierarchyIndex(classInfos);
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException | RuntimeException e) {
+      Logger.debug("couldn't read class hierarchy index %s: %s", indexFile, e);
+      return null;
+    }
+  }
+
+  /**
+   * Saves this index for the given jar. Failures are logged and otherwise ignored; the saved
+   * index is only an optimization.
+   */
+  void write(Path indexFile, File jarFile) {
+    Path tmpFile = null;
+    try {
+      Path dir = indexFile.toAbsolutePath().getParent();
+      Files.createDirectories(dir);
+      tmpFile = Files.createTempFile(dir, indexFile.getFileName().toString(), ".tmp");
+      try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(tmpFile))) {
+        writeTo(new DataOutputStream(out), jarFile);
+      }
+      try {
+        Files.move(tmpFile, indexFile, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmpFile, indexFile, StandardCopyOption.REPLACE_EXISTING);
+      }
+      tmpFile = null;
+    } catch (IOException e) {
+      Logger.debug("couldn't write class hierarchy index %s: %s", indexFile, e);
+    } finally {
+      if (tmpFile != null) {
+        try {
+          Files.deleteIfExists(tmpFile);
+        } catch (IOException ignored) {
+        }
+      }
+    }
+  }
+
+  private void writeTo(DataOutputStream out, File jarFile) throws IOException {
+    Map<String, Integer> nameIndexes = new HashMap<>();
+    List<String> names = new ArrayList<>();
+    for (Map.Entry<String, ClassInfo> entry : classInfos.entrySet()) {
+      nameIndex(entry.getKey(), nameIndexes, names);
+      nameIndex(entry.getValue().superName, nameIndexes, names);
+      for (String itf : entry.getValue().interfaces) {
+        nameIndex(itf, nameIndexes, names);
+      }
+    }
+
+    out.writeInt(MAGIC);
+    out.writeInt(FORMAT_VERSION);
+    out.writeLong(jarFile.length());
+    out.writeLong(jarFile.lastModified());
+    out.writeInt(names.size());
+    for (String name : names) {
+      out.writeUTF(name);
+    }
+    out.writeInt(classInfos.size());
+    for (Map.Entry<String, ClassInfo> entry : classInfos.entrySet()) {
+      ClassInfo classInfo = entry.getValue();
+      out.writeInt(nameIndexes.get(entry.getKey()));
+      out.writeInt(classInfo.access);
+      out.writeInt(nameIndex(classInfo.superName, nameIndexes, names));
+      out.writeShort(classInfo.interfaces.length);
+      for (String itf : classInfo.interfaces) {
+        out.writeInt(nameIndexes.get(itf));
+      }
+    }
+    out.flush();
+  }
+
+  private static int nameIndex(String name, Map<String, Integer> nameIndexes, List<String> names) {
+    if (name == null) {
+      return NO_NAME;
+    }
+    Integer index = nameIndexes.get(name);
+    if (index == null) {
+      index = names.size();
+      nameIndexes.put(name, index);
+      names.add(name);
+    }
+    return index;
+  }
+}
@@ -2,9 +2,14 @@ package org.robolectric.internal.bytecode;
 
 import java.lang.invoke.MethodType;
 import java.lang.reflect.Modifier;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
 import java.util.List;
 import java.util.ListIterator;
+import java.util.Set;
 import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.FieldVisitor;
 import org.objectweb.asm.Label;
@@ -20,10 +25,14 @@ import org.objectweb.asm.tree.AbstractInsnNode;
 import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.FieldInsnNode;
 import org.objectweb.asm.tree.FieldNode;
+import org.objectweb.asm.tree.FrameNode;
 import org.objectweb.asm.tree.InsnList;
 import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.JumpInsnNode;
+import org.objectweb.asm.tree.LookupSwitchInsnNode;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.tree.TableSwitchInsnNode;
 import org.objectweb.asm.tree.TypeInsnNode;
 import org.objectweb.asm.tree.VarInsnNode;
 
@@ -31,10 +40,18 @@ public abstract class ClassInstrumentor {
   private static final String ROBO_INIT_METHOD_NAME = "$$robo$init";
   static final Type OBJECT_TYPE = Type.getType(Object.class);
   private static final ShadowImpl SHADOW_IMPL = new ShadowImpl();
+  /**
+   * Opt-in: keep the original stack map frames of methods whose code is copied unchanged, rather
+   * than recomputing frames for the whole class. Off by default until it's shown to be faster on
+   * android-all.
+   */
+  static final String PRESERVE_FRAMES_PROPERTY = "robolectric.preserveFrames";
   final Decorator decorator;
+  private final boolean preserveFrames;
 
   protected ClassInstrumentor(Decorator decorator) {
     this.decorator = decorator;
+    this.preserveFrames = Boolean.getBoolean(PRESERVE_FRAMES_PROPERTY);
   }
 
   public MutableClass analyzeClass(
@@ -65,10 +82,14 @@ public abstract class ClassInstrumentor {
   }
 
   byte[] instrumentToBytes(MutableClass mutableClass) {
+    ClassNode classNode = mutableClass.classNode;
+    // V1_7+ classes must carry stack map frames, so the original method bodies already have them
+    Set<MethodNode> framedMethods = preserveFrames && classNode.version >= Opcodes.V1_7
+        ? originalMethodBodies(classNode)
+        : null;
+
     instrument(mutableClass);
 
-    ClassNode classNode = mutableClass.classNode;
-    ClassWriter writer = new InstrumentingClassWriter(mutableClass.classNodeProvider, classNode);
     Remapper remapper =
         new Remapper() {
           @Override
@@ -76,11 +97,113 @@ public abstract class ClassInstrumentor {
             return mutableClass.config.mappedTypeName(internalName);
           }
         };
+    if (framedMethods != null) {
+      return writePreservingFrames(mutableClass, framedMethods, remapper);
+    }
+
+    ClassWriter writer = new InstrumentingClassWriter(mutableClass.classNodeProvider, classNode);
     ClassRemapper visitor = new ClassRemapper(writer, remapper);
     classNode.accept(visitor);
     return writer.toByteArray();
   }
 
+  /**
+   * Returns the methods whose bodies survive instrumentation with their stack map frames intact.
+   * Instrumentation renames these and rewrites some calls, but never changes the locals or the
+   * stack depth at a branch target. Constructors are split in two, so their frames can't be kept.
+   */
+  private static Set<MethodNode> originalMethodBodies(ClassNode classNode) {
+    Set<MethodNode> methods = Collections.newSetFromMap(new IdentityHashMap<>());
+    for (MethodNode method : classNode.methods) {
+      if (!method.name.equals("<init>")) {
+        methods.add(method);
+      }
+    }
+    return methods;
+  }
+
+  /**
+   * Writes the instrumented class, keeping the original stack map frames of {@code framedMethods}
+   * rather than recomputing frames for every method as {@link ClassWriter#COMPUTE_FRAMES} does.
+   * Frames are only computed for the other methods which need them, i.e. generated methods and
+   * split constructors with branches or exception handlers, by writing those methods to a
+   * separate class and copying them from there.
+   */
+  private byte[] writePreservingFrames(
+      MutableClass mutableClass, Set<MethodNode> framedMethods, Remapper remapper) {
+    ClassNode classNode = mutableClass.classNode;
+    ClassNode unframedClass = new ClassNode();
+    unframedClass.version = classNode.version;
+    unframedClass.access = classNode.access;
+    unframedClass.name = classNode.name;
+    unframedClass.superName = classNode.superName;
+    unframedClass.interfaces = classNode.interfaces;
+    Set<String> unframedMethods = new HashSet<>();
+    for (MethodNode method : classNode.methods) {
+      if (!framedMethods.contains(method) && needsComputedFrames(method)) {
+        unframedClass.methods.add(method);
+        unframedMethods.add(method.name + method.desc);
+      }
+    }
+
+    ClassWriter writer =
+        new InstrumentingClassWriter(mutableClass.classNodeProvider, ClassWriter.COMPUTE_MAXS);
+    if (unframedMethods.isEmpty()) {
+      classNode.accept(new ClassRemapper(writer, remapper));
+      return writer.toByteArray();
+    }
+
+    ClassWriter framesWriter =
+        new InstrumentingClassWriter(mutableClass.classNodeProvider, ClassWriter.COMPUTE_FRAMES);
+    unframedClass.accept(new ClassRemapper(framesWriter, remapper));
+    ClassReader framedReader = new ClassReader(framesWriter.toByteArray());
+
+    classNode.accept(new ClassVisitor(Opcodes.ASM7, new ClassRemapper(writer, remapper)) {
+      @Override
+      public MethodVisitor visitMethod(
+          int access, String name, String desc, String signature, String[] exceptions) {
+        if (unframedMethods.contains(name + desc)) {
+          return null; // copied from framedReader below
+        }
+        return super.visitMethod(access, name, desc, signature, exceptions);
+      }
+
+      @Override
+      public void visitEnd() {
+        // these methods are already remapped, so they go straight to the writer
+        framedReader.accept(new ClassVisitor(Opcodes.ASM7) {
+          @Override
+          public MethodVisitor visitMethod(
+              int access, String name, String desc, String signature, String[] exceptions) {
+            return writer.visitMethod(access, name, desc, signature, exceptions);
+          }
+        }, 0);
+        super.visitEnd();
+      }
+    });
+    return writer.toByteArray();
+  }
+
+  /**
+   * Returns true if the method has any branch targets or exception handlers, or frames which may
+   * no longer be accurate, and so needs its stack map frames computed.
+   */
+  private static boolean needsComputedFrames(MethodNode method) {
+    if (method.tryCatchBlocks != null && !method.tryCatchBlocks.isEmpty()) {
+      return true;
+    }
+    for (AbstractInsnNode node = method.instructions.getFirst(); node != null;
+        node = node.getNext()) {
+      if (node instanceof JumpInsnNode
+          || node instanceof TableSwitchInsnNode
+          || node instanceof LookupSwitchInsnNode
+          || node instanceof FrameNode) {
+        return true;
+      }
+    }
+    return false;
+  }
+
   public byte[] instrument(byte[] origBytes, InstrumentationConfiguration config,
       ClassNodeProvider classNodeProvider) {
     MutableClass mutableClass = analyzeClass(origBytes, config, classNodeProvider);
@@ -0,0 +1,65 @@
+package org.robolectric.internal.bytecode;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Ordered record of the classes acquired by one or more {@link SandboxClassLoader}s, with the time
+ * spent preparing each.
+ *
+ * Traces are written as text, one class per line followed by a tab and the load time in
+ * microseconds. {@link #readClassNames(Path)} reads them back (the timings are optional, so a
+ * hand-written list of class names works too) for {@link SandboxClassLoader#preload} or
+ * {@link SandboxClassLoader#prefetch}.
+ */
+public class ClassLoadTrace {
+  private final Map<String, Long> elapsedNsByClassName = new LinkedHashMap<>();
+
+  /** Records that a class was loaded; only the first load of each class is kept. */
+  public synchronized void record(String className, long elapsedNs) {
+    elapsedNsByClassName.putIfAbsent(className, elapsedNs);
+  }
+
+  public synchronized List<String> getClassNames() {
+    return new ArrayList<>(elapsedNsByClassName.keySet());
+  }
+
+  public synchronized void write(Path file) throws IOException {
+    Path parent = file.toAbsolutePath().getParent();
+    if (parent != null) {
+      Files.createDirectories(parent);
+    }
+
+    try (BufferedWriter writer = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+      writer.write("# class name<TAB>load time in microseconds");
+      writer.newLine();
+      for (Map.Entry<String, Long> entry : elapsedNsByClassName.entrySet()) {
+        writer.write(entry.getKey());
+        writer.write('\t');
+        writer.write(Long.toString(TimeUnit.NANOSECONDS.toMicros(entry.getValue())));
+        writer.newLine();
+      }
+    }
+  }
+
+  /** Returns the class names listed in a trace file, in order, skipping blank and # lines. */
+  public static List<String> readClassNames(Path file) throws IOException {
+    List<String> classNames = new ArrayList<>();
+    for (String line : Files.readAllLines(file, StandardCharsets.UTF_8)) {
+      int tab = line.indexOf('\t');
+      String className = (tab == -1 ? line : line.substring(0, tab)).trim();
+      if (!className.isEmpty() && !className.startsWith("#")) {
+        classNames.add(className);
+      }
+    }
+    return classNames;
+  }
+}
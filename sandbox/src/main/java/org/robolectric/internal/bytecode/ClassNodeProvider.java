@@ -1,31 +1,48 @@
 package org.robolectric.internal.bytecode;
 
+import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import org.objectweb.asm.ClassReader;
-import org.objectweb.asm.tree.ClassNode;
+import org.robolectric.internal.bytecode.ClassHierarchyIndex.ClassInfo;
 
 public abstract class ClassNodeProvider {
-  private final Map<String, ClassNode> classNodes = new ConcurrentHashMap<>();
+  private final Map<String, ClassInfo> classInfos = new ConcurrentHashMap<>();
+  private volatile List<ClassHierarchyIndex> classHierarchyIndexes;
 
   protected abstract byte[] getClassBytes(String className) throws ClassNotFoundException;
 
-  ClassNode getClassNode(String internalClassName) throws ClassNotFoundException {
-    ClassNode classNode = classNodes.get(internalClassName);
-    if (classNode == null) {
-      classNode = createClassNode(internalClassName);
-      classNodes.put(internalClassName, classNode);
-    }
-    return classNode;
+  /**
+   * Returns the shared indexes to consult, in order, before reading a class's bytes. A class found
+   * in one of them must be the same class {@link #getClassBytes(String)} would return.
+   */
+  protected List<ClassHierarchyIndex> createClassHierarchyIndexes() {
+    return Collections.emptyList();
   }
 
-  private ClassNode createClassNode(String internalClassName) throws ClassNotFoundException {
-    byte[] byteCode = getClassBytes(internalClassName);
-    ClassReader classReader = new ClassReader(byteCode);
-    ClassNode classNode = new ClassNode();
-    classReader.accept(classNode,
-        ClassReader.SKIP_CODE | ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
-    return classNode;
+  ClassInfo getClassInfo(String internalClassName) throws ClassNotFoundException {
+    for (ClassHierarchyIndex classHierarchyIndex : getClassHierarchyIndexes()) {
+      ClassInfo classInfo = classHierarchyIndex.get(internalClassName);
+      if (classInfo != null) {
+        return classInfo;
+      }
+    }
+
+    ClassInfo classInfo = classInfos.get(internalClassName);
+    if (classInfo == null) {
+      classInfo = ClassInfo.fromClassBytes(getClassBytes(internalClassName));
+      classInfos.put(internalClassName, classInfo);
+    }
+    return classInfo;
   }
 
+  private List<ClassHierarchyIndex> getClassHierarchyIndexes() {
+    List<ClassHierarchyIndex> indexes = classHierarchyIndexes;
+    if (indexes == null) {
+      // indexes are shared and built at most once per JVM, so racing threads are harmless
+      indexes = createClassHierarchyIndexes();
+      classHierarchyIndexes = indexes;
+    }
+    return indexes;
+  }
 }
@@ -4,28 +4,81 @@ import java.util.Map;
 import java.util.WeakHashMap;
 
 /**
- * {@link java.lang.ClassValue} doesn't exist in Android, so provide a trivial impl.
+ * Lazily computed value associated with each class, backed by {@link java.lang.ClassValue} so
+ * that lookups are lock-free.
  *
- * Note that if T contains references to Class, this won't really be weak. That's okay.
+ * {@link java.lang.ClassValue} doesn't exist in Android, so there we fall back to a synchronized
+ * {@link WeakHashMap}. Note that if T contains references to Class, that won't really be weak.
+ * That's okay.
+ *
+ * As with {@link java.lang.ClassValue}, {@link #computeValue(Class)} may be called more than
+ * once for a class by racing threads, but only one of the results is ever returned.
  */
 abstract class ClassValueMap<T> {
-  private final Map<Class<?>, T> map = new WeakHashMap<>();
+  private static final boolean CLASS_VALUE_AVAILABLE = isClassValueAvailable();
+
+  private final Values<T> values =
+      CLASS_VALUE_AVAILABLE ? new ClassValueValues<>(this) : new WeakHashMapValues<>(this);
 
   protected abstract T computeValue(Class<?> type);
 
-  @SuppressWarnings("Java8MapApi")
   public T get(Class<?> type) {
-    if (map.containsKey(type)) {
-      return map.get(type);
+    return values.get(type);
+  }
+
+  private static boolean isClassValueAvailable() {
+    try {
+      Class.forName("java.lang.ClassValue");
+      return true;
+    } catch (ClassNotFoundException e) {
+      return false;
+    }
+  }
+
+  private interface Values<T> {
+    T get(Class<?> type);
+  }
+
+  /** Kept in its own class so that {@link ClassValue} is only loaded where it exists. */
+  private static class ClassValueValues<T> extends ClassValue<T> implements Values<T> {
+    private final ClassValueMap<T> classValueMap;
+
+    ClassValueValues(ClassValueMap<T> classValueMap) {
+      this.classValueMap = classValueMap;
+    }
+
+    @Override
+    protected T computeValue(Class<?> type) {
+      return classValueMap.computeValue(type);
     }
-    T t = computeValue(type);
-    synchronized (this) {
-      if (!map.containsKey(type)) {
-        map.put(type, t);
-      } else {
-        t = map.get(type);
+  }
+
+  private static class WeakHashMapValues<T> implements Values<T> {
+    private final ClassValueMap<T> classValueMap;
+    private final Map<Class<?>, T> map = new WeakHashMap<>();
+
+    WeakHashMapValues(ClassValueMap<T> classValueMap) {
+      this.classValueMap = classValueMap;
+    }
+
+    @Override
+    @SuppressWarnings("Java8MapApi")
+    public T get(Class<?> type) {
+      synchronized (map) {
+        if (map.containsKey(type)) {
+          return map.get(type);
+        }
+      }
+      // compute outside the lock, since computing a value may look up others
+      T t = classValueMap.computeValue(type);
+      synchronized (map) {
+        if (!map.containsKey(type)) {
+          map.put(type, t);
+        } else {
+          t = map.get(type);
+        }
       }
+      return t;
     }
-    return t;
   }
 }
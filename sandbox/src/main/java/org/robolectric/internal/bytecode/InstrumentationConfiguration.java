@@ -4,6 +4,8 @@ import com.google.common.collect.ImmutableList;
 import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.Sets;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
@@ -11,6 +13,9 @@ import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.regex.Pattern;
 import org.objectweb.asm.tree.MethodInsnNode;
 import org.robolectric.annotation.internal.DoNotInstrument;
 import org.robolectric.annotation.internal.Instrument;
@@ -37,6 +42,10 @@ public class InstrumentationConfiguration {
 
   static final Set<String> RESOURCES_TO_ALWAYS_ACQUIRE = Sets.newHashSet("build.prop");
 
+  private static final Pattern FRAMEWORK_R_CLASS =
+      Pattern.compile("(android|com\\.android\\.internal)\\.R(\\$.+)?");
+  private static final Pattern R_CLASS = Pattern.compile(".*\\.R(|\\$[a-z]+)$");
+
   private final List<String> instrumentedPackages;
   private final Set<String> instrumentedClasses;
   private final Set<String> classesToNotInstrument;
@@ -45,7 +54,11 @@ public class InstrumentationConfiguration {
   private final Set<String> classesToNotAcquire;
   private final Set<String> packagesToNotAcquire;
   private final Set<String> packagesToNotInstrument;
+  private final PrefixMatcher instrumentedPackagesMatcher;
+  private final PrefixMatcher packagesToNotAcquireMatcher;
+  private final PrefixMatcher packagesToNotInstrumentMatcher;
   private int cachedHashCode;
+  private String cachedFingerprint;
 
   private final TypeMapper typeMapper;
   private final Set<MethodRef> methodsToIntercept;
@@ -67,6 +80,9 @@ public class InstrumentationConfiguration {
     this.packagesToNotAcquire = ImmutableSet.copyOf(packagesToNotAquire);
     this.classesToNotInstrument = ImmutableSet.copyOf(classesToNotInstrument);
     this.packagesToNotInstrument = ImmutableSet.copyOf(packagesToNotInstrument);
+    this.instrumentedPackagesMatcher = new PrefixMatcher(this.instrumentedPackages);
+    this.packagesToNotAcquireMatcher = new PrefixMatcher(this.packagesToNotAcquire);
+    this.packagesToNotInstrumentMatcher = new PrefixMatcher(this.packagesToNotInstrument);
     this.cachedHashCode = 0;
 
     this.typeMapper = new TypeMapper(classNameTranslations());
@@ -106,7 +122,7 @@ public class InstrumentationConfiguration {
     }
 
     // android.R and com.android.internal.R classes must be loaded from the framework jar
-    if (name.matches("(android|com\\.android\\.internal)\\.R(\\$.+)?")) {
+    if (FRAMEWORK_R_CLASS.matcher(name).matches()) {
       return true;
     }
 
@@ -116,12 +132,12 @@ public class InstrumentationConfiguration {
       return true;
     }
 
-    for (String packageName : packagesToNotAcquire) {
-      if (name.startsWith(packageName)) return false;
+    if (packagesToNotAcquireMatcher.matches(name)) {
+      return false;
     }
 
     // R classes must be loaded from system CP
-    boolean isRClass = name.matches(".*\\.R(|\\$[a-z]+)$");
+    boolean isRClass = R_CLASS.matcher(name).matches();
     return !isRClass && !classesToNotAcquire.contains(name);
   }
 
@@ -153,21 +169,11 @@ public class InstrumentationConfiguration {
   }
 
   private boolean isInInstrumentedPackage(String className) {
-    for (String instrumentedPackage : instrumentedPackages) {
-      if (className.startsWith(instrumentedPackage)) {
-        return true;
-      }
-    }
-    return false;
+    return instrumentedPackagesMatcher.matches(className);
   }
 
   private boolean isInPackagesToNotInstrument(String className) {
-    for (String notInstrumentedPackage : packagesToNotInstrument) {
-      if (className.startsWith(notInstrumentedPackage)) {
-        return true;
-      }
-    }
-    return false;
+    return packagesToNotInstrumentMatcher.matches(className);
   }
 
   @Override
@@ -202,6 +208,42 @@ public class InstrumentationConfiguration {
     return result;
   }
 
+  /**
+   * Returns a digest of every rule in this configuration which is stable across JVMs, suitable for
+   * keying persistent caches of instrumented bytecode.
+   */
+  public String fingerprint() {
+    if (cachedFingerprint != null) {
+      return cachedFingerprint;
+    }
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    putSorted(hasher, "instrumentedPackages", instrumentedPackages);
+    putSorted(hasher, "instrumentedClasses", instrumentedClasses);
+    putSorted(hasher, "classesToNotInstrument", classesToNotInstrument);
+    putSorted(hasher, "classesToNotAcquire", classesToNotAcquire);
+    putSorted(hasher, "packagesToNotAcquire", packagesToNotAcquire);
+    putSorted(hasher, "packagesToNotInstrument", packagesToNotInstrument);
+    Set<String> methodRefs = new TreeSet<>();
+    for (MethodRef methodRef : interceptedMethods) {
+      methodRefs.add(methodRef.className + "#" + methodRef.methodName);
+    }
+    putSorted(hasher, "interceptedMethods", methodRefs);
+    for (Map.Entry<String, String> entry : new TreeMap<>(classNameTranslations).entrySet()) {
+      hasher.putUnencodedChars(entry.getKey()).putChar('=').putUnencodedChars(entry.getValue())
+          .putChar('\n');
+    }
+    cachedFingerprint = hasher.hash().toString();
+    return cachedFingerprint;
+  }
+
+  private static void putSorted(Hasher hasher, String label, Collection<String> values) {
+    hasher.putUnencodedChars(label).putChar(':');
+    for (String value : new TreeSet<>(values)) {
+      hasher.putUnencodedChars(value).putChar('\n');
+    }
+  }
+
   public String remapParamType(String desc) {
     return typeMapper.remapParamType(desc);
   }
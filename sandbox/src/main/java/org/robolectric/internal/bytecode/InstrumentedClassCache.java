@@ -0,0 +1,349 @@
+package org.robolectric.internal.bytecode;
+
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+import org.robolectric.util.Logger;
+import org.robolectric.util.Util;
+
+/**
+ * Content-addressed on-disk cache of the bytecode produced by {@link SandboxClassLoader}.
+ *
+ * Entries are keyed by a digest of the original class bytes, the
+ * {@link InstrumentationConfiguration#fingerprint()}, a fingerprint of the instrumentor itself and
+ * a fingerprint of the class path, so a stale entry can never be returned for different inputs.
+ * The class path matters because stack map frames are computed from the supertypes of the classes
+ * involved, which come from other jars. Entries are written to a temporary file and atomically
+ * moved into place, which makes it safe for several JVMs (e.g. parallel Gradle test workers) to
+ * share a single cache directory. When the cache grows beyond its size limit the least recently
+ * used entries are deleted. Entries are marked as used at most once per JVM, to
+ * keep cache hits cheap.
+ *
+ * The cache is enabled by setting the {@code robolectric.classCache.dir} system property;
+ * {@code robolectric.classCache.maxSizeMb} bounds its size (512MB by default).
+ */
+public class InstrumentedClassCache {
+  static final String CACHE_DIR_PROPERTY = "robolectric.classCache.dir";
+  static final String MAX_SIZE_MB_PROPERTY = "robolectric.classCache.maxSizeMb";
+  private static final long DEFAULT_MAX_SIZE_MB = 512;
+
+  /** Bump this whenever instrumentation output changes in a way class fingerprints won't catch. */
+  private static final int FORMAT_VERSION = 1;
+  private static final String ENTRY_SUFFIX = ".class";
+
+  /** Entries whose modification time has already been updated by this JVM. */
+  private static final Set<Path> touchedEntries = ConcurrentHashMap.newKeySet();
+
+  /** Fingerprints of class path directories, by absolute path. */
+  private static final Map<String, String> directoryFingerprints = new ConcurrentHashMap<>();
+
+  private final Path cacheDir;
+  private final long maxSizeBytes;
+  private final AtomicLong approximateSizeBytes = new AtomicLong(-1);
+  private final AtomicBoolean evicting = new AtomicBoolean();
+
+  public InstrumentedClassCache(Path cacheDir, long maxSizeBytes) {
+    this.cacheDir = cacheDir;
+    this.maxSizeBytes = maxSizeBytes;
+  }
+
+  /**
+   * Returns a cache configured from system properties, or null if no cache directory was given.
+   */
+  public static InstrumentedClassCache fromSystemProperties() {
+    Path dir = cacheDirFromSystemProperties();
+    if (dir == null) {
+      return null;
+    }
+    long maxSizeMb = Long.getLong(MAX_SIZE_MB_PROPERTY, DEFAULT_MAX_SIZE_MB);
+    return new InstrumentedClassCache(dir, maxSizeMb * 1024 * 1024);
+  }
+
+  /**
+   * Returns the configured cache directory, or null if none was given. Other files derived from
+   * the class path, such as saved {@link ClassHierarchyIndex}es, are kept there too.
+   */
+  static Path cacheDirFromSystemProperties() {
+    String dir = System.getProperty(CACHE_DIR_PROPERTY);
+    if (dir == null || dir.isEmpty()) {
+      return null;
+    }
+    return Paths.get(dir);
+  }
+
+  /**
+   * Computes a fingerprint identifying the code which produces instrumented bytecode, so that
+   * upgrading Robolectric invalidates previously cached classes. Subclasses of
+   * {@link SandboxClassLoader} may post-process classes, so the loader's own class and its
+   * superclasses are included too.
+   */
+  public static String instrumentorFingerprint(ClassInstrumentor classInstrumentor,
+      Class<? extends SandboxClassLoader> loaderClass) {
+    List<Class<?>> classes = new ArrayList<>();
+    classes.add(ClassInstrumentor.class);
+    classes.add(classInstrumentor.getClass());
+    classes.add(classInstrumentor.decorator.getClass());
+    classes.add(MutableClass.class);
+    classes.add(InstrumentingClassWriter.class);
+    for (Class<?> clazz = loaderClass; clazz != ClassLoader.class; clazz = clazz.getSuperclass()) {
+      classes.add(clazz);
+      if (clazz == SandboxClassLoader.class) {
+        break;
+      }
+    }
+
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+    for (Class<?> clazz : classes) {
+      hasher.putUnencodedChars(clazz.getName());
+      String resourceName = clazz.getName().replace('.', '/') + ".class";
+      try (InputStream in = clazz.getClassLoader().getResourceAsStream(resourceName)) {
+        if (in != null) {
+          hasher.putBytes(Util.readBytes(in));
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("couldn't read " + resourceName, e);
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /**
+   * Computes a fingerprint identifying the given class path entries, so that replacing a jar which
+   * provides supertypes of instrumented classes invalidates previously cached classes. Jars are
+   * identified by their path, size and modification time; directories by their path and the
+   * sizes and modification times of the class files within them, which are only scanned once per
+   * JVM.
+   */
+  public static String classPathFingerprint(URL... urls) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    hasher.putInt(FORMAT_VERSION);
+    for (URL url : urls) {
+      hasher.putUnencodedChars(url.toString());
+      File file = toFile(url);
+      if (file == null) {
+        continue;
+      }
+      if (file.isDirectory()) {
+        hasher.putUnencodedChars(
+            directoryFingerprints.computeIfAbsent(file.getAbsolutePath(), k -> fingerprint(file)));
+      } else {
+        hasher.putLong(file.length()).putLong(file.lastModified());
+      }
+    }
+    return hasher.hash().toString();
+  }
+
+  /** Fingerprints the class files in a directory; other files can't affect instrumentation. */
+  private static String fingerprint(File dir) {
+    Hasher hasher = Hashing.sha256().newHasher();
+    try (Stream<Path> files = Files.walk(dir.toPath())) {
+      files.filter(path -> path.toString().endsWith(".class")).sorted().forEach(path -> {
+        File f = path.toFile();
+        hasher.putUnencodedChars(path.toString())
+            .putLong(f.length())
+            .putLong(f.lastModified());
+      });
+    } catch (IOException | UncheckedIOException e) {
+      Logger.debug("couldn't fingerprint %s: %s", dir, e);
+    }
+    return hasher.hash().toString();
+  }
+
+  private static File toFile(URL url) {
+    if (!"file".equals(url.getProtocol())) {
+      return null;
+    }
+    try {
+      return new File(url.toURI());
+    } catch (URISyntaxException | IllegalArgumentException e) {
+      return new File(url.getPath());
+    }
+  }
+
+  /**
+   * Returns the cache key for a class given its original bytes and the fingerprints of the
+   * configuration, instrumentor and class path which will transform it.
+   */
+  public String keyFor(byte[] origClassBytes, String configFingerprint,
+      String instrumentorFingerprint, String classPathFingerprint) {
+    return Hashing.sha256().newHasher()
+        .putUnencodedChars(configFingerprint)
+        .putUnencodedChars(instrumentorFingerprint)
+        .putUnencodedChars(classPathFingerprint)
+        .putBytes(origClassBytes)
+        .hash()
+        .toString();
+  }
+
+  /**
+   * Returns the cached bytes for the given key, or null if there is no (readable) entry.
+   */
+  public byte[] get(String key) {
+    Path entry = entryPath(key);
+    try {
+      byte[] bytes = Files.readAllBytes(entry);
+      // keep recently used entries from being evicted; once per JVM is enough for that
+      if (touchedEntries.add(entry)) {
+        Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+      }
+      return bytes;
+    } catch (NoSuchFileException e) {
+      return null;
+    } catch (IOException e) {
+      Logger.debug("couldn't read cached class %s: %s", entry, e);
+      return null;
+    }
+  }
+
+  /**
+   * Stores bytes for the given key. Failures are logged and otherwise ignored; the cache is only
+   * an optimization.
+   */
+  public void put(String key, byte[] bytes) {
+    Path entry = entryPath(key);
+    // make sure the size of entries written by earlier JVMs is accounted for
+    initializeSize();
+
+    Path tmpFile = null;
+    try {
+      Files.createDirectories(entry.getParent());
+      tmpFile = Files.createTempFile(entry.getParent(), key, ".tmp");
+      Files.write(tmpFile, bytes);
+      try {
+        Files.move(tmpFile, entry, StandardCopyOption.ATOMIC_MOVE);
+      } catch (AtomicMoveNotSupportedException e) {
+        Files.move(tmpFile, entry, StandardCopyOption.REPLACE_EXISTING);
+      }
+      tmpFile = null;
+      touchedEntries.add(entry);
+    } catch (IOException e) {
+      Logger.debug("couldn't write cached class %s: %s", entry, e);
+      return;
+    } finally {
+      if (tmpFile != null) {
+        try {
+          Files.deleteIfExists(tmpFile);
+        } catch (IOException ignored) {
+        }
+      }
+    }
+
+    if (approximateSizeBytes.addAndGet(bytes.length) > maxSizeBytes) {
+      evict();
+    }
+  }
+
+  private Path entryPath(String key) {
+    // shard entries so no single directory holds tens of thousands of files
+    return cacheDir.resolve(key.substring(0, 2)).resolve(key + ENTRY_SUFFIX);
+  }
+
+  private void initializeSize() {
+    if (approximateSizeBytes.get() < 0) {
+      long total = 0;
+      for (CachedEntry entry : listEntries()) {
+        total += entry.size;
+      }
+      approximateSizeBytes.compareAndSet(-1, total);
+    }
+  }
+
+  /**
+   * Deletes least recently used entries until the cache is at 3/4 of its size limit. Other JVMs
+   * may be evicting concurrently; a missing file is simply skipped.
+   */
+  private void evict() {
+    if (!evicting.compareAndSet(false, true)) {
+      return;
+    }
+
+    try {
+      List<CachedEntry> entries = listEntries();
+      long total = 0;
+      for (CachedEntry entry : entries) {
+        total += entry.size;
+      }
+
+      entries.sort(Comparator.comparingLong(entry -> entry.lastModified));
+      long target = maxSizeBytes / 4 * 3;
+      for (CachedEntry entry : entries) {
+        if (total <= target) {
+          break;
+        }
+        try {
+          Files.deleteIfExists(entry.path);
+        } catch (IOException e) {
+          Logger.debug("couldn't evict cached class %s: %s", entry.path, e);
+          continue;
+        }
+        total -= entry.size;
+      }
+      approximateSizeBytes.set(total);
+    } finally {
+      evicting.set(false);
+    }
+  }
+
+  private List<CachedEntry> listEntries() {
+    List<CachedEntry> entries = new ArrayList<>();
+    if (!Files.isDirectory(cacheDir)) {
+      return entries;
+    }
+
+    try (DirectoryStream<Path> shards = Files.newDirectoryStream(cacheDir)) {
+      for (Path shard : shards) {
+        if (!Files.isDirectory(shard)) {
+          continue;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(shard, "*" + ENTRY_SUFFIX)) {
+          for (Path file : files) {
+            try {
+              entries.add(new CachedEntry(file, Files.size(file),
+                  Files.getLastModifiedTime(file).toMillis()));
+            } catch (NoSuchFileException ignored) {
+              // concurrently evicted by another JVM
+            }
+          }
+        }
+      }
+    } catch (IOException e) {
+      Logger.debug("couldn't list class cache %s: %s", cacheDir, e);
+    }
+    return entries;
+  }
+
+  private static class CachedEntry {
+    private final Path path;
+    private final long size;
+    private final long lastModified;
+
+    CachedEntry(Path path, long size, long lastModified) {
+      this.path = path;
+      this.size = size;
+      this.lastModified = lastModified;
+    }
+  }
+}
@@ -1,13 +1,15 @@
 package org.robolectric.internal.bytecode;
 
-import java.util.List;
 import org.objectweb.asm.ClassWriter;
-import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.tree.ClassNode;
+import org.robolectric.internal.bytecode.ClassHierarchyIndex.ClassInfo;
 
 /**
  * ClassWriter implementation that verifies classes by comparing type information obtained
  * from loading the classes as resources. This was taken from the ASM ClassWriter unit tests.
+ *
+ * Supertypes are looked up through {@link ClassNodeProvider#getClassInfo(String)}, which answers
+ * from a shared {@link ClassHierarchyIndex} where possible.
  */
 public class InstrumentingClassWriter extends ClassWriter {
 
@@ -22,7 +24,16 @@ public class InstrumentingClassWriter extends ClassWriter {
    * present in legacy bytecode.
    */
   public InstrumentingClassWriter(ClassNodeProvider classNodeProvider, ClassNode classNode) {
-    super(classNode.version >= 51 ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS);
+    this(classNodeProvider,
+        classNode.version >= 51 ? ClassWriter.COMPUTE_FRAMES : ClassWriter.COMPUTE_MAXS);
+  }
+
+  /**
+   * Creates a writer with the given {@link ClassWriter} flags, e.g.
+   * {@link ClassWriter#COMPUTE_MAXS} to keep the stack map frames which are visited.
+   */
+  public InstrumentingClassWriter(ClassNodeProvider classNodeProvider, int flags) {
+    super(flags);
     this.classNodeProvider = classNodeProvider;
   }
 
@@ -33,20 +44,20 @@ public class InstrumentingClassWriter extends ClassWriter {
   @Override
   protected String getCommonSuperClass(final String type1, final String type2) {
     try {
-      ClassNode info1 = typeInfo(type1);
-      ClassNode info2 = typeInfo(type2);
-      if ((info1.access & Opcodes.ACC_INTERFACE) != 0) {
+      ClassInfo info1 = typeInfo(type1);
+      ClassInfo info2 = typeInfo(type2);
+      if (info1.isInterface()) {
         if (typeImplements(type2, info2, type1)) {
           return type1;
         }
-        if ((info2.access & Opcodes.ACC_INTERFACE) != 0) {
+        if (info2.isInterface()) {
           if (typeImplements(type1, info1, type2)) {
             return type2;
           }
         }
         return "java/lang/Object";
       }
-      if ((info2.access & Opcodes.ACC_INTERFACE) != 0) {
+      if (info2.isInterface()) {
         if (typeImplements(type1, info1, type2)) {
           return type2;
         } else {
@@ -81,7 +92,7 @@ public class InstrumentingClassWriter extends ClassWriter {
     }
   }
 
-  private String typeAncestors(String type, ClassNode info) throws ClassNotFoundException {
+  private String typeAncestors(String type, ClassInfo info) throws ClassNotFoundException {
     StringBuilder b = new StringBuilder();
     while (!"java/lang/Object".equals(type)) {
       b.append(';').append(type);
@@ -91,10 +102,10 @@ public class InstrumentingClassWriter extends ClassWriter {
     return b.toString();
   }
 
-  private boolean typeImplements(String type, ClassNode info, String itf)
+  private boolean typeImplements(String type, ClassInfo info, String itf)
       throws ClassNotFoundException {
     while (!"java/lang/Object".equals(type)) {
-      List<String> itfs = info.interfaces;
+      String[] itfs = info.interfaces;
       for (String itf2 : itfs) {
         if (itf2.equals(itf)) {
           return true;
@@ -111,7 +122,7 @@ public class InstrumentingClassWriter extends ClassWriter {
     return false;
   }
 
-  private ClassNode typeInfo(final String type) throws ClassNotFoundException {
-    return classNodeProvider.getClassNode(type);
+  private ClassInfo typeInfo(final String type) throws ClassNotFoundException {
+    return classNodeProvider.getClassInfo(type);
   }
 }
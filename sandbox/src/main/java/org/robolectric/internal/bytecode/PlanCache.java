@@ -0,0 +1,139 @@
+package org.robolectric.internal.bytecode;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+import org.robolectric.internal.bytecode.ClassHandler.Plan;
+import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.PerfStatsCollector.MetricHandle;
+
+/**
+ * Bounded cache of {@link Plan}s by method signature, for {@link ShadowWrangler#methodInvoked}.
+ *
+ * Lookups don't lock. When the cache grows past its capacity, one thread evicts entries using the
+ * CLOCK algorithm: entries which haven't been used since the last sweep are dropped, and the rest
+ * get a second chance. This approximates LRU without writing to shared state on every hit.
+ *
+ * Signatures are string constants in the instrumented bytecode, so they're interned and have their
+ * hash codes cached; looking one up is an identity comparison in the common case.
+ */
+class PlanCache {
+  static final String SIZE_PROPERTY = "robolectric.planCacheSize";
+  static final int DEFAULT_SIZE = 5000;
+
+  private static final MetricHandle HIT = PerfStatsCollector.getInstance().metric("plan cache hit");
+  private static final MetricHandle MISS =
+      PerfStatsCollector.getInstance().metric("plan cache miss");
+  private static final MetricHandle EVICTION =
+      PerfStatsCollector.getInstance().metric("plan cache eviction");
+
+  private final int capacity;
+  private final ConcurrentHashMap<String, Entry> entries;
+  private final ReentrantLock evictionLock = new ReentrantLock();
+  private Iterator<Map.Entry<String, Entry>> clockHand;
+
+  PlanCache() {
+    this(Integer.getInteger(SIZE_PROPERTY, DEFAULT_SIZE));
+  }
+
+  PlanCache(int capacity) {
+    if (capacity < 1) {
+      throw new IllegalArgumentException("capacity must be positive: " + capacity);
+    }
+    this.capacity = capacity;
+    this.entries = new ConcurrentHashMap<>(Math.min(capacity, 1024));
+  }
+
+  /**
+   * Returns the cached plan for {@code signature}, calculating and caching it if necessary. The
+   * plan may be null (meaning call real code), which is cached like any other.
+   */
+  Plan get(String signature, Function<String, Plan> calculatePlan) {
+    Entry entry = entries.get(signature);
+    if (entry != null) {
+      entry.markUsed();
+      HIT.increment();
+      return entry.plan;
+    }
+
+    MISS.increment();
+    // Not computeIfAbsent(): calculating a plan can load classes, which can call back in here.
+    Entry newEntry = new Entry(calculatePlan.apply(signature));
+    entry = entries.putIfAbsent(signature, newEntry);
+    if (entry != null) {
+      return entry.plan;
+    }
+    if (entries.size() > capacity) {
+      evict();
+    }
+    return newEntry.plan;
+  }
+
+  int size() {
+    return entries.size();
+  }
+
+  /** Evicts down to 90% of capacity; skipped if another thread is already evicting. */
+  private void evict() {
+    if (!evictionLock.tryLock()) {
+      return;
+    }
+
+    try {
+      int target = capacity - Math.max(1, capacity / 10);
+      List<String> victims = new ArrayList<>();
+      int toEvict = entries.size() - target;
+      // Two full sweeps are enough: the first clears every "used" bit it doesn't evict.
+      int maxSteps = 2 * entries.size() + 1;
+      for (int step = 0; victims.size() < toEvict && step < maxSteps; step++) {
+        if (clockHand == null || !clockHand.hasNext()) {
+          clockHand = entries.entrySet().iterator();
+          if (!clockHand.hasNext()) {
+            break;
+          }
+        }
+        Map.Entry<String, Entry> candidate = clockHand.next();
+        if (!candidate.getValue().clearUsed()) {
+          victims.add(candidate.getKey());
+        }
+      }
+
+      for (String victim : victims) {
+        if (entries.remove(victim) != null) {
+          EVICTION.increment();
+        }
+      }
+    } finally {
+      evictionLock.unlock();
+    }
+  }
+
+  private static class Entry {
+    final Plan plan;
+    private volatile boolean used;
+
+    Entry(Plan plan) {
+      this.plan = plan;
+    }
+
+    void markUsed() {
+      // Check first, so hot entries don't keep dirtying their cache line.
+      if (!used) {
+        used = true;
+      }
+    }
+
+    /** Clears the used bit, and returns whether it was set. */
+    boolean clearUsed() {
+      if (used) {
+        used = false;
+        return true;
+      }
+      return false;
+    }
+  }
+}
@@ -0,0 +1,77 @@
+package org.robolectric.internal.bytecode;
+
+import java.util.Arrays;
+import java.util.Collection;
+
+/**
+ * Immutable set of prefixes, compiled into a trie so that testing whether a string starts with
+ * any of them takes time proportional to the length of the string, however many prefixes there
+ * are. {@link InstrumentationConfiguration} uses these to match class names against package
+ * prefixes.
+ */
+final class PrefixMatcher {
+  private final Node root = new Node();
+
+  PrefixMatcher(Collection<String> prefixes) {
+    for (String prefix : prefixes) {
+      Node node = root;
+      for (int i = 0; i < prefix.length() && !node.terminal; i++) {
+        node = node.getOrAddChild(prefix.charAt(i));
+      }
+      // a shorter prefix already matches everything this one would
+      node.terminal = true;
+    }
+  }
+
+  /** Returns true if {@code s} starts with any of the prefixes. */
+  boolean matches(String s) {
+    Node node = root;
+    for (int i = 0; !node.terminal; i++) {
+      if (i == s.length()) {
+        return false;
+      }
+      node = node.getChild(s.charAt(i));
+      if (node == null) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  private static final class Node {
+    private static final char[] NO_KEYS = new char[0];
+    private static final Node[] NO_CHILDREN = new Node[0];
+
+    // sorted, for binary search
+    private char[] keys = NO_KEYS;
+    private Node[] children = NO_CHILDREN;
+    private boolean terminal;
+
+    Node getChild(char c) {
+      int i = Arrays.binarySearch(keys, c);
+      return i < 0 ? null : children[i];
+    }
+
+    Node getOrAddChild(char c) {
+      int i = Arrays.binarySearch(keys, c);
+      if (i >= 0) {
+        return children[i];
+      }
+
+      int insertAt = -i - 1;
+      char[] newKeys = new char[keys.length + 1];
+      Node[] newChildren = new Node[children.length + 1];
+      System.arraycopy(keys, 0, newKeys, 0, insertAt);
+      System.arraycopy(children, 0, newChildren, 0, insertAt);
+      System.arraycopy(keys, insertAt, newKeys, insertAt + 1, keys.length - insertAt);
+      System.arraycopy(children, insertAt, newChildren, insertAt + 1,
+          children.length - insertAt);
+      Node child = new Node();
+      newKeys[insertAt] = c;
+      newChildren[insertAt] = child;
+      keys = newKeys;
+      children = newChildren;
+      return child;
+    }
+  }
+}
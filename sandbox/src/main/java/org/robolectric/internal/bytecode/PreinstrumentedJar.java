@@ -0,0 +1,108 @@
+package org.robolectric.internal.bytecode;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.jar.Attributes;
+import java.util.jar.JarFile;
+import java.util.jar.Manifest;
+import java.util.zip.ZipEntry;
+import org.robolectric.util.Logger;
+import org.robolectric.util.Util;
+
+/**
+ * A jar holding classes which were instrumented ahead of time, e.g. by
+ * {@link org.robolectric.JarInstrumentor}.
+ *
+ * The jar's manifest records the {@link InstrumentationConfiguration#fingerprint()} and the
+ * instrumentor fingerprint it was produced with; {@link SandboxClassLoader} only uses the jar if
+ * both match its own, so an outdated jar is ignored rather than loaded.
+ */
+public class PreinstrumentedJar {
+  public static final String CONFIG_FINGERPRINT_ATTRIBUTE = "Robolectric-Config-Fingerprint";
+  public static final String INSTRUMENTOR_FINGERPRINT_ATTRIBUTE =
+      "Robolectric-Instrumentor-Fingerprint";
+
+  private final File file;
+  private final JarFile jarFile;
+  private final String configFingerprint;
+  private final String instrumentorFingerprint;
+
+  private PreinstrumentedJar(File file, JarFile jarFile, String configFingerprint,
+      String instrumentorFingerprint) {
+    this.file = file;
+    this.jarFile = jarFile;
+    this.configFingerprint = configFingerprint;
+    this.instrumentorFingerprint = instrumentorFingerprint;
+  }
+
+  /**
+   * Opens a pre-instrumented jar.
+   *
+   * @return the jar, or null if it doesn't exist or wasn't written by Robolectric
+   */
+  public static PreinstrumentedJar open(File file) {
+    if (!file.isFile()) {
+      return null;
+    }
+
+    JarFile jarFile = null;
+    try {
+      jarFile = new JarFile(file);
+      Manifest manifest = jarFile.getManifest();
+      Attributes attributes = manifest == null ? null : manifest.getMainAttributes();
+      String configFingerprint =
+          attributes == null ? null : attributes.getValue(CONFIG_FINGERPRINT_ATTRIBUTE);
+      String instrumentorFingerprint =
+          attributes == null ? null : attributes.getValue(INSTRUMENTOR_FINGERPRINT_ATTRIBUTE);
+      if (configFingerprint == null || instrumentorFingerprint == null) {
+        Logger.info("ignoring %s: not a pre-instrumented jar", file);
+        jarFile.close();
+        return null;
+      }
+      return new PreinstrumentedJar(file, jarFile, configFingerprint, instrumentorFingerprint);
+    } catch (IOException e) {
+      Logger.info("ignoring %s: %s", file, e);
+      if (jarFile != null) {
+        try {
+          jarFile.close();
+        } catch (IOException ignored) {
+        }
+      }
+      return null;
+    }
+  }
+
+  public File getFile() {
+    return file;
+  }
+
+  /**
+   * Returns true if this jar was produced with the given configuration and instrumentor.
+   */
+  public boolean matches(String configFingerprint, String instrumentorFingerprint) {
+    return this.configFingerprint.equals(configFingerprint)
+        && this.instrumentorFingerprint.equals(instrumentorFingerprint);
+  }
+
+  /**
+   * Returns the instrumented bytes for the given class, or null if the jar doesn't contain it.
+   */
+  public byte[] getClassBytes(String className) {
+    ZipEntry entry = jarFile.getEntry(className.replace('.', '/') + ".class");
+    if (entry == null) {
+      return null;
+    }
+
+    try (InputStream in = jarFile.getInputStream(entry)) {
+      return Util.readBytes(in);
+    } catch (IOException e) {
+      Logger.debug("couldn't read %s from %s: %s", className, file, e);
+      return null;
+    }
+  }
+
+  public void close() throws IOException {
+    jarFile.close();
+  }
+}
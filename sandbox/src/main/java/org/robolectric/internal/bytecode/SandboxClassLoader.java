@@ -6,14 +6,28 @@ import static org.robolectric.util.ReflectionHelpers.ClassParameter.from;
 
 import com.google.common.base.Splitter;
 import com.google.common.collect.ImmutableList;
+import com.google.common.collect.ObjectArrays;
 import java.io.File;
 import java.io.IOException;
 import java.io.InputStream;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 import org.robolectric.util.Logger;
 import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.PerfStatsCollector.MetricHandle;
 import org.robolectric.util.ReflectionHelpers;
 import org.robolectric.util.Util;
 
@@ -22,11 +36,41 @@ import org.robolectric.util.Util;
  * shadow classes.
  */
 public class SandboxClassLoader extends URLClassLoader {
+  private static final MetricHandle LOAD_SANDBOXED_CLASS =
+      PerfStatsCollector.getInstance().metric("load sandboxed class");
+  private static final MetricHandle ANALYZE_CLASS =
+      PerfStatsCollector.getInstance().metric("analyze class");
+  private static final MetricHandle INSTRUMENT_CLASS =
+      PerfStatsCollector.getInstance().metric("instrument class");
+  private static final MetricHandle AWAIT_PREFETCHED_CLASS =
+      PerfStatsCollector.getInstance().metric("await prefetched class");
+  private static final MetricHandle READ_PREINSTRUMENTED_CLASS =
+      PerfStatsCollector.getInstance().metric("read pre-instrumented class");
+  private static final MetricHandle READ_CACHED_CLASS =
+      PerfStatsCollector.getInstance().metric("read cached class");
+  private static final MetricHandle WRITE_CACHED_CLASS =
+      PerfStatsCollector.getInstance().metric("write cached class");
+
+  private static final int PREFETCH_THREADS = Math.max(1,
+      Integer.getInteger("robolectric.prefetch.threads",
+          Runtime.getRuntime().availableProcessors()));
+  private static final long MAX_PREFETCHED_BYTES =
+      Long.getLong("robolectric.prefetch.maxBytes", 64L * 1024 * 1024);
+  private static ExecutorService prefetchExecutor;
+
   private final ClassLoader systemClassLoader;
-  private final ClassLoader urls;
+  private final URLClassLoader urls;
   private final InstrumentationConfiguration config;
   private final ClassInstrumentor classInstrumentor;
   private final ClassNodeProvider classNodeProvider;
+  private final InstrumentedClassCache instrumentedClassCache;
+  private volatile String instrumentorFingerprint;
+  private volatile String classPathFingerprint;
+  private volatile PreinstrumentedJar preinstrumentedJar;
+  private final Map<String, PrefetchTask> prefetchTasks = new ConcurrentHashMap<>();
+  private final AtomicLong prefetchedBytes = new AtomicLong();
+  private volatile ClassLoadTrace classLoadTrace;
+  private final AtomicInteger loadedClassCount = new AtomicInteger();
 
   public SandboxClassLoader(InstrumentationConfiguration config) {
     this(ClassLoader.getSystemClassLoader(), config);
@@ -34,10 +78,23 @@ public class SandboxClassLoader extends URLClassLoader {
 
   public SandboxClassLoader(
       ClassLoader systemClassLoader, InstrumentationConfiguration config, URL... urls) {
+    this(systemClassLoader, config, InstrumentedClassCache.fromSystemProperties(), urls);
+  }
+
+  /**
+   * @param instrumentedClassCache a persistent cache of instrumented bytecode, or null to always
+   *     instrument classes from scratch
+   */
+  public SandboxClassLoader(
+      ClassLoader systemClassLoader,
+      InstrumentationConfiguration config,
+      InstrumentedClassCache instrumentedClassCache,
+      URL... urls) {
     super(getClassPathUrls(systemClassLoader), systemClassLoader.getParent());
     this.systemClassLoader = systemClassLoader;
 
     this.config = config;
+    this.instrumentedClassCache = instrumentedClassCache;
     this.urls = new URLClassLoader(urls, null);
     for (URL url : urls) {
       Logger.debug("Loading classes from: %s", url);
@@ -51,6 +108,19 @@ public class SandboxClassLoader extends URLClassLoader {
       protected byte[] getClassBytes(String internalClassName) throws ClassNotFoundException {
         return getByteCode(internalClassName);
       }
+
+      @Override
+      protected List<ClassHierarchyIndex> createClassHierarchyIndexes() {
+        // getByteCode() prefers our own urls, so only those may be answered from an index
+        List<ClassHierarchyIndex> indexes = new ArrayList<>();
+        for (URL url : urls) {
+          ClassHierarchyIndex index = ClassHierarchyIndex.forUrl(url);
+          if (index != null) {
+            indexes.add(index);
+          }
+        }
+        return indexes;
+      }
     };
   }
 
@@ -107,31 +177,174 @@ public class SandboxClassLoader extends URLClassLoader {
   @Override
   protected Class<?> findClass(String name) throws ClassNotFoundException {
     if (config.shouldAcquire(name)) {
-      return PerfStatsCollector.getInstance().measure("load sandboxed class",
-          () -> maybeInstrumentClass(name));
+      ClassLoadTrace classLoadTrace = this.classLoadTrace;
+      long startNs = classLoadTrace == null ? 0 : System.nanoTime();
+      Class<?> clazz = LOAD_SANDBOXED_CLASS.measure(() -> maybeInstrumentClass(name));
+      if (classLoadTrace != null) {
+        classLoadTrace.record(name, System.nanoTime() - startNs);
+      }
+      return clazz;
     } else {
       return systemClassLoader.loadClass(name);
     }
   }
 
+  /**
+   * Loads acquired classes straight from the given jar, skipping analysis and instrumentation,
+   * as long as it was produced with this loader's configuration and instrumentor. Classes missing
+   * from the jar are still instrumented as usual.
+   *
+   * @return true if the jar will be used
+   */
+  public boolean usePreinstrumentedJar(PreinstrumentedJar jar) {
+    if (!jar.matches(config.fingerprint(), getInstrumentorFingerprint())) {
+      Logger.info("ignoring %s: it was instrumented with a different configuration",
+          jar.getFile());
+      return false;
+    }
+
+    Logger.debug("Loading pre-instrumented classes from: %s", jar.getFile());
+    preinstrumentedJar = jar;
+    return true;
+  }
+
+  /**
+   * Returns the bytes this loader would define for the given class, without defining it.
+   */
+  public byte[] getInstrumentedBytes(String className) throws ClassNotFoundException {
+    return instrumentClassBytes(className, getByteCode(className));
+  }
+
+  /**
+   * Starts preparing the bytecode for the given classes on background threads, so that it is
+   * ready by the time the classes are requested. Names of classes which this loader doesn't
+   * acquire, has already loaded or can't find are ignored.
+   *
+   * The work runs on a pool of {@code robolectric.prefetch.threads} daemon threads (by default,
+   * one per CPU) shared by all sandboxes. Prepared bytecode waiting to be requested is held only
+   * up to {@code robolectric.prefetch.maxBytes} (64MB by default) per loader; beyond that it is
+   * dropped, and prepared again if the class is ever requested.
+   */
+  public void prefetch(Collection<String> classNames) {
+    for (String className : classNames) {
+      if (!config.shouldAcquire(className) || findLoadedClass(className) != null) {
+        continue;
+      }
+
+      PrefetchTask task = new PrefetchTask(className);
+      if (prefetchTasks.putIfAbsent(className, task) == null) {
+        getPrefetchExecutor().execute(task);
+      }
+    }
+  }
+
+  private static synchronized ExecutorService getPrefetchExecutor() {
+    if (prefetchExecutor == null) {
+      AtomicInteger nextThread = new AtomicInteger();
+      prefetchExecutor = Executors.newFixedThreadPool(PREFETCH_THREADS, runnable -> {
+        Thread thread =
+            new Thread(runnable, "robolectric-prefetch-" + nextThread.getAndIncrement());
+        thread.setDaemon(true);
+        return thread;
+      });
+    }
+    return prefetchExecutor;
+  }
+
+  /**
+   * Loads (without initializing) the given classes, instrumenting them in parallel, so that a
+   * sandbox is warm before its first test runs. Classes which can't be loaded are skipped.
+   */
+  public void preload(List<String> classNames) {
+    prefetch(classNames);
+    for (String className : classNames) {
+      try {
+        loadClass(className);
+      } catch (ClassNotFoundException | LinkageError e) {
+        Logger.debug("couldn't preload %s: %s", className, e);
+      }
+    }
+  }
+
+  /**
+   * Records every class this loader acquires from now on, in load order, to the given trace.
+   */
+  public void setClassLoadTrace(ClassLoadTrace classLoadTrace) {
+    this.classLoadTrace = classLoadTrace;
+  }
+
   protected Class<?> maybeInstrumentClass(String className) throws ClassNotFoundException {
+    PrefetchTask prefetchTask = prefetchTasks.remove(className);
+    final byte[] bytes = prefetchTask == null
+        ? prepareClassBytes(className)
+        : AWAIT_PREFETCHED_CLASS.measure(prefetchTask::get);
+
+    ensurePackage(className);
+    Class<?> clazz = defineClass(className, bytes, 0, bytes.length);
+    loadedClassCount.incrementAndGet();
+    return clazz;
+  }
+
+  /**
+   * Returns whether the named class has been loaded in this sandbox. Classes this loader doesn't
+   * acquire are always reported as loaded, since they may have been loaded by a parent loader.
+   */
+  public boolean isClassLoaded(String className) {
+    return !config.shouldAcquire(className) || findLoadedClass(className) != null;
+  }
+
+  /** Returns the number of classes this loader has acquired. */
+  public int getLoadedClassCount() {
+    return loadedClassCount.get();
+  }
+
+  private byte[] prepareClassBytes(String className) throws ClassNotFoundException {
+    PreinstrumentedJar preinstrumentedJar = this.preinstrumentedJar;
+    if (preinstrumentedJar != null) {
+      byte[] preinstrumentedBytes = READ_PREINSTRUMENTED_CLASS.measure(
+          () -> preinstrumentedJar.getClassBytes(className));
+      if (preinstrumentedBytes != null) {
+        return preinstrumentedBytes;
+      }
+    }
+
     final byte[] origClassBytes = getByteCode(className);
 
-    MutableClass mutableClass = PerfStatsCollector.getInstance().measure("analyze class",
+    if (instrumentedClassCache == null) {
+      return instrumentClassBytes(className, origClassBytes);
+    } else {
+      return instrumentClassBytesWithCache(className, origClassBytes);
+    }
+  }
+
+  private byte[] instrumentClassBytesWithCache(String className, byte[] origClassBytes)
+      throws ClassNotFoundException {
+    String cacheKey = instrumentedClassCache.keyFor(origClassBytes, config.fingerprint(),
+        getInstrumentorFingerprint(), getClassPathFingerprint());
+    byte[] cachedBytes = READ_CACHED_CLASS.measure(() -> instrumentedClassCache.get(cacheKey));
+    if (cachedBytes != null) {
+      return cachedBytes;
+    }
+
+    byte[] bytes = instrumentClassBytes(className, origClassBytes);
+    WRITE_CACHED_CLASS.measure(() -> instrumentedClassCache.put(cacheKey, bytes));
+    return bytes;
+  }
+
+  private byte[] instrumentClassBytes(String className, byte[] origClassBytes)
+      throws ClassNotFoundException {
+    MutableClass mutableClass = ANALYZE_CLASS.measure(
         () -> classInstrumentor.analyzeClass(origClassBytes, config, classNodeProvider)
     );
 
     try {
-      final byte[] bytes;
       if (config.shouldInstrument(mutableClass)) {
-        bytes = PerfStatsCollector.getInstance().measure("instrument class",
+        return INSTRUMENT_CLASS.measure(
             () -> classInstrumentor.instrumentToBytes(mutableClass)
         );
       } else {
-        bytes = postProcessUninstrumentedClass(mutableClass, origClassBytes);
+        return postProcessUninstrumentedClass(mutableClass, origClassBytes);
       }
-      ensurePackage(className);
-      return defineClass(className, bytes, 0, bytes.length);
     } catch (Exception e) {
       throw new ClassNotFoundException("couldn't load " + className, e);
     } catch (OutOfMemoryError e) {
@@ -140,6 +353,34 @@ public class SandboxClassLoader extends URLClassLoader {
     }
   }
 
+  /**
+   * Returns a fingerprint of the code which produces this loader's instrumented bytecode.
+   */
+  public String getInstrumentorFingerprint() {
+    // not synchronized: prefetch threads call this while the loading thread holds our lock
+    String fingerprint = instrumentorFingerprint;
+    if (fingerprint == null) {
+      fingerprint = InstrumentedClassCache.instrumentorFingerprint(classInstrumentor, getClass());
+      instrumentorFingerprint = fingerprint;
+    }
+    return fingerprint;
+  }
+
+  /**
+   * Returns a fingerprint of the class path from which this loader reads classes, including the
+   * supertypes consulted while computing stack map frames.
+   */
+  private String getClassPathFingerprint() {
+    String fingerprint = classPathFingerprint;
+    if (fingerprint == null) {
+      fingerprint = PerfStatsCollector.getInstance().measure("fingerprint class path",
+          () -> InstrumentedClassCache.classPathFingerprint(
+              ObjectArrays.concat(urls.getURLs(), getURLs(), URL.class)));
+      classPathFingerprint = fingerprint;
+    }
+    return fingerprint;
+  }
+
   protected byte[] postProcessUninstrumentedClass(
       MutableClass mutableClass, byte[] origClassBytes) {
     return origClassBytes;
@@ -180,4 +421,66 @@ public class SandboxClassLoader extends URLClassLoader {
     }
   }
 
+  /**
+   * Prepares the bytecode for a single class. Whichever of the background pool and the loading
+   * thread gets to the task first does the work, so a class which is requested before the pool
+   * reaches it never waits behind the rest of the queue.
+   */
+  private class PrefetchTask implements Runnable {
+    private final String className;
+    private final AtomicBoolean claimed = new AtomicBoolean();
+    private final CompletableFuture<byte[]> result = new CompletableFuture<>();
+    // bytes counted against MAX_PREFETCHED_BYTES while the result waits in prefetchTasks
+    private int heldBytes;
+
+    PrefetchTask(String className) {
+      this.className = className;
+    }
+
+    @Override
+    public void run() {
+      if (!claimed.compareAndSet(false, true)) {
+        return;
+      }
+
+      byte[] bytes;
+      try {
+        bytes = prepareClassBytes(className);
+      } catch (Throwable e) {
+        // don't hold on to failures; they're reported if and when the class is requested
+        prefetchTasks.remove(className, this);
+        result.completeExceptionally(e);
+        return;
+      }
+
+      if (prefetchedBytes.addAndGet(bytes.length) > MAX_PREFETCHED_BYTES) {
+        prefetchedBytes.addAndGet(-bytes.length);
+        prefetchTasks.remove(className, this);
+      } else {
+        heldBytes = bytes.length;
+      }
+      result.complete(bytes);
+    }
+
+    /** Called by the loading thread, once it has removed this task from prefetchTasks. */
+    byte[] get() throws ClassNotFoundException {
+      if (claimed.compareAndSet(false, true)) {
+        return prepareClassBytes(className);
+      }
+
+      try {
+        return result.join();
+      } catch (CompletionException e) {
+        Throwable cause = e.getCause();
+        if (cause instanceof ClassNotFoundException) {
+          throw (ClassNotFoundException) cause;
+        } else if (cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new ClassNotFoundException("couldn't load " + className, cause);
+      } finally {
+        prefetchedBytes.addAndGet(-heldBytes);
+      }
+    }
+  }
 }
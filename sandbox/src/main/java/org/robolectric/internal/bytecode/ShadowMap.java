@@ -7,9 +7,13 @@ import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 import org.robolectric.annotation.Implements;
 import org.robolectric.internal.ShadowProvider;
 import org.robolectric.shadow.api.ShadowPicker;
+import org.robolectric.util.PerfStatsCollector;
+import org.robolectric.util.PerfStatsCollector.MetricHandle;
 
 /**
  * Maps from instrumented class to shadow class.
@@ -25,6 +29,25 @@ public class ShadowMap {
 
   static final ShadowMap EMPTY = new ShadowMap(ImmutableMap.of(), ImmutableMap.of());
 
+  private static final MetricHandle EVALUATE_SHADOW_PICKER =
+      PerfStatsCollector.getInstance().metric("evaluate shadow picker");
+
+  /**
+   * The shadow last chosen by each {@link ShadowPicker}, by the name of the instrumented class it
+   * was picked for. Picker classes are loaded separately by each sandbox, so each sandbox gets its
+   * own picks.
+   */
+  private static final ClassValueMap<Map<String, PickedShadow>> pickedShadows =
+      new ClassValueMap<Map<String, PickedShadow>>() {
+        @Override
+        protected Map<String, PickedShadow> computeValue(Class<?> type) {
+          return new ConcurrentHashMap<>();
+        }
+      };
+
+  /** Incremented by {@link #invalidateShadowPickers()}; older picks are stale. */
+  private static final AtomicInteger shadowPickersGeneration = new AtomicInteger();
+
   private final ImmutableMap<String, String> defaultShadows;
   private final ImmutableMap<String, ShadowInfo> overriddenShadows;
   private final ImmutableMap<String, String> shadowPickers;
@@ -83,7 +106,6 @@ public class ShadowMap {
     return shadowInfo;
   }
 
-  // todo: some caching would probably be nice here...
   private ShadowInfo checkShadowPickers(String instrumentedClassName, Class<?> clazz) {
     String shadowPickerClassName = shadowPickers.get(instrumentedClassName);
     if (shadowPickerClassName == null) {
@@ -94,20 +116,15 @@ public class ShadowMap {
     try {
       Class<? extends ShadowPicker<?>> shadowPickerClass =
           (Class<? extends ShadowPicker<?>>) classLoader.loadClass(shadowPickerClassName);
-      ShadowPicker<?> shadowPicker = shadowPickerClass.getDeclaredConstructor().newInstance();
-      Class<?> selectedShadowClass = shadowPicker.pickShadowClass();
-      if (selectedShadowClass == null) {
-        return obtainShadowInfo(Object.class, true);
+      Map<String, PickedShadow> picks = pickedShadows.get(shadowPickerClass);
+      int generation = shadowPickersGeneration.get();
+      PickedShadow pickedShadow = picks.get(instrumentedClassName);
+      if (pickedShadow == null || pickedShadow.generation != generation) {
+        pickedShadow = new PickedShadow(
+            pickShadowInfo(instrumentedClassName, shadowPickerClass), generation);
+        picks.put(instrumentedClassName, pickedShadow);
       }
-      ShadowInfo shadowInfo = obtainShadowInfo(selectedShadowClass);
-
-      if (!shadowInfo.shadowedClassName.equals(instrumentedClassName)) {
-        throw new IllegalArgumentException("Implemented class for "
-            + selectedShadowClass.getName() + " (" + shadowInfo.shadowedClassName + ") != "
-            + instrumentedClassName);
-      }
-
-      return shadowInfo;
+      return pickedShadow.shadowInfo;
     } catch (ClassNotFoundException | NoSuchMethodException | InvocationTargetException
         | IllegalAccessException | InstantiationException e) {
       throw new RuntimeException("Failed to resolve shadow picker for " + instrumentedClassName,
@@ -115,6 +132,36 @@ public class ShadowMap {
     }
   }
 
+  private static ShadowInfo pickShadowInfo(String instrumentedClassName,
+      Class<? extends ShadowPicker<?>> shadowPickerClass)
+      throws NoSuchMethodException, InvocationTargetException, IllegalAccessException,
+      InstantiationException {
+    EVALUATE_SHADOW_PICKER.increment();
+    ShadowPicker<?> shadowPicker = shadowPickerClass.getDeclaredConstructor().newInstance();
+    Class<?> selectedShadowClass = shadowPicker.pickShadowClass();
+    if (selectedShadowClass == null) {
+      return obtainShadowInfo(Object.class, true);
+    }
+    ShadowInfo shadowInfo = obtainShadowInfo(selectedShadowClass);
+
+    if (!shadowInfo.shadowedClassName.equals(instrumentedClassName)) {
+      throw new IllegalArgumentException("Implemented class for "
+          + selectedShadowClass.getName() + " (" + shadowInfo.shadowedClassName + ") != "
+          + instrumentedClassName);
+    }
+
+    return shadowInfo;
+  }
+
+  /**
+   * Discards the shadows chosen by {@link ShadowPicker}s so far, so they'll be picked again. This
+   * must be called whenever global state which pickers depend on (e.g. the API level or resources
+   * mode) changes.
+   */
+  public static void invalidateShadowPickers() {
+    shadowPickersGeneration.incrementAndGet();
+  }
+
   public static ShadowInfo obtainShadowInfo(Class<?> clazz) {
     return obtainShadowInfo(clazz, false);
   }
@@ -190,6 +237,16 @@ public class ShadowMap {
     return overriddenShadows.hashCode();
   }
 
+  private static class PickedShadow {
+    final ShadowInfo shadowInfo;
+    final int generation;
+
+    PickedShadow(ShadowInfo shadowInfo, int generation) {
+      this.shadowInfo = shadowInfo;
+      this.generation = generation;
+    }
+  }
+
   public static class Builder {
     private final ImmutableMap<String, String> defaultShadows;
     private final Map<String, ShadowInfo> overriddenShadows;
@@ -16,10 +16,7 @@ import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
-import java.util.Collections;
-import java.util.LinkedHashMap;
 import java.util.List;
-import java.util.Map;
 import javax.annotation.Nonnull;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.RealObject;
@@ -71,13 +68,7 @@ public class ShadowWrangler implements ClassHandler {
   private final ShadowMap shadowMap;
   private final Interceptors interceptors;
   private final int apiLevel;
-  private final Map<String, Plan> planCache =
-      Collections.synchronizedMap(new LinkedHashMap<String, Plan>() {
-        @Override
-        protected boolean removeEldestEntry(Map.Entry<String, Plan> eldest) {
-          return size() > 500;
-        }
-      });
+  private final PlanCache planCache = new PlanCache();
 
   /** key is instrumented class */
   private final ClassValueMap<ShadowInfo> cachedShadowInfos = new ClassValueMap<ShadowInfo>() {
@@ -162,14 +153,7 @@ public class ShadowWrangler implements ClassHandler {
 
   @Override
   public Plan methodInvoked(String signature, boolean isStatic, Class<?> theClass) {
-    Plan plan;
-    if (planCache.containsKey(signature)) {
-      plan = planCache.get(signature);
-    } else {
-      plan = calculatePlan(signature, isStatic, theClass);
-      planCache.put(signature, plan);
-    }
-    return plan;
+    return planCache.get(signature, key -> calculatePlan(key, isStatic, theClass));
   }
 
   @SuppressWarnings("ReferenceEquality")
@@ -5,6 +5,7 @@ import static java.lang.invoke.MethodHandles.constant;
 import static java.lang.invoke.MethodHandles.dropArguments;
 import static java.lang.invoke.MethodHandles.insertArguments;
 import static java.lang.invoke.MethodType.methodType;
+import static java.util.Arrays.asList;
 import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertNotNull;
@@ -19,6 +20,8 @@ import static org.mockito.Mockito.when;
 import static org.robolectric.util.ReflectionHelpers.newInstance;
 import static org.robolectric.util.ReflectionHelpers.setStaticField;
 
+import java.io.PrintWriter;
+import java.io.StringWriter;
 import java.lang.invoke.MethodHandle;
 import java.lang.invoke.MethodHandles;
 import java.lang.invoke.MethodType;
@@ -37,6 +40,8 @@ import org.junit.Test;
 import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.mockito.Mockito;
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.util.CheckClassAdapter;
 import org.robolectric.internal.bytecode.ClassHandler;
 import org.robolectric.internal.bytecode.InstrumentationConfiguration;
 import org.robolectric.internal.bytecode.Interceptor;
@@ -62,6 +67,7 @@ import org.robolectric.testing.AClassThatRefersToAForgettableClassInMethodCallsR
 import org.robolectric.testing.AClassToForget;
 import org.robolectric.testing.AClassToRemember;
 import org.robolectric.testing.AClassWithEqualsHashCodeToString;
+import org.robolectric.testing.AClassWithBranchesAndHandlers;
 import org.robolectric.testing.AClassWithFunnyConstructors;
 import org.robolectric.testing.AClassWithMethodReturningArray;
 import org.robolectric.testing.AClassWithMethodReturningBoolean;
@@ -147,6 +153,17 @@ public class SandboxClassLoaderTest {
     }
   }
 
+  @Test
+  public void isClassLoaded_shouldReportAcquiredClassesOnceLoaded() throws Exception {
+    SandboxClassLoader classLoader = new SandboxClassLoader(configureBuilder().build());
+    assertThat(classLoader.isClassLoaded(AnExampleClass.class.getName())).isFalse();
+
+    classLoader.loadClass(AnExampleClass.class.getName());
+
+    assertThat(classLoader.isClassLoaded(AnExampleClass.class.getName())).isTrue();
+    assertThat(classLoader.isClassLoaded(String.class.getName())).isTrue();
+  }
+
   @Test
   public void shouldPerformClassLoadAndInstrumentLoadForInstrumentedClasses() throws Exception {
     ClassLoader classLoader = new SandboxClassLoader(configureBuilder().build());
@@ -374,6 +391,51 @@ public class SandboxClassLoaderTest {
     return directMethod;
   }
 
+  @Test
+  public void shouldVerifyBranchesAndHandlers_preservingFrames() throws Exception {
+    assertBranchesAndHandlersVerifyAndRun(true);
+  }
+
+  @Test
+  public void shouldVerifyBranchesAndHandlers_computingFrames() throws Exception {
+    assertBranchesAndHandlersVerifyAndRun(false);
+  }
+
+  private void assertBranchesAndHandlersVerifyAndRun(boolean preserveFrames) throws Exception {
+    String priorPreserveFrames = System.getProperty("robolectric.preserveFrames");
+    System.setProperty("robolectric.preserveFrames", String.valueOf(preserveFrames));
+    try {
+      setClassLoader(new SandboxClassLoader(configureBuilder()
+          .addInterceptedMethod(new MethodRef(AClassToForget.class, "forgettableStaticMethod"))
+          .build()));
+    } finally {
+      if (priorPreserveFrames == null) {
+        System.clearProperty("robolectric.preserveFrames");
+      } else {
+        System.setProperty("robolectric.preserveFrames", priorPreserveFrames);
+      }
+    }
+
+    byte[] bytes = ((SandboxClassLoader) classLoader)
+        .getInstrumentedBytes(AClassWithBranchesAndHandlers.class.getName());
+    StringWriter errors = new StringWriter();
+    CheckClassAdapter.verify(new ClassReader(bytes), classLoader, false, new PrintWriter(errors));
+    assertThat(errors.toString()).isEmpty();
+
+    // the JVM checks the stack map frames as it links the class
+    Class<?> theClass = loadClass(AClassWithBranchesAndHandlers.class);
+    Object instance = theClass.getConstructor(int.class).newInstance(0);
+    Method constructor = findDirectMethod(theClass, "__constructor__", int.class);
+    Method describe = findDirectMethod(theClass, "describe", int.class, int.class);
+
+    constructor.invoke(instance, 2);
+    assertThat(describe.invoke(instance, 2, 10)).isEqualTo("two ten ten");
+    assertThat(describe.invoke(instance, 1, 7)).isEqualTo("two ?");
+
+    constructor.invoke(instance, -1);
+    assertThat(describe.invoke(instance, 1, 1000)).isEqualTo("negative thousand");
+  }
+
   @Test
   public void shouldNotInstrumentFinalEqualsHashcode() throws ClassNotFoundException {
     loadClass(AClassThatExtendsAClassWithFinalEqualsHashCode.class);
@@ -606,6 +668,17 @@ public class SandboxClassLoaderTest {
     loadClass(AnEnum.class);
   }
 
+  @Test
+  public void prefetchedClassesShouldBeInstrumented() throws Exception {
+    SandboxClassLoader sandboxClassLoader = new SandboxClassLoader(configureBuilder().build());
+    sandboxClassLoader.prefetch(asList(AFinalClass.class.getName(), "com.example.NoSuchClass"));
+    setClassLoader(sandboxClassLoader);
+
+    Class<?> clazz = loadClass(AFinalClass.class);
+    assertSame(sandboxClassLoader, clazz.getClassLoader());
+    assertEquals(0, clazz.getModifiers() & Modifier.FINAL);
+  }
+
   @Test
   public void shouldReverseAnArray() throws Exception {
     assertArrayEquals(new Integer[]{5, 4, 3, 2, 1}, Util.reverse(new Integer[]{1, 2, 3, 4, 5}));
@@ -0,0 +1,117 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.nio.file.Path;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.robolectric.internal.bytecode.ClassHierarchyIndex.ClassInfo;
+
+@RunWith(JUnit4.class)
+public class ClassHierarchyIndexTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void build_shouldIndexSuperclassesAndInterfaces() throws Exception {
+    ClassHierarchyIndex index = ClassHierarchyIndex.build(writeJar());
+
+    assertThat(index.size()).isEqualTo(2);
+    ClassInfo foo = index.get("com/example/Foo");
+    assertThat(foo.isInterface()).isFalse();
+    assertThat(foo.superName).isEqualTo("java/lang/Object");
+    assertThat(foo.interfaces).asList().containsExactly("com/example/Bar");
+    assertThat(index.get("com/example/Bar").isInterface()).isTrue();
+    assertThat(index.get("com/example/Baz")).isNull();
+  }
+
+  @Test
+  public void read_shouldReturnWrittenIndex() throws Exception {
+    File jar = writeJar();
+    Path indexFile = ClassHierarchyIndex.indexFileFor(cacheDir(), jar);
+    ClassHierarchyIndex.build(jar).write(indexFile, jar);
+
+    ClassHierarchyIndex index = ClassHierarchyIndex.read(indexFile, jar);
+
+    assertThat(index.size()).isEqualTo(2);
+    ClassInfo foo = index.get("com/example/Foo");
+    assertThat(foo.superName).isEqualTo("java/lang/Object");
+    assertThat(foo.interfaces).asList().containsExactly("com/example/Bar");
+    assertThat(index.get("com/example/Bar").superName).isEqualTo("java/lang/Object");
+  }
+
+  @Test
+  public void read_shouldIgnoreIndexForModifiedJar() throws Exception {
+    File jar = writeJar();
+    Path indexFile = ClassHierarchyIndex.indexFileFor(cacheDir(), jar);
+    ClassHierarchyIndex.build(jar).write(indexFile, jar);
+
+    assertThat(jar.setLastModified(jar.lastModified() - 10_000)).isTrue();
+
+    assertThat(ClassHierarchyIndex.read(indexFile, jar)).isNull();
+  }
+
+  @Test
+  public void forJar_shouldShareIndex() throws Exception {
+    File jar = writeJar();
+    Path cacheDir = cacheDir();
+
+    ClassHierarchyIndex index = ClassHierarchyIndex.forJar(jar, cacheDir);
+
+    assertThat(index).isNotNull();
+    assertThat(ClassHierarchyIndex.forJar(jar, cacheDir)).isSameAs(index);
+    assertThat(ClassHierarchyIndex.indexFileFor(cacheDir, jar).toFile().isFile()).isTrue();
+    assertThat(jar.getParentFile().list()).asList().containsExactly(jar.getName());
+  }
+
+  @Test
+  public void forJar_shouldNotSaveIndexWithoutCacheDir() throws Exception {
+    File jar = writeJar();
+
+    assertThat(ClassHierarchyIndex.forJar(jar, null)).isNotNull();
+    assertThat(jar.getParentFile().list()).asList().containsExactly(jar.getName());
+  }
+
+  @Test
+  public void indexFileFor_shouldChangeWhenJarChanges() throws Exception {
+    File jar = writeJar();
+    Path indexFile = ClassHierarchyIndex.indexFileFor(cacheDir(), jar);
+
+    assertThat(jar.setLastModified(jar.lastModified() - 10_000)).isTrue();
+
+    assertThat(ClassHierarchyIndex.indexFileFor(cacheDir(), jar)).isNotEqualTo(indexFile);
+  }
+
+  private Path cacheDir() {
+    return new File(temporaryFolder.getRoot(), "class-cache").toPath();
+  }
+
+  private File writeJar() throws Exception {
+    File file = new File(temporaryFolder.newFolder("jars"), "classes.jar");
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file))) {
+      out.putNextEntry(new JarEntry("com/example/Foo.class"));
+      out.write(classBytes(Opcodes.ACC_PUBLIC, "com/example/Foo", "com/example/Bar"));
+      out.putNextEntry(new JarEntry("com/example/Bar.class"));
+      out.write(classBytes(
+          Opcodes.ACC_PUBLIC | Opcodes.ACC_INTERFACE | Opcodes.ACC_ABSTRACT, "com/example/Bar"));
+      out.putNextEntry(new JarEntry("META-INF/notes.txt"));
+      out.write(new byte[] {1, 2, 3});
+    }
+    return file;
+  }
+
+  private static byte[] classBytes(int access, String name, String... interfaces) {
+    ClassWriter classWriter = new ClassWriter(0);
+    classWriter.visit(Opcodes.V1_8, access, name, null, "java/lang/Object", interfaces);
+    classWriter.visitEnd();
+    return classWriter.toByteArray();
+  }
+}
@@ -0,0 +1,51 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ClassLoadTraceTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void record_shouldKeepFirstLoadOrder() throws Exception {
+    ClassLoadTrace trace = new ClassLoadTrace();
+    trace.record("com.example.B", 10);
+    trace.record("com.example.A", 20);
+    trace.record("com.example.B", 30);
+
+    assertThat(trace.getClassNames()).containsExactly("com.example.B", "com.example.A").inOrder();
+  }
+
+  @Test
+  public void write_shouldRoundTripThroughReadClassNames() throws Exception {
+    ClassLoadTrace trace = new ClassLoadTrace();
+    trace.record("com.example.B", 10_000);
+    trace.record("com.example.A", 20_000);
+    Path file = temporaryFolder.getRoot().toPath().resolve("traces/sdk-28.classes");
+    trace.write(file);
+
+    assertThat(Files.readAllLines(file, StandardCharsets.UTF_8)).contains("com.example.B\t10");
+    assertThat(ClassLoadTrace.readClassNames(file))
+        .containsExactly("com.example.B", "com.example.A").inOrder();
+  }
+
+  @Test
+  public void readClassNames_shouldAcceptPlainLists() throws Exception {
+    Path file = temporaryFolder.newFile().toPath();
+    Files.write(file, Arrays.asList("# comment", "", " com.example.A ", "com.example.B"),
+        StandardCharsets.UTF_8);
+
+    assertThat(ClassLoadTrace.readClassNames(file))
+        .containsExactly("com.example.A", "com.example.B").inOrder();
+  }
+}
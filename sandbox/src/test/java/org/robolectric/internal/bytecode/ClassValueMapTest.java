@@ -0,0 +1,38 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class ClassValueMapTest {
+  private final AtomicInteger computeCount = new AtomicInteger();
+
+  private final ClassValueMap<String> classNames = new ClassValueMap<String>() {
+    @Override
+    protected String computeValue(Class<?> type) {
+      computeCount.incrementAndGet();
+      return type == Void.class ? null : type.getSimpleName();
+    }
+  };
+
+  @Test
+  public void get_shouldComputeValueOncePerClass() {
+    assertThat(classNames.get(String.class)).isEqualTo("String");
+    assertThat(classNames.get(String.class)).isEqualTo("String");
+    assertThat(classNames.get(Integer.class)).isEqualTo("Integer");
+
+    assertThat(computeCount.get()).isEqualTo(2);
+  }
+
+  @Test
+  public void get_shouldCacheNullValues() {
+    assertThat(classNames.get(Void.class)).isNull();
+    assertThat(classNames.get(Void.class)).isNull();
+
+    assertThat(computeCount.get()).isEqualTo(1);
+  }
+}
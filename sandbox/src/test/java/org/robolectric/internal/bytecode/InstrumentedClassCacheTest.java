@@ -0,0 +1,170 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class InstrumentedClassCacheTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  private Path cacheDir;
+  private InstrumentedClassCache cache;
+
+  @Before
+  public void setUp() throws Exception {
+    cacheDir = temporaryFolder.newFolder("class-cache").toPath();
+    cache = new InstrumentedClassCache(cacheDir, 100);
+  }
+
+  @Test
+  public void get_shouldReturnNullForMissingEntry() throws Exception {
+    assertThat(cache.get(cache.keyFor(new byte[] {1, 2, 3}, "config", "instrumentor", "classpath")))
+        .isNull();
+  }
+
+  @Test
+  public void put_shouldStoreBytesForLaterJvms() throws Exception {
+    String key = cache.keyFor(new byte[] {1, 2, 3}, "config", "instrumentor", "classpath");
+    cache.put(key, new byte[] {4, 5, 6});
+
+    InstrumentedClassCache otherCache = new InstrumentedClassCache(cacheDir, 100);
+    assertThat(otherCache.get(key)).isEqualTo(new byte[] {4, 5, 6});
+  }
+
+  @Test
+  public void keyFor_shouldDependOnEveryInput() throws Exception {
+    String key = cache.keyFor(new byte[] {1, 2, 3}, "config", "instrumentor", "classpath");
+    assertThat(cache.keyFor(new byte[] {1, 2, 3}, "config", "instrumentor", "classpath"))
+        .isEqualTo(key);
+    assertThat(cache.keyFor(new byte[] {1, 2, 4}, "config", "instrumentor", "classpath"))
+        .isNotEqualTo(key);
+    assertThat(cache.keyFor(new byte[] {1, 2, 3}, "config2", "instrumentor", "classpath"))
+        .isNotEqualTo(key);
+    assertThat(cache.keyFor(new byte[] {1, 2, 3}, "config", "instrumentor2", "classpath"))
+        .isNotEqualTo(key);
+    assertThat(cache.keyFor(new byte[] {1, 2, 3}, "config", "instrumentor", "classpath2"))
+        .isNotEqualTo(key);
+  }
+
+  @Test
+  public void classPathFingerprint_shouldChangeWhenJarChanges() throws Exception {
+    File jar = temporaryFolder.newFile("supertypes.jar");
+    Files.write(jar.toPath(), new byte[] {1});
+    URL[] urls = {jar.toURI().toURL()};
+    String fingerprint = InstrumentedClassCache.classPathFingerprint(urls);
+
+    assertThat(InstrumentedClassCache.classPathFingerprint(urls)).isEqualTo(fingerprint);
+
+    Files.write(jar.toPath(), new byte[] {1, 2});
+    assertThat(InstrumentedClassCache.classPathFingerprint(urls)).isNotEqualTo(fingerprint);
+  }
+
+  @Test
+  public void classPathFingerprint_shouldDependOnClassFilesInDirectories() throws Exception {
+    File dir1 = temporaryFolder.newFolder("classes1");
+    File dir2 = temporaryFolder.newFolder("classes2");
+    Files.write(new File(dir1, "Super.class").toPath(), new byte[] {1});
+    Files.write(new File(dir2, "Super.class").toPath(), new byte[] {1, 2});
+    String fingerprint1 = InstrumentedClassCache.classPathFingerprint(dir1.toURI().toURL());
+    String fingerprint2 = InstrumentedClassCache.classPathFingerprint(dir2.toURI().toURL());
+
+    assertThat(fingerprint1).isNotEqualTo(fingerprint2);
+
+    // directories are only scanned once per JVM
+    Files.write(new File(dir1, "Other.class").toPath(), new byte[] {1});
+    assertThat(InstrumentedClassCache.classPathFingerprint(dir1.toURI().toURL()))
+        .isEqualTo(fingerprint1);
+  }
+
+  @Test
+  public void instrumentorFingerprint_shouldDependOnLoaderClass() throws Exception {
+    ClassInstrumentor classInstrumentor = new InvokeDynamicClassInstrumentor(new ShadowDecorator());
+
+    assertThat(InstrumentedClassCache.instrumentorFingerprint(
+        classInstrumentor, SandboxClassLoader.class))
+        .isNotEqualTo(InstrumentedClassCache.instrumentorFingerprint(
+            classInstrumentor, PostProcessingClassLoader.class));
+  }
+
+  @Test
+  public void get_shouldMarkEntryAsUsedOncePerJvm() throws Exception {
+    String key = cache.keyFor(new byte[] {1}, "config", "instrumentor", "classpath");
+    cache.put(key, new byte[] {2});
+
+    InstrumentedClassCache otherCache = new InstrumentedClassCache(cacheDir, 100);
+    setLastModified(key, 1000);
+    assertThat(otherCache.get(key)).isEqualTo(new byte[] {2});
+    assertThat(getLastModified(key)).isEqualTo(1000);
+  }
+
+  @Test
+  public void put_shouldEvictLeastRecentlyUsedEntriesWhenFull() throws Exception {
+    String key1 = cache.keyFor(new byte[] {1}, "config", "instrumentor", "classpath");
+    String key2 = cache.keyFor(new byte[] {2}, "config", "instrumentor", "classpath");
+    String key3 = cache.keyFor(new byte[] {3}, "config", "instrumentor", "classpath");
+
+    cache.put(key1, new byte[40]);
+    cache.put(key2, new byte[40]);
+    setLastModified(key1, 1000);
+    setLastModified(key2, 2000);
+
+    cache.put(key3, new byte[40]);
+
+    assertThat(cache.get(key1)).isNull();
+    assertThat(cache.get(key2)).isNull();
+    assertThat(cache.get(key3)).hasLength(40);
+  }
+
+  @Test
+  public void fingerprint_shouldBeIndependentOfInsertionOrder() throws Exception {
+    InstrumentationConfiguration config1 = InstrumentationConfiguration.newBuilder()
+        .addInstrumentedPackage("android.")
+        .addInstrumentedPackage("com.android.")
+        .build();
+    InstrumentationConfiguration config2 = InstrumentationConfiguration.newBuilder()
+        .addInstrumentedPackage("com.android.")
+        .addInstrumentedPackage("android.")
+        .build();
+    InstrumentationConfiguration config3 = InstrumentationConfiguration.newBuilder()
+        .addInstrumentedPackage("android.")
+        .build();
+
+    assertThat(config1.fingerprint()).isEqualTo(config2.fingerprint());
+    assertThat(config1.fingerprint()).isNotEqualTo(config3.fingerprint());
+  }
+
+  private static class PostProcessingClassLoader extends SandboxClassLoader {
+    PostProcessingClassLoader(InstrumentationConfiguration config) {
+      super(config);
+    }
+
+    @Override
+    protected byte[] postProcessUninstrumentedClass(
+        MutableClass mutableClass, byte[] origClassBytes) {
+      return new byte[0];
+    }
+  }
+
+  private void setLastModified(String key, long millis) throws Exception {
+    Files.setLastModifiedTime(entryPath(key), FileTime.fromMillis(millis));
+  }
+
+  private long getLastModified(String key) throws Exception {
+    return Files.getLastModifiedTime(entryPath(key)).toMillis();
+  }
+
+  private Path entryPath(String key) {
+    return cacheDir.resolve(key.substring(0, 2)).resolve(key + ".class");
+  }
+}
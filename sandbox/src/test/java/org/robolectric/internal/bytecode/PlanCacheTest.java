@@ -0,0 +1,70 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+import org.robolectric.internal.bytecode.ClassHandler.Plan;
+
+@RunWith(JUnit4.class)
+public class PlanCacheTest {
+  private final List<String> calculated = new ArrayList<>();
+
+  @Test
+  public void get_shouldCalculateEachPlanOnce() {
+    PlanCache planCache = new PlanCache(10);
+
+    Plan plan = planCache.get("a", this::calculate);
+    assertThat(planCache.get("a", this::calculate)).isSameAs(plan);
+    assertThat(calculated).containsExactly("a");
+  }
+
+  @Test
+  public void get_shouldCacheNullPlans() {
+    PlanCache planCache = new PlanCache(10);
+
+    assertThat(planCache.get("a", this::calculateNull)).isNull();
+    assertThat(planCache.get("a", this::calculateNull)).isNull();
+    assertThat(calculated).containsExactly("a");
+  }
+
+  @Test
+  public void get_shouldEvictUnusedPlansFirst() {
+    PlanCache planCache = new PlanCache(10);
+    for (int i = 0; i < 10; i++) {
+      planCache.get("plan" + i, this::calculate);
+    }
+    planCache.get("plan3", this::calculate);
+
+    planCache.get("plan10", this::calculate);
+
+    assertThat(planCache.size()).isAtMost(10);
+    calculated.clear();
+    planCache.get("plan3", this::calculate);
+    assertThat(calculated).isEmpty();
+  }
+
+  @Test
+  public void get_shouldStayWithinCapacity() {
+    PlanCache planCache = new PlanCache(100);
+    for (int i = 0; i < 1000; i++) {
+      planCache.get("plan" + i, this::calculate);
+      planCache.get("plan0", this::calculate);
+    }
+
+    assertThat(planCache.size()).isAtMost(100);
+  }
+
+  private Plan calculate(String signature) {
+    calculated.add(signature);
+    return ShadowWrangler.DO_NOTHING_PLAN;
+  }
+
+  private Plan calculateNull(String signature) {
+    calculated.add(signature);
+    return null;
+  }
+}
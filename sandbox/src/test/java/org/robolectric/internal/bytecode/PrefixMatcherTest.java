@@ -0,0 +1,53 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.util.Arrays;
+import java.util.Collections;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PrefixMatcherTest {
+  @Test
+  public void matches_shouldMatchAnyPrefix() {
+    PrefixMatcher matcher = new PrefixMatcher(
+        Arrays.asList("android.", "com.android.internal.", "org.robolectric.res."));
+
+    assertThat(matcher.matches("android.view.View")).isTrue();
+    assertThat(matcher.matches("com.android.internal.R")).isTrue();
+    assertThat(matcher.matches("org.robolectric.res.ResName")).isTrue();
+    assertThat(matcher.matches("androidx.core.View")).isFalse();
+    assertThat(matcher.matches("com.android.Foo")).isFalse();
+    assertThat(matcher.matches("org.robolectric.Robolectric")).isFalse();
+    assertThat(matcher.matches("android")).isFalse();
+  }
+
+  @Test
+  public void matches_shouldHandleNestedPrefixesInEitherOrder() {
+    PrefixMatcher longFirst = new PrefixMatcher(Arrays.asList("org.robolectric.res.", "org."));
+    PrefixMatcher shortFirst = new PrefixMatcher(Arrays.asList("org.", "org.robolectric.res."));
+
+    for (PrefixMatcher matcher : Arrays.asList(longFirst, shortFirst)) {
+      assertThat(matcher.matches("org.junit.Test")).isTrue();
+      assertThat(matcher.matches("org.robolectric.res.ResName")).isTrue();
+      assertThat(matcher.matches("com.example.Foo")).isFalse();
+    }
+  }
+
+  @Test
+  public void matches_shouldUseRawStringPrefixes() {
+    PrefixMatcher matcher = new PrefixMatcher(Collections.singletonList("com.example.Foo"));
+
+    assertThat(matcher.matches("com.example.Foo")).isTrue();
+    assertThat(matcher.matches("com.example.FooBar")).isTrue();
+    assertThat(matcher.matches("com.example.Fo")).isFalse();
+  }
+
+  @Test
+  public void matches_emptyPrefixShouldMatchEverything() {
+    assertThat(new PrefixMatcher(Collections.singletonList("")).matches("anything")).isTrue();
+    assertThat(new PrefixMatcher(Collections.emptyList()).matches("anything")).isFalse();
+  }
+}
@@ -0,0 +1,75 @@
+package org.robolectric.internal.bytecode;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.util.jar.Attributes;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.jar.Manifest;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.junit.runner.RunWith;
+import org.junit.runners.JUnit4;
+
+@RunWith(JUnit4.class)
+public class PreinstrumentedJarTest {
+  @Rule public TemporaryFolder temporaryFolder = new TemporaryFolder();
+
+  @Test
+  public void open_shouldReturnNullForMissingFile() throws Exception {
+    assertThat(PreinstrumentedJar.open(new File(temporaryFolder.getRoot(), "missing.jar")))
+        .isNull();
+  }
+
+  @Test
+  public void open_shouldReturnNullForJarWithoutFingerprints() throws Exception {
+    File file = writeJar(new Manifest());
+    assertThat(PreinstrumentedJar.open(file)).isNull();
+  }
+
+  @Test
+  public void matches_shouldCompareBothFingerprints() throws Exception {
+    PreinstrumentedJar jar = PreinstrumentedJar.open(writeJar(manifest("config", "instrumentor")));
+    try {
+      assertThat(jar.matches("config", "instrumentor")).isTrue();
+      assertThat(jar.matches("config2", "instrumentor")).isFalse();
+      assertThat(jar.matches("config", "instrumentor2")).isFalse();
+    } finally {
+      jar.close();
+    }
+  }
+
+  @Test
+  public void getClassBytes_shouldReturnEntryOrNull() throws Exception {
+    PreinstrumentedJar jar = PreinstrumentedJar.open(writeJar(manifest("config", "instrumentor")));
+    try {
+      assertThat(jar.getClassBytes("com.example.Foo")).isEqualTo(new byte[] {1, 2, 3});
+      assertThat(jar.getClassBytes("com.example.Bar")).isNull();
+    } finally {
+      jar.close();
+    }
+  }
+
+  private static Manifest manifest(String configFingerprint, String instrumentorFingerprint) {
+    Manifest manifest = new Manifest();
+    Attributes attributes = manifest.getMainAttributes();
+    attributes.put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    attributes.putValue(PreinstrumentedJar.CONFIG_FINGERPRINT_ATTRIBUTE, configFingerprint);
+    attributes.putValue(
+        PreinstrumentedJar.INSTRUMENTOR_FINGERPRINT_ATTRIBUTE, instrumentorFingerprint);
+    return manifest;
+  }
+
+  private File writeJar(Manifest manifest) throws Exception {
+    File file = temporaryFolder.newFile();
+    manifest.getMainAttributes().put(Attributes.Name.MANIFEST_VERSION, "1.0");
+    try (JarOutputStream out = new JarOutputStream(new FileOutputStream(file), manifest)) {
+      out.putNextEntry(new JarEntry("com/example/Foo.class"));
+      out.write(new byte[] {1, 2, 3});
+    }
+    return file;
+  }
+}
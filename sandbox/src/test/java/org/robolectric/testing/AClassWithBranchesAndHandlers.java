@@ -0,0 +1,60 @@
+package org.robolectric.testing;
+
+import org.robolectric.annotation.internal.Instrument;
+
+@SuppressWarnings("UnusedDeclaration")
+@Instrument
+public class AClassWithBranchesAndHandlers {
+  private final String description;
+
+  public AClassWithBranchesAndHandlers(int kind) {
+    String description;
+    try {
+      switch (kind) {
+        case 0:
+          description = "none";
+          break;
+        case 1:
+          description = "one";
+          break;
+        case 2:
+          description = "two";
+          break;
+        default:
+          if (kind < 0) {
+            throw new IllegalArgumentException();
+          }
+          description = "many";
+      }
+    } catch (IllegalArgumentException e) {
+      description = "negative";
+    }
+    String forgotten = AClassToForget.forgettableStaticMethod();
+    this.description = forgotten == null ? description : forgotten;
+  }
+
+  public String describe(int times, int unit) {
+    StringBuilder result = new StringBuilder(description);
+    for (int i = 0; i < times; i++) {
+      try {
+        switch (unit) {
+          case 1:
+            result.append(" one");
+            break;
+          case 10:
+            result.append(" ten");
+            break;
+          case 1000:
+            result.append(" thousand");
+            break;
+          default:
+            throw new IllegalStateException();
+        }
+      } catch (IllegalStateException e) {
+        result.append(" ?");
+      }
+    }
+    String forgotten = AClassToForget.forgettableStaticMethod();
+    return forgotten == null ? result.toString() : forgotten;
+  }
+}
@@ -2,6 +2,7 @@ package org.robolectric.internal;
 
 import java.util.Collections;
 import java.util.Map;
+import java.util.function.Predicate;
 
 /**
  * Interface implemented by packages that provide shadows to Robolectric.
@@ -14,6 +15,18 @@ public interface ShadowProvider {
    */
   void reset();
 
+  /**
+   * Reset the static state of the shadows provided by this package which may have been used.
+   *
+   * A shadow's static state can only have changed once the shadow or the class it shadows has been
+   * loaded, so resetters for classes that haven't been loaded in the sandbox can be skipped.
+   *
+   * @param isClassLoaded tells whether the named class has been loaded in the sandbox.
+   */
+  default void reset(Predicate<String> isClassLoaded) {
+    reset();
+  }
+
   /**
    * Array of Java package names that are shadowed by this package.
    *
@@ -0,0 +1,550 @@
+package org.robolectric.shadows;
+
+import android.os.IBinder;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import org.robolectric.shadows.ShadowParcel.UnreliableBehaviorException;
+
+/**
+ * Parcel data buffer which encodes values into a growable byte array using the same wire layout
+ * as the native Parcel: little-endian, with every value padded to a multiple of 4 bytes.
+ *
+ * <p>Compared to {@link ShadowParcel}'s default typed buffer, this allocates nothing per write and
+ * marshalls by copying its bytes, so large Bundles and Intents are much cheaper. Binders can't be
+ * represented as bytes; like the native Parcel, they're kept in a side table keyed by position, and
+ * marshalling a parcel which contains any is an error.
+ *
+ * <p>When created as {@code checked}, a tag is also kept for each 4-byte word recording the type
+ * of value written there, and reads fail fast the same way the typed buffer does: reading a
+ * different type than was written, reading from the middle of or a truncated value, reading
+ * uninitialized data, or reading past the end right after writing. Data restored by {@link
+ * #unmarshall} has no type information, so it can be read as anything.
+ */
+class BinaryParcelBuffer implements ShadowParcel.ParcelBuffer {
+  private static final byte[] EMPTY_BYTE_ARRAY = new byte[0];
+  private static final int INT_SIZE_BYTES = 4;
+  private static final int LONG_OR_DOUBLE_SIZE_BYTES = 8;
+  /** Size of struct flat_binder_object, as written by the typed buffer. */
+  private static final int BINDER_SIZE_BYTES = 5 * INT_SIZE_BYTES;
+  /** BINDER_TYPE_BINDER from binder.h, written as the first word of a flattened binder. */
+  private static final int BINDER_TYPE_BINDER = 0x73622a85;
+
+  private static final byte TAG_NONE = 0;
+  private static final byte TAG_INT = 1;
+  private static final byte TAG_LONG = 2;
+  private static final byte TAG_FLOAT = 3;
+  private static final byte TAG_DOUBLE = 4;
+  private static final byte TAG_STRING = 5;
+  private static final byte TAG_BYTES = 6;
+  private static final byte TAG_BINDER = 7;
+  /** Data of unknown type, which may be read as anything. */
+  private static final byte TAG_UNKNOWN = 8;
+  /** Set on the tag of the first word of each value. */
+  private static final byte TAG_START = (byte) 0x80;
+
+  private final boolean checked;
+  private byte[] data = EMPTY_BYTE_ARRAY;
+  /** One type tag per 4-byte word of {@link #data}, or null if not {@link #checked}. */
+  private byte[] tags;
+  /** Binders by position, or null if none have been written. */
+  private TreeMap<Integer, IBinder> binders;
+  private int dataPosition;
+  private int dataSize;
+  private boolean failNextReadIfPastEnd;
+
+  BinaryParcelBuffer(boolean checked) {
+    this.checked = checked;
+    this.tags = checked ? EMPTY_BYTE_ARRAY : null;
+  }
+
+  @Override
+  public ShadowParcel.BufferType getBufferType() {
+    return checked ? ShadowParcel.BufferType.CHECKED : ShadowParcel.BufferType.BINARY;
+  }
+
+  @Override
+  public void clear() {
+    data = EMPTY_BYTE_ARRAY;
+    if (checked) {
+      tags = EMPTY_BYTE_ARRAY;
+    }
+    binders = null;
+    dataPosition = 0;
+    dataSize = 0;
+    failNextReadIfPastEnd = false;
+  }
+
+  @Override
+  public int dataAvailable() {
+    return Math.max(0, dataSize - dataPosition);
+  }
+
+  @Override
+  public int dataCapacity() {
+    return data.length;
+  }
+
+  @Override
+  public int dataPosition() {
+    return dataPosition;
+  }
+
+  @Override
+  public int dataSize() {
+    return dataSize;
+  }
+
+  @Override
+  public void setDataPosition(int pos) {
+    if (checked && pos > dataSize) {
+      // NOTE: Real parcel ignores this until a write occurs.
+      throw new UnreliableBehaviorException(pos + " greater than dataSize " + dataSize);
+    }
+    dataPosition = pos;
+    failNextReadIfPastEnd = false;
+  }
+
+  @Override
+  public void setDataSize(int size) {
+    if (size < dataSize) {
+      // Zero the inaccessible bytes, so they read as zeros if the parcel is expanded again.
+      Arrays.fill(data, size, dataSize, (byte) 0);
+      if (checked) {
+        // A value cut off part way through a word is truncated, so its tag goes too.
+        Arrays.fill(tags, wordIndex(size), wordIndex(alignToInt(dataSize)), TAG_NONE);
+      }
+      if (binders != null) {
+        binders.tailMap(size).clear();
+      }
+    }
+    setDataCapacityAtLeast(size);
+    dataSize = size;
+    if (dataPosition >= dataSize) {
+      dataPosition = dataSize;
+      failNextReadIfPastEnd = true;
+    }
+  }
+
+  @Override
+  public void setDataCapacityAtLeast(int newCapacity) {
+    // Like Parcel, capacity only ever increases.
+    if (newCapacity > data.length) {
+      data = Arrays.copyOf(data, alignToInt(newCapacity));
+      if (checked) {
+        tags = Arrays.copyOf(tags, wordIndex(data.length));
+      }
+    }
+  }
+
+  @Override
+  public void writeInt(int i) {
+    int pos = beginWrite(INT_SIZE_BYTES, TAG_INT);
+    putInt(pos, i);
+  }
+
+  @Override
+  public int readInt() {
+    int pos = beginRead(INT_SIZE_BYTES, TAG_INT, Integer.class);
+    return pos < 0 ? 0 : getInt(pos);
+  }
+
+  @Override
+  public void writeLong(long l) {
+    int pos = beginWrite(LONG_OR_DOUBLE_SIZE_BYTES, TAG_LONG);
+    putLong(pos, l);
+  }
+
+  @Override
+  public long readLong() {
+    int pos = beginRead(LONG_OR_DOUBLE_SIZE_BYTES, TAG_LONG, Long.class);
+    return pos < 0 ? 0L : getLong(pos);
+  }
+
+  @Override
+  public void writeFloat(float f) {
+    int pos = beginWrite(INT_SIZE_BYTES, TAG_FLOAT);
+    putInt(pos, Float.floatToRawIntBits(f));
+  }
+
+  @Override
+  public float readFloat() {
+    int pos = beginRead(INT_SIZE_BYTES, TAG_FLOAT, Float.class);
+    return pos < 0 ? 0f : Float.intBitsToFloat(getInt(pos));
+  }
+
+  @Override
+  public void writeDouble(double d) {
+    int pos = beginWrite(LONG_OR_DOUBLE_SIZE_BYTES, TAG_DOUBLE);
+    putLong(pos, Double.doubleToRawLongBits(d));
+  }
+
+  @Override
+  public double readDouble() {
+    int pos = beginRead(LONG_OR_DOUBLE_SIZE_BYTES, TAG_DOUBLE, Double.class);
+    return pos < 0 ? 0d : Double.longBitsToDouble(getLong(pos));
+  }
+
+  /** Writes a length, then UTF-16 chars with a null terminator, like Parcel::writeString16(). */
+  @Override
+  public void writeString(String s) {
+    if (s == null) {
+      int pos = beginWrite(INT_SIZE_BYTES, TAG_STRING);
+      putInt(pos, -1);
+      return;
+    }
+
+    int length = s.length();
+    int pos = beginWrite(INT_SIZE_BYTES + (length + 1) * 2, TAG_STRING);
+    putInt(pos, length);
+    int charPos = pos + INT_SIZE_BYTES;
+    for (int i = 0; i < length; i++, charPos += 2) {
+      char c = s.charAt(i);
+      data[charPos] = (byte) c;
+      data[charPos + 1] = (byte) (c >>> 8);
+    }
+    data[charPos] = 0;
+    data[charPos + 1] = 0;
+  }
+
+  @Override
+  public String readString() {
+    if (checked) {
+      checkReadable(TAG_STRING, String.class, peekStringSize());
+    }
+    if (dataPosition + INT_SIZE_BYTES > dataSize) {
+      checkPastEnd();
+      dataPosition = Math.max(dataPosition, dataSize);
+      return null;
+    }
+
+    int length = getInt(dataPosition);
+    if (length < 0) {
+      dataPosition += INT_SIZE_BYTES;
+      return null;
+    }
+    int charPos = dataPosition + INT_SIZE_BYTES;
+    int endPos = dataPosition + alignToInt(INT_SIZE_BYTES + (length + 1) * 2);
+    if (endPos > dataSize) {
+      // Like Parcel, a string which runs past the end reads as null.
+      dataPosition = dataSize;
+      return null;
+    }
+    char[] chars = new char[length];
+    for (int i = 0; i < length; i++, charPos += 2) {
+      chars[i] = (char) ((data[charPos] & 0xff) | (data[charPos + 1] & 0xff) << 8);
+    }
+    dataPosition = endPos;
+    return new String(chars);
+  }
+
+  private int peekStringSize() {
+    if (dataPosition + INT_SIZE_BYTES > dataSize) {
+      return INT_SIZE_BYTES;
+    }
+    int length = getInt(dataPosition);
+    return length < 0 ? INT_SIZE_BYTES : alignToInt(INT_SIZE_BYTES + (length + 1) * 2);
+  }
+
+  /** Writes a length, then the bytes, like Parcel::writeByteArray(). */
+  @Override
+  public void writeByteArray(byte[] b, int offset, int length) {
+    writeInt(length);
+    if (length != 0) {
+      int pos = beginWrite(length, TAG_BYTES);
+      System.arraycopy(b, offset, data, pos, length);
+    }
+  }
+
+  @Override
+  public byte[] createByteArray() {
+    int length = readInt();
+    if (length < 0) {
+      return null;
+    }
+    if (length == 0) {
+      return EMPTY_BYTE_ARRAY;
+    }
+    int pos = beginRead(length, TAG_BYTES, byte[].class);
+    if (pos < 0 || pos + length > dataSize) {
+      // Like Parcel, an array which runs past the end reads as null.
+      dataPosition = dataSize;
+      return null;
+    }
+    return Arrays.copyOfRange(data, pos, pos + length);
+  }
+
+  @Override
+  public boolean readByteArray(byte[] dest, int destLen) {
+    byte[] result = createByteArray();
+    if (result == null || destLen != result.length) {
+      return false;
+    }
+    System.arraycopy(result, 0, dest, 0, destLen);
+    return true;
+  }
+
+  @Override
+  public void writeStrongBinder(IBinder b) {
+    int pos = beginWrite(BINDER_SIZE_BYTES, TAG_BINDER);
+    putInt(pos, BINDER_TYPE_BINDER);
+    if (binders == null) {
+      binders = new TreeMap<>();
+    }
+    binders.put(pos, b);
+  }
+
+  @Override
+  public IBinder readStrongBinder() {
+    int pos = beginRead(BINDER_SIZE_BYTES, TAG_BINDER, IBinder.class);
+    if (pos < 0 || binders == null) {
+      return null;
+    }
+    return binders.get(pos);
+  }
+
+  @Override
+  public void appendFrom(ShadowParcel.ParcelBuffer otherBuffer, int offset, int length) {
+    if (!(otherBuffer instanceof BinaryParcelBuffer)) {
+      throw new IllegalArgumentException("can't append from " + otherBuffer.getClass().getName());
+    }
+    BinaryParcelBuffer other = (BinaryParcelBuffer) otherBuffer;
+    if (checked && dataPosition != dataSize) {
+      throw new UnreliableBehaviorException(
+          "Real Android parcels behave unreliably if appendFrom is "
+              + "called from any position other than the end");
+    }
+    if (offset < 0 || length < 0 || offset + length > other.dataSize) {
+      throw new IllegalArgumentException(
+          "offset " + offset + " and length " + length + " out of range");
+    }
+
+    // Like Parcel::appendFrom(), the data size grows by length even when overwriting.
+    int pos = dataPosition;
+    int newSize = dataSize + length;
+    setDataCapacityAtLeast(Math.max(newSize, pos + length));
+    System.arraycopy(other.data, offset, data, pos, length);
+    if (checked) {
+      int firstWord = wordIndex(pos);
+      int words = wordIndex(alignToInt(length));
+      // unchecked buffers have no tags to copy, so their data can be read as anything
+      if (other.checked && offset % INT_SIZE_BYTES == 0 && pos % INT_SIZE_BYTES == 0) {
+        System.arraycopy(other.tags, wordIndex(offset), tags, firstWord, words);
+      } else {
+        Arrays.fill(tags, firstWord, firstWord + words, (byte) (TAG_START | TAG_UNKNOWN));
+      }
+    }
+    if (other.binders != null) {
+      for (Map.Entry<Integer, IBinder> entry
+          : other.binders.subMap(offset, offset + length).entrySet()) {
+        if (binders == null) {
+          binders = new TreeMap<>();
+        }
+        binders.put(entry.getKey() - offset + pos, entry.getValue());
+      }
+    }
+    dataSize = newSize;
+    dataPosition = pos + length;
+    failNextReadIfPastEnd = true;
+  }
+
+  @Override
+  public byte[] marshall() {
+    if (binders != null && !binders.isEmpty()) {
+      throw new RuntimeException("Tried to marshall a Parcel that contained Binder objects.");
+    }
+    if (checked) {
+      for (int word = 0; word < wordIndex(alignToInt(dataSize)); word++) {
+        if (tags[word] == TAG_NONE) {
+          throw new UnreliableBehaviorException(
+              "Reading uninitialized data at position " + word * INT_SIZE_BYTES);
+        }
+      }
+    }
+    return Arrays.copyOf(data, dataSize);
+  }
+
+  @Override
+  public void unmarshall(byte[] array, int offset, int length) {
+    clear();
+    data = Arrays.copyOfRange(array, offset, offset + alignToInt(length));
+    if (checked) {
+      tags = new byte[wordIndex(data.length)];
+      Arrays.fill(tags, (byte) (TAG_START | TAG_UNKNOWN));
+    }
+    dataSize = length;
+    dataPosition = 0;
+  }
+
+  /**
+   * Reserves the next {@code sizeBytes} (padded to a multiple of 4) at the data position for a
+   * write, and returns their position.
+   */
+  private int beginWrite(int sizeBytes, byte tag) {
+    int pos = dataPosition;
+    int endPosition = pos + alignToInt(sizeBytes);
+    if (endPosition > data.length) {
+      // Parcel grows by 3/2 of the new size.
+      setDataCapacityAtLeast(endPosition * 3 / 2);
+    }
+    // Zero the padding, which may hold stale data.
+    for (int i = pos + sizeBytes; i < endPosition; i++) {
+      data[i] = 0;
+    }
+    if (endPosition > dataSize) {
+      failNextReadIfPastEnd = true;
+      dataSize = endPosition;
+    }
+    if (binders != null && tag != TAG_BINDER) {
+      binders.subMap(pos, endPosition).clear();
+    }
+    if (checked) {
+      if (pos % INT_SIZE_BYTES != 0) {
+        throw new UnreliableBehaviorException(
+            "Writing at unaligned position " + pos + " is not portable");
+      }
+      int firstWord = wordIndex(pos);
+      Arrays.fill(tags, firstWord, wordIndex(endPosition), tag);
+      tags[firstWord] = (byte) (TAG_START | tag);
+    }
+    dataPosition = endPosition;
+    return pos;
+  }
+
+  /**
+   * Consumes the next {@code sizeBytes} (padded to a multiple of 4) for a read, and returns their
+   * position, or -1 if the data position is at or past the end.
+   */
+  private int beginRead(int sizeBytes, byte tag, Class<?> type) {
+    int alignedSize = alignToInt(sizeBytes);
+    if (checked) {
+      checkReadable(tag, type, alignedSize);
+    }
+    int pos = dataPosition;
+    if (pos + alignedSize > dataSize) {
+      checkPastEnd();
+      dataPosition = Math.max(pos, dataSize);
+      return -1;
+    }
+    dataPosition = pos + alignedSize;
+    return pos;
+  }
+
+  private void checkPastEnd() {
+    if (checked && failNextReadIfPastEnd && dataPosition >= dataSize) {
+      throw new UnreliableBehaviorException(
+          "Did you forget to setDataPosition(0) before reading the parcel?");
+    }
+  }
+
+  /** Checks that a value of the given type and size was written at the data position. */
+  private void checkReadable(byte tag, Class<?> type, int alignedSize) {
+    int pos = dataPosition;
+    if (pos >= dataSize) {
+      checkPastEnd();
+      return;
+    }
+    if (pos % INT_SIZE_BYTES != 0) {
+      throw new UnreliableBehaviorException(
+          "Reading at unaligned position " + pos + " is not portable");
+    }
+
+    int firstWord = wordIndex(pos);
+    byte startTag = tags[firstWord];
+    if (startTag == TAG_NONE) {
+      throw new UnreliableBehaviorException("Reading uninitialized data at position " + pos);
+    }
+    byte foundType = (byte) (startTag & ~TAG_START);
+    if (foundType == TAG_UNKNOWN) {
+      return;
+    }
+    if (foundType != tag) {
+      throw new UnreliableBehaviorException(
+          String.format(
+              Locale.US,
+              "Looking for %s at position %d, found %s, and it is non-portable to reinterpret it",
+              type.getSimpleName(),
+              pos,
+              describe(foundType)));
+    }
+    if ((startTag & TAG_START) == 0) {
+      throw new UnreliableBehaviorException(
+          String.format(
+              Locale.US,
+              "Looking for %s at position %d, found the middle of a %s",
+              type.getSimpleName(),
+              pos,
+              describe(foundType)));
+    }
+    int endWord = wordIndex(pos + alignedSize);
+    for (int word = firstWord + 1; word < endWord; word++) {
+      byte found = word < wordIndex(alignToInt(dataSize)) ? tags[word] : TAG_NONE;
+      if (found != tag) {
+        throw new UnreliableBehaviorException(
+            String.format(
+                Locale.US,
+                "Looking for %s at position %d, but %s interrupts it at position %d",
+                type.getSimpleName(),
+                pos,
+                found == TAG_NONE
+                    ? "uninitialized data or the end of the buffer"
+                    : describe((byte) (found & ~TAG_START)),
+                word * INT_SIZE_BYTES));
+      }
+    }
+  }
+
+  private static String describe(byte type) {
+    switch (type) {
+      case TAG_INT:
+        return "Integer";
+      case TAG_LONG:
+        return "Long";
+      case TAG_FLOAT:
+        return "Float";
+      case TAG_DOUBLE:
+        return "Double";
+      case TAG_STRING:
+        return "String";
+      case TAG_BYTES:
+        return "byte[]";
+      case TAG_BINDER:
+        return "IBinder";
+      default:
+        return "unknown data";
+    }
+  }
+
+  private void putInt(int pos, int value) {
+    data[pos] = (byte) value;
+    data[pos + 1] = (byte) (value >>> 8);
+    data[pos + 2] = (byte) (value >>> 16);
+    data[pos + 3] = (byte) (value >>> 24);
+  }
+
+  private int getInt(int pos) {
+    return (data[pos] & 0xff)
+        | (data[pos + 1] & 0xff) << 8
+        | (data[pos + 2] & 0xff) << 16
+        | (data[pos + 3] & 0xff) << 24;
+  }
+
+  private void putLong(int pos, long value) {
+    putInt(pos, (int) value);
+    putInt(pos + INT_SIZE_BYTES, (int) (value >>> 32));
+  }
+
+  private long getLong(int pos) {
+    return (getInt(pos) & 0xffffffffL) | ((long) getInt(pos + INT_SIZE_BYTES) << 32);
+  }
+
+  /** Rounds to next 4-byte boundary similar to native Parcel. */
+  private static int alignToInt(int unpaddedSizeBytes) {
+    return ((unpaddedSizeBytes + 3) / 4) * 4;
+  }
+
+  private static int wordIndex(int position) {
+    return position / INT_SIZE_BYTES;
+  }
+}
@@ -27,15 +27,17 @@ import java.lang.reflect.Field;
 import java.lang.reflect.Modifier;
 import java.util.ArrayList;
 import java.util.Arrays;
-import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
 import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 import org.robolectric.annotation.HiddenApi;
 import org.robolectric.annotation.Implementation;
 import org.robolectric.annotation.Implements;
 import org.robolectric.annotation.RealObject;
+import org.robolectric.annotation.Resetter;
 import org.robolectric.util.ReflectionHelpers;
 
 /**
@@ -44,14 +46,60 @@ import org.robolectric.util.ReflectionHelpers;
  * is strongly typed, to detect non-portable code and common testing mistakes. It may throw {@link
  * IllegalArgumentException} or {@link IllegalStateException} for error-prone behavior normal {@link
  * Parcel} tolerates.
+ *
+ * <p>Setting the {@code robolectric.parcelBuffer} system property to {@code binary} backs parcels
+ * with real bytes in Parcel's wire format instead, which is much cheaper for large parcels; {@code
+ * checked} does the same but keeps the strict type checks. See {@link BinaryParcelBuffer}.
  */
 @Implements(Parcel.class)
 public class ShadowParcel {
   private static final String TAG = "Parcel";
+  static final String BUFFER_TYPE_PROPERTY = "robolectric.parcelBuffer";
+
+  /** The data buffer implementations which can back a parcel. */
+  enum BufferType {
+    /** {@link ByteBuffer}, the strongly typed default. */
+    TYPED,
+    /** {@link BinaryParcelBuffer}, without type checks. */
+    BINARY,
+    /** {@link BinaryParcelBuffer}, with type checks. */
+    CHECKED;
+
+    static BufferType fromProperties() {
+      String bufferType = System.getProperty(BUFFER_TYPE_PROPERTY);
+      return bufferType == null ? TYPED : valueOf(bufferType.toUpperCase(Locale.US));
+    }
+
+    ParcelBuffer newBuffer() {
+      switch (this) {
+        case BINARY:
+          return new BinaryParcelBuffer(false);
+        case CHECKED:
+          return new BinaryParcelBuffer(true);
+        default:
+          return new ByteBuffer();
+      }
+    }
+  }
 
   @RealObject private Parcel realObject;
-  private static final Map<Long, ByteBuffer> NATIVE_PTR_TO_PARCEL = new LinkedHashMap<>();
-  private static long nextNativePtr = 1; // this needs to start above 0, which is a magic number to Parcel
+  private static final Map<Long, ParcelBuffer> NATIVE_PTR_TO_PARCEL = new ConcurrentHashMap<>();
+  // this needs to start above 0, which is a magic number to Parcel
+  private static final AtomicLong nextNativePtr = new AtomicLong(1);
+  private static volatile BufferType bufferType = BufferType.fromProperties();
+
+  /**
+   * Sets the type of buffer backing parcels created or recycled from now on. Parcels already in
+   * {@link Parcel#obtain()}'s pool keep their current buffer until they're recycled again.
+   */
+  static void setBufferType(BufferType type) {
+    bufferType = type;
+  }
+
+  @Resetter
+  public static void reset() {
+    bufferType = BufferType.fromProperties();
+  }
 
   @Implementation(maxSdk = JELLY_BEAN_MR1)
   @SuppressWarnings("TypeParameterUnusedInFormals")
@@ -418,9 +466,9 @@ public class ShadowParcel {
   }
 
   @Implementation @HiddenApi
-  synchronized public static Number nativeCreate() {
-    long nativePtr = nextNativePtr++;
-    NATIVE_PTR_TO_PARCEL.put(nativePtr, new ByteBuffer());
+  public static Number nativeCreate() {
+    long nativePtr = nextNativePtr.getAndIncrement();
+    NATIVE_PTR_TO_PARCEL.put(nativePtr, bufferType.newBuffer());
     return castNativePtr(nativePtr);
   }
 
@@ -433,7 +481,8 @@ public class ShadowParcel {
   @Implementation(minSdk = LOLLIPOP)
   @SuppressWarnings("robolectric.ShadowReturnTypeMismatch")
   protected static void nativeFreeBuffer(long nativePtr) {
-    NATIVE_PTR_TO_PARCEL.get(nativePtr).clear();
+    // Replace the buffer rather than clearing it, so recycled parcels use the current buffer type.
+    NATIVE_PTR_TO_PARCEL.put(nativePtr, bufferType.newBuffer());
   }
 
   @HiddenApi
@@ -444,7 +493,11 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static void nativeDestroy(long nativePtr) {
-    NATIVE_PTR_TO_PARCEL.remove(nativePtr);
+    ParcelBuffer buffer = NATIVE_PTR_TO_PARCEL.remove(nativePtr);
+    if (buffer != null) {
+      // Release the data now, even if something still holds on to the buffer.
+      buffer.clear();
+    }
   }
 
   @HiddenApi
@@ -455,7 +508,7 @@ public class ShadowParcel {
 
   @Implementation(minSdk = LOLLIPOP)
   protected static byte[] nativeMarshall(long nativePtr) {
-    return NATIVE_PTR_TO_PARCEL.get(nativePtr).toByteArray();
+    return NATIVE_PTR_TO_PARCEL.get(nativePtr).marshall();
   }
 
   @HiddenApi
@@ -467,7 +520,7 @@ public class ShadowParcel {
   @Implementation(minSdk = LOLLIPOP)
   @SuppressWarnings("robolectric.ShadowReturnTypeMismatch")
   protected static void nativeUnmarshall(long nativePtr, byte[] data, int offset, int length) {
-    NATIVE_PTR_TO_PARCEL.put(nativePtr, ByteBuffer.fromByteArray(data, offset, length));
+    NATIVE_PTR_TO_PARCEL.get(nativePtr).unmarshall(data, offset, length);
   }
 
   @HiddenApi
@@ -480,8 +533,17 @@ public class ShadowParcel {
   @SuppressWarnings("robolectric.ShadowReturnTypeMismatch")
   protected static void nativeAppendFrom(
       long thisNativePtr, long otherNativePtr, int offset, int length) {
-    ByteBuffer thisByteBuffer = NATIVE_PTR_TO_PARCEL.get(thisNativePtr);
-    ByteBuffer otherByteBuffer = NATIVE_PTR_TO_PARCEL.get(otherNativePtr);
+    ParcelBuffer thisByteBuffer = NATIVE_PTR_TO_PARCEL.get(thisNativePtr);
+    ParcelBuffer otherByteBuffer = NATIVE_PTR_TO_PARCEL.get(otherNativePtr);
+    if ((thisByteBuffer.getBufferType() == BufferType.TYPED)
+        != (otherByteBuffer.getBufferType() == BufferType.TYPED)) {
+      throw new IllegalArgumentException("Can't append from a parcel backed by a "
+          + otherByteBuffer.getBufferType().name().toLowerCase(Locale.US)
+          + " buffer to one backed by a "
+          + thisByteBuffer.getBufferType().name().toLowerCase(Locale.US)
+          + " buffer; typed and binary parcels can't be mixed."
+          + " Was ShadowParcel's buffer type changed while parcels were in use?");
+    }
     thisByteBuffer.appendFrom(otherByteBuffer, offset, length);
   }
 
@@ -553,6 +615,69 @@ public class ShadowParcel {
     }
   }
 
+  /** The data buffer backing a parcel, with the operations its native methods need. */
+  interface ParcelBuffer {
+    BufferType getBufferType();
+
+    void clear();
+
+    int dataAvailable();
+
+    int dataCapacity();
+
+    int dataPosition();
+
+    int dataSize();
+
+    void setDataPosition(int pos);
+
+    void setDataSize(int size);
+
+    void setDataCapacityAtLeast(int newCapacity);
+
+    void writeInt(int i);
+
+    int readInt();
+
+    void writeLong(long l);
+
+    long readLong();
+
+    void writeFloat(float f);
+
+    float readFloat();
+
+    void writeDouble(double d);
+
+    double readDouble();
+
+    void writeString(String s);
+
+    String readString();
+
+    void writeByteArray(byte[] b, int offset, int length);
+
+    byte[] createByteArray();
+
+    boolean readByteArray(byte[] dest, int destLen);
+
+    void writeStrongBinder(IBinder b);
+
+    IBinder readStrongBinder();
+
+    /**
+     * Appends {@code length} bytes of {@code other}, starting at {@code offset}. {@code other} is
+     * either typed like this buffer, or binary like this one, but the two kinds never mix.
+     */
+    void appendFrom(ParcelBuffer other, int offset, int length);
+
+    /** Returns the contents in a form which {@link #unmarshall} can restore. */
+    byte[] marshall();
+
+    /** Replaces the contents with ones returned by {@link #marshall}. */
+    void unmarshall(byte[] array, int offset, int length);
+  }
+
   /**
    * ByteBuffer pretends to be the underlying Parcel implementation.
    *
@@ -597,7 +722,7 @@ public class ShadowParcel {
    *       only at most one allocation for every 4 byte positions.
    * </ul>
    */
-  private static class ByteBuffer {
+  private static class ByteBuffer implements ParcelBuffer {
     /** Number of bytes in Parcel used by an int, length, or anything smaller. */
     private static final int INT_SIZE_BYTES = 4;
     /** Number of bytes in Parcel used by a long or double. */
@@ -649,6 +774,11 @@ public class ShadowParcel {
       clear();
     }
 
+    @Override
+    public BufferType getBufferType() {
+      return BufferType.TYPED;
+    }
+
     /** Removes all elements from the byte buffer */
     public void clear() {
       data = new FakeEncodedItem[0];
@@ -819,11 +949,16 @@ public class ShadowParcel {
      * Appends the contents of the other byte buffer to this byte buffer starting at offset and
      * ending at length.
      *
-     * @param other ByteBuffer to append to this one
+     * @param otherBuffer ByteBuffer to append to this one
      * @param offset number of bytes from beginning of byte buffer to start copy from
      * @param length number of bytes to copy
      */
-    public void appendFrom(ByteBuffer other, int offset, int length) {
+    @Override
+    public void appendFrom(ParcelBuffer otherBuffer, int offset, int length) {
+      if (!(otherBuffer instanceof ByteBuffer)) {
+        throw new IllegalArgumentException("can't append from " + otherBuffer.getClass().getName());
+      }
+      ByteBuffer other = (ByteBuffer) otherBuffer;
       int oldSize = dataSize;
       if (dataPosition != dataSize) {
         // Parcel.cpp will always expand the buffer by length even if it is overwriting existing
@@ -868,7 +1003,8 @@ public class ShadowParcel {
         return byteBuffer;
       } catch (Exception e) {
         throw new UnreliableBehaviorException(
-            "ShadowParcel unable to unmarshall its custom format", e);
+            "ShadowParcel unable to unmarshall its custom format; was the data marshalled by a"
+                + " parcel with a binary buffer (see " + BUFFER_TYPE_PROPERTY + ")?", e);
       }
     }
 
@@ -905,6 +1041,20 @@ public class ShadowParcel {
       }
     }
 
+    @Override
+    public byte[] marshall() {
+      return toByteArray();
+    }
+
+    @Override
+    public void unmarshall(byte[] array, int offset, int length) {
+      ByteBuffer unmarshalled = fromByteArray(array, offset, length);
+      data = unmarshalled.data;
+      dataPosition = unmarshalled.dataPosition;
+      dataSize = unmarshalled.dataSize;
+      failNextReadIfPastEnd = unmarshalled.failNextReadIfPastEnd;
+    }
+
     /**
      * Number of unused bytes in this byte buffer.
      */
@@ -3,11 +3,22 @@ package org.robolectric.util;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
 
 /**
  * Collects performance statistics for later reporting via {@link PerfStatsReporter}.
  *
+ * Recording an event is lock-free: each metric is interned once by name (see
+ * {@link #metric(String)}) and accumulates into striped counters and a log-linear histogram, so
+ * collection can stay enabled on hot paths such as class loading.
+ *
  * @since 3.6
  */
 public class PerfStatsCollector {
@@ -16,8 +27,8 @@ public class PerfStatsCollector {
 
   private final Clock clock;
   private final Map<Class<?>, Object> metadata = new HashMap<>();
-  private final Map<MetricKey, Metric> metricMap = new HashMap<>();
-  private boolean enabled = true;
+  private final ConcurrentMap<String, MetricHandle> metricHandles = new ConcurrentHashMap<>();
+  private volatile boolean enabled = true;
 
   public PerfStatsCollector() {
     this(System::nanoTime);
@@ -38,22 +49,29 @@ public class PerfStatsCollector {
     this.enabled = isEnabled;
   }
 
+  /**
+   * Returns the handle for the named metric. Callers on hot paths should look the handle up once
+   * and keep it; handles stay valid across {@link #reset()}.
+   */
+  public MetricHandle metric(String name) {
+    MetricHandle handle = metricHandles.get(name);
+    if (handle == null) {
+      MetricHandle newHandle = new MetricHandle(name);
+      handle = metricHandles.putIfAbsent(name, newHandle);
+      if (handle == null) {
+        handle = newHandle;
+      }
+    }
+    return handle;
+  }
+
   public Event startEvent(String eventName) {
-    return new Event(eventName);
+    return metric(eventName).startEvent();
   }
 
   public <T, E extends Exception> T measure(String eventName, ThrowingSupplier<T, E> supplier)
       throws E {
-    boolean success = true;
-    Event event = startEvent(eventName);
-    try {
-      return supplier.get();
-    } catch (Exception e) {
-      success = false;
-      throw e;
-    } finally {
-      event.finished(success);
-    }
+    return metric(eventName).measure(supplier);
   }
 
   /**
@@ -66,16 +84,7 @@ public class PerfStatsCollector {
 
   public <E extends Exception> void measure(String eventName, ThrowingRunnable<E> runnable)
       throws E {
-    boolean success = true;
-    Event event = startEvent(eventName);
-    try {
-      runnable.run();
-    } catch (Exception e) {
-      success = false;
-      throw e;
-    } finally {
-      event.finished(success);
-    }
+    metric(eventName).measure(runnable);
   }
 
   /**
@@ -86,8 +95,13 @@ public class PerfStatsCollector {
     void run() throws F;
   }
 
-  public synchronized Collection<Metric> getMetrics() {
-    return new ArrayList<>(metricMap.values());
+  public Collection<Metric> getMetrics() {
+    List<Metric> metrics = new ArrayList<>();
+    for (MetricHandle handle : metricHandles.values()) {
+      handle.successes.addSnapshotTo(metrics, handle.name, true);
+      handle.failures.addSnapshotTo(metrics, handle.name, false);
+    }
+    return metrics;
   }
 
   public synchronized <T> void putMetadata(Class<T> metadataClass, T metadata) {
@@ -103,19 +117,114 @@ public class PerfStatsCollector {
   }
 
   public void reset() {
-    metadata.clear();
-    metricMap.clear();
+    synchronized (this) {
+      metadata.clear();
+    }
+    for (MetricHandle handle : metricHandles.values()) {
+      handle.successes.reset();
+      handle.failures.reset();
+    }
+  }
+
+  /**
+   * An interned metric, obtained from {@link #metric(String)}.
+   *
+   * A metric either times events or counts them with {@link #increment()}, but not both, so its
+   * count always matches its percentiles.
+   */
+  public class MetricHandle {
+    private static final int UNUSED = 0;
+    private static final int TIMED = 1;
+    private static final int COUNTED = 2;
+
+    private final String name;
+    private final Accumulator successes = new Accumulator();
+    private final Accumulator failures = new Accumulator();
+    private final AtomicInteger kind = new AtomicInteger(UNUSED);
+
+    MetricHandle(String name) {
+      this.name = name;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public Event startEvent() {
+      return new Event(this);
+    }
+
+    public <T, E extends Exception> T measure(ThrowingSupplier<T, E> supplier) throws E {
+      boolean success = true;
+      Event event = startEvent();
+      try {
+        return supplier.get();
+      } catch (Exception e) {
+        success = false;
+        throw e;
+      } finally {
+        event.finished(success);
+      }
+    }
+
+    public <E extends Exception> void measure(ThrowingRunnable<E> runnable) throws E {
+      boolean success = true;
+      Event event = startEvent();
+      try {
+        runnable.run();
+      } catch (Exception e) {
+        success = false;
+        throw e;
+      } finally {
+        event.finished(success);
+      }
+    }
+
+    /**
+     * Counts an occurrence without timing it, for events such as cache hits which are too cheap
+     * and frequent to be worth reading the clock for.
+     *
+     * @throws IllegalStateException if this metric has been used to time events
+     */
+    public void increment() {
+      checkKind(COUNTED);
+      if (enabled) {
+        successes.increment();
+      }
+    }
+
+    void record(long elapsedNs, boolean success) {
+      checkKind(TIMED);
+      if (!enabled) {
+        return;
+      }
+
+      (success ? successes : failures).record(elapsedNs);
+    }
+
+    private void checkKind(int expectedKind) {
+      int kind = this.kind.get();
+      if (kind == expectedKind) {
+        return;
+      }
+      if (kind == UNUSED && this.kind.compareAndSet(UNUSED, expectedKind)) {
+        return;
+      }
+      if (this.kind.get() != expectedKind) {
+        throw new IllegalStateException("metric '" + name + "' can't be both timed and counted");
+      }
+    }
   }
 
   /**
    * Event for perf stats collection.
    */
   public class Event {
-    private final String name;
+    private final MetricHandle metric;
     private final long startTimeNs;
 
-    Event(String name) {
-      this.name = name;
+    Event(MetricHandle metric) {
+      this.metric = metric;
       this.startTimeNs = clock.nanoTime();
     }
 
@@ -124,19 +233,110 @@ public class PerfStatsCollector {
     }
 
     public void finished(boolean success) {
-      if (!enabled) {
+      metric.record(clock.nanoTime() - startTimeNs, success);
+    }
+  }
+
+  /**
+   * Lock-free accumulator for the events of one metric with one outcome.
+   */
+  private static class Accumulator {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder elapsedNs = new LongAdder();
+    private final LongAccumulator maxNs = new LongAccumulator(Math::max, 0);
+    private final Histogram histogram = new Histogram();
+
+    void record(long elapsedNs) {
+      count.increment();
+      this.elapsedNs.add(elapsedNs);
+      maxNs.accumulate(elapsedNs);
+      histogram.record(elapsedNs);
+    }
+
+    void increment() {
+      count.increment();
+    }
+
+    void addSnapshotTo(List<Metric> metrics, String name, boolean success) {
+      long count = this.count.sum();
+      if (count == 0) {
         return;
       }
 
-      synchronized (PerfStatsCollector.this) {
-        MetricKey key = new MetricKey(name, success);
-        Metric metric = metricMap.get(key);
-        if (metric == null) {
-          metricMap.put(key, metric = new Metric(key.name, key.success));
+      long maxNs = this.maxNs.get();
+      metrics.add(new Metric(name, (int) count, elapsedNs.sum(),
+          Math.min(histogram.percentile(0.50), maxNs),
+          Math.min(histogram.percentile(0.99), maxNs),
+          maxNs, success));
+    }
+
+    void reset() {
+      count.reset();
+      elapsedNs.reset();
+      maxNs.reset();
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Histogram with buckets at 8 linear steps per power of two, so reported percentiles are within
+   * 12.5% of the true value.
+   */
+  static class Histogram {
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(64 * SUB_BUCKETS);
+
+    void record(long value) {
+      buckets.incrementAndGet(bucketIndex(Math.max(0, value)));
+    }
+
+    /** Returns the upper bound of the bucket holding the given percentile, or 0 if empty. */
+    long percentile(double percentile) {
+      long total = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+        total += buckets.get(i);
+      }
+      if (total == 0) {
+        return 0;
+      }
+
+      long rank = Math.max(1, (long) Math.ceil(percentile * total));
+      long seen = 0;
+      for (int i = 0; i < buckets.length(); i++) {
+        seen += buckets.get(i);
+        if (seen >= rank) {
+          return bucketUpperBound(i);
         }
-        metric.count++;
-        metric.elapsedNs += clock.nanoTime() - startTimeNs;
       }
+      return bucketUpperBound(buckets.length() - 1);
+    }
+
+    void reset() {
+      for (int i = 0; i < buckets.length(); i++) {
+        buckets.set(i, 0);
+      }
+    }
+
+    static int bucketIndex(long value) {
+      if (value < SUB_BUCKETS) {
+        return (int) value;
+      }
+      int exponent = 63 - Long.numberOfLeadingZeros(value);
+      int subBucket = (int) (value >>> (exponent - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+      return (exponent - SUB_BUCKET_BITS + 1) * SUB_BUCKETS + subBucket;
+    }
+
+    static long bucketUpperBound(int index) {
+      if (index < SUB_BUCKETS) {
+        return index;
+      }
+      int exponent = index / SUB_BUCKETS + SUB_BUCKET_BITS - 1;
+      int subBucket = index % SUB_BUCKETS;
+      int shift = exponent - SUB_BUCKET_BITS;
+      long lowerBound = (long) (SUB_BUCKETS + subBucket) << shift;
+      return lowerBound + (1L << shift) - 1;
     }
   }
 
@@ -145,14 +345,25 @@ public class PerfStatsCollector {
    */
   public static class Metric {
     private final String name;
-    private int count;
-    private long elapsedNs;
+    private final int count;
+    private final long elapsedNs;
+    private final long p50Ns;
+    private final long p99Ns;
+    private final long maxNs;
     private final boolean success;
 
     public Metric(String name, int count, int elapsedNs, boolean success) {
+      this(name, count, elapsedNs, 0, 0, 0, success);
+    }
+
+    public Metric(String name, int count, long elapsedNs, long p50Ns, long p99Ns, long maxNs,
+        boolean success) {
       this.name = name;
       this.count = count;
       this.elapsedNs = elapsedNs;
+      this.p50Ns = p50Ns;
+      this.p99Ns = p99Ns;
+      this.maxNs = maxNs;
       this.success = success;
     }
 
@@ -172,6 +383,21 @@ public class PerfStatsCollector {
       return elapsedNs;
     }
 
+    /** Returns the approximate median duration of an event, in nanoseconds. */
+    public long getP50Ns() {
+      return p50Ns;
+    }
+
+    /** Returns the approximate 99th percentile duration of an event, in nanoseconds. */
+    public long getP99Ns() {
+      return p99Ns;
+    }
+
+    /** Returns the duration of the slowest event, in nanoseconds. */
+    public long getMaxNs() {
+      return maxNs;
+    }
+
     public boolean isSuccess() {
       return success;
     }
@@ -193,6 +419,15 @@ public class PerfStatsCollector {
       if (elapsedNs != metric.elapsedNs) {
         return false;
       }
+      if (p50Ns != metric.p50Ns) {
+        return false;
+      }
+      if (p99Ns != metric.p99Ns) {
+        return false;
+      }
+      if (maxNs != metric.maxNs) {
+        return false;
+      }
       if (success != metric.success) {
         return false;
       }
@@ -204,6 +439,9 @@ public class PerfStatsCollector {
       int result = name != null ? name.hashCode() : 0;
       result = 31 * result + count;
       result = 31 * result + (int) (elapsedNs ^ (elapsedNs >>> 32));
+      result = 31 * result + (int) (p50Ns ^ (p50Ns >>> 32));
+      result = 31 * result + (int) (p99Ns ^ (p99Ns >>> 32));
+      result = 31 * result + (int) (maxNs ^ (maxNs >>> 32));
       result = 31 * result + (success ? 1 : 0);
       return result;
     }
@@ -214,48 +452,14 @@ public class PerfStatsCollector {
           + "name='" + name + '\''
           + ", count=" + count
           + ", elapsedNs=" + elapsedNs
+          + ", p50Ns=" + p50Ns
+          + ", p99Ns=" + p99Ns
+          + ", maxNs=" + maxNs
           + ", success=" + success
           + '}';
     }
   }
 
-  /**
-   * Metric key for perf stats collection.
-   */
-  private static class MetricKey {
-    private final String name;
-    private final boolean success;
-
-    MetricKey(String name, boolean success) {
-      this.name = name;
-      this.success = success;
-    }
-
-    @Override
-    public boolean equals(Object o) {
-      if (this == o) {
-        return true;
-      }
-      if (o == null || getClass() != o.getClass()) {
-        return false;
-      }
-
-      MetricKey metricKey = (MetricKey) o;
-
-      if (success != metricKey.success) {
-        return false;
-      }
-      return name != null ? name.equals(metricKey.name) : metricKey.name == null;
-    }
-
-    @Override
-    public int hashCode() {
-      int result = name != null ? name.hashCode() : 0;
-      result = 31 * result + (success ? 1 : 0);
-      return result;
-    }
-  }
-
   /**
    * Metadata for perf stats collection.
    */
@@ -11,6 +11,7 @@ import org.junit.runner.RunWith;
 import org.junit.runners.JUnit4;
 import org.robolectric.util.PerfStatsCollector.Event;
 import org.robolectric.util.PerfStatsCollector.Metric;
+import org.robolectric.util.PerfStatsCollector.MetricHandle;
 
 @RunWith(JUnit4.class)
 public class PerfStatsCollectorTest {
@@ -32,7 +33,7 @@ public class PerfStatsCollectorTest {
 
     Collection<Metric> metrics = collector.getMetrics();
     assertThat(metrics).containsExactly(
-        new Metric("first event", 1, 20, true)
+        new Metric("first event", 1, 20, 20, 20, 20, true)
     );
   }
 
@@ -52,7 +53,7 @@ public class PerfStatsCollectorTest {
 
     Collection<Metric> metrics = collector.getMetrics();
     assertThat(metrics).containsExactly(
-        new Metric("repeatable event", 3, 60, true)
+        new Metric("repeatable event", 3, 60, 20, 20, 20, true)
     );
   }
 
@@ -64,7 +65,7 @@ public class PerfStatsCollectorTest {
     })).isEqualTo("return value");
 
     Collection<Metric> metrics = collector.getMetrics();
-    assertThat(metrics).containsExactly(new Metric("event", 1, 10, true));
+    assertThat(metrics).containsExactly(new Metric("event", 1, 10, 10, 10, 10, true));
   }
 
   @Test
@@ -86,8 +87,8 @@ public class PerfStatsCollectorTest {
 
     Collection<Metric> metrics = collector.getMetrics();
     assertThat(metrics).containsAllOf(
-        new Metric("event", 1, 10, true),
-        new Metric("event", 1, 5, false));
+        new Metric("event", 1, 10, 10, 10, 10, true),
+        new Metric("event", 1, 5, 5, 5, 5, false));
   }
 
   @Test
@@ -104,7 +105,75 @@ public class PerfStatsCollectorTest {
 
     Collection<Metric> metrics = collector.getMetrics();
     assertThat(metrics).contains(
-        new Metric("event", 1, 5, false));
+        new Metric("event", 1, 5, 5, 5, 5, false));
+  }
+
+  @Test
+  public void shouldReportPercentilesAndMax() throws Exception {
+    for (int i = 1; i <= 100; i++) {
+      Event event = collector.startEvent("event");
+      fakeClock.delay(i * 1000);
+      event.finished();
+    }
+
+    Metric metric = collector.getMetrics().iterator().next();
+    assertThat(metric.getCount()).isEqualTo(100);
+    assertThat(metric.getMaxNs()).isEqualTo(100_000);
+    // percentiles are accurate to within 12.5%
+    assertThat(metric.getP50Ns()).isAtLeast(50_000L);
+    assertThat(metric.getP50Ns()).isAtMost(56_250L);
+    assertThat(metric.getP99Ns()).isAtLeast(99_000L);
+    assertThat(metric.getP99Ns()).isAtMost(100_000L);
+  }
+
+  @Test
+  public void metric_shouldReturnSameHandleForSameName() throws Exception {
+    MetricHandle handle = collector.metric("event");
+    assertThat(collector.metric("event")).isSameAs(handle);
+
+    handle.measure(() -> fakeClock.delay(10));
+    assertThat(collector.getMetrics())
+        .containsExactly(new Metric("event", 1, 10, 10, 10, 10, true));
+  }
+
+  @Test
+  public void reset_shouldKeepHandlesUsable() throws Exception {
+    MetricHandle handle = collector.metric("event");
+    handle.measure(() -> fakeClock.delay(10));
+    collector.reset();
+    assertThat(collector.getMetrics()).isEmpty();
+
+    handle.measure(() -> fakeClock.delay(5));
+    assertThat(collector.getMetrics())
+        .containsExactly(new Metric("event", 1, 5, 5, 5, 5, true));
+  }
+
+  @Test
+  public void increment_shouldCountWithoutTiming() throws Exception {
+    MetricHandle handle = collector.metric("event");
+    handle.increment();
+    handle.increment();
+
+    assertThat(collector.getMetrics()).containsExactly(new Metric("event", 2, 0, 0, 0, 0, true));
+  }
+
+  @Test
+  public void metric_shouldNotBeBothTimedAndCounted() throws Exception {
+    MetricHandle handle = collector.metric("event");
+    handle.measure(() -> fakeClock.delay(10));
+
+    try {
+      handle.increment();
+      fail("should have thrown");
+    } catch (IllegalStateException e) {
+      assertThat(e.getMessage()).contains("event");
+    }
+  }
+
+  @Test
+  public void metric_shouldNotEqualMetricWithDifferentPercentiles() throws Exception {
+    assertThat(new Metric("event", 2, 20, 5, 15, 15, true))
+        .isNotEqualTo(new Metric("event", 2, 20, 10, 10, 10, true));
   }
 
   @Test